@@ -5,18 +5,22 @@
  */
 package com.chencraft.api;
 
+import com.chencraft.model.KeyProfile;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
+import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.NonNull;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -28,6 +32,8 @@ import static com.chencraft.api.models.TagConstants.TLS;
 @jakarta.annotation.Generated(value = "io.swagger.codegen.v3.generators.java.SpringCodegen", date = "2025-08-22T12:16:37.352130473Z[Etc/UTC]")
 @Validated
 public interface CertificateApi {
+    int MAX_CSR_LENGTH = 16 * 1024;
+    int MAX_OCSP_REQUEST_LENGTH = 4 * 1024;
 
     @Operation(summary = "Request issuance of TLS certificate for client", description = "For client device to request a TLS certificate issued by the server", tags = {TLS})
     @ApiResponses(value = {
@@ -40,6 +46,42 @@ public interface CertificateApi {
             method = RequestMethod.GET)
     Mono<@NonNull ResponseEntity<?>> certificateIssue(@NotNull @Parameter(in = ParameterIn.QUERY, description = "Onboarding token issued to trusted devices", required = true, schema = @Schema()) @Valid @RequestParam(value = "token") String token,
                                                       @NotNull @Parameter(in = ParameterIn.QUERY, description = "Device name, used for certificate CN", required = true, schema = @Schema()) @Valid @RequestParam(value = "deviceId") String deviceId,
-                                                      @Parameter(in = ParameterIn.QUERY, description = "Whether to return certificate in single PEM format") @RequestParam(value = "pemFormat", defaultValue = "false") boolean pemFormat
+                                                      @Parameter(in = ParameterIn.QUERY, description = "Whether to return certificate in single PEM format") @RequestParam(value = "pemFormat", defaultValue = "false") boolean pemFormat,
+                                                      @Parameter(in = ParameterIn.QUERY, description = "Key type of the issued certificate") @RequestParam(value = "keyProfile", defaultValue = "RSA_4096") KeyProfile keyProfile
     );
+
+    @Operation(summary = "Sign a certificate signing request from a client", description = "For client device to request a TLS certificate for a key pair it generated itself. Accepts a PEM-encoded PKCS#10 CSR with an RSA (at least 2048 bits), EC P-256 or Ed25519 key and returns the PEM certificate chain; the subject of the CSR is ignored", tags = {TLS})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "PEM certificate chain, leaf first", content = @Content(mediaType = "application/x-pem-file", schema = @Schema(implementation = String.class))),
+            @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
+            @ApiResponse(responseCode = "401", ref = UNAUTHORIZED_RESPONSE),
+            @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
+    @RequestMapping(value = "/certificate/sign",
+            produces = {"application/x-pem-file", MediaType.APPLICATION_JSON_VALUE},
+            consumes = {"application/pkcs10", MediaType.TEXT_PLAIN_VALUE},
+            method = RequestMethod.POST)
+    Mono<@NonNull ResponseEntity<?>> certificateSign(@NotNull @Parameter(in = ParameterIn.QUERY, description = "Onboarding token issued to trusted devices", required = true, schema = @Schema()) @Valid @RequestParam(value = "token") String token,
+                                                     @NotNull @Parameter(in = ParameterIn.QUERY, description = "Device name, used for certificate CN", required = true, schema = @Schema()) @Valid @RequestParam(value = "deviceId") String deviceId,
+                                                     @Parameter(in = ParameterIn.DEFAULT, description = "PEM-encoded PKCS#10 certificate signing request", required = true) @NotNull @Size(max = MAX_CSR_LENGTH) @RequestBody String csr
+    );
+
+    @Operation(summary = "Certificate revocation list", description = "Current CRL signed by the CA, republished periodically and after every revocation; e.g. for nginx's ssl_crl", tags = {TLS})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "CRL in DER, or PEM when requested", content = @Content(mediaType = "application/pkix-crl")),
+            @ApiResponse(responseCode = "503", description = "No CRL has been published yet"),
+            @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
+    @RequestMapping(value = "/certificate/crl",
+            produces = {"application/pkix-crl", "application/x-pem-file", MediaType.APPLICATION_JSON_VALUE},
+            method = RequestMethod.GET)
+    Mono<@NonNull ResponseEntity<?>> certificateRevocationList(@Parameter(in = ParameterIn.QUERY, description = "Whether to return the CRL in PEM format") @RequestParam(value = "pemFormat", defaultValue = "false") boolean pemFormat);
+
+    @Operation(summary = "OCSP responder", description = "Answers a DER-encoded OCSP request for one certificate with a pre-signed response (RFC 5019 profile, nonces are ignored)", tags = {TLS})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "DER-encoded OCSP response", content = @Content(mediaType = "application/ocsp-response")),
+            @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
+    @RequestMapping(value = "/certificate/ocsp",
+            produces = {"application/ocsp-response", MediaType.APPLICATION_JSON_VALUE},
+            consumes = {"application/ocsp-request"},
+            method = RequestMethod.POST)
+    Mono<@NonNull ResponseEntity<byte[]>> certificateStatus(@Parameter(in = ParameterIn.DEFAULT, description = "DER-encoded OCSP request", required = true) @NotNull @Size(max = MAX_OCSP_REQUEST_LENGTH) @RequestBody byte[] ocspRequest);
 }
@@ -2,6 +2,7 @@ package com.chencraft.api;
 
 import com.chencraft.common.component.AuthorizationTokenStorage;
 import com.chencraft.common.service.cert.CertificateService;
+import com.chencraft.model.KeyProfile;
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -38,14 +39,54 @@ public class CertificateApiController implements CertificateApi {
      * @param token     onboarding token to authorize the request
      * @param deviceId  unique device identifier used within the PKI
      * @param pemFormat when true, response will be a PEM bundle; otherwise a structured payload
+     * @param keyProfile key type of the issued certificate
      * @return Mono emitting 401 Unauthorized on invalid token or the issuance response from CertificateService
      */
     @Override
-    public Mono<@NonNull ResponseEntity<?>> certificateIssue(String token, String deviceId, boolean pemFormat) {
+    public Mono<@NonNull ResponseEntity<?>> certificateIssue(String token, String deviceId, boolean pemFormat, KeyProfile keyProfile) {
         if (!authTokenStorage.validateToken(token)) {
             return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
         }
 
-        return certificateService.issueCertificate(deviceId, pemFormat);
+        return certificateService.issueCertificate(deviceId, pemFormat, keyProfile);
+    }
+
+    /**
+     * Signs a device-generated CSR if the provided onboarding token is valid; no private key leaves the device.
+     *
+     * @param token    onboarding token to authorize the request
+     * @param deviceId unique device identifier used within the PKI, overrides the CSR subject
+     * @param csr      PEM-encoded PKCS#10 certificate signing request
+     * @return Mono emitting 401 Unauthorized on invalid token or the PEM certificate chain from CertificateService
+     */
+    @Override
+    public Mono<@NonNull ResponseEntity<?>> certificateSign(String token, String deviceId, String csr) {
+        if (!authTokenStorage.validateToken(token)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+        }
+
+        return certificateService.signCertificate(deviceId, csr);
+    }
+
+    /**
+     * Serves the current CRL; revocation state is public, so no token is required.
+     *
+     * @param pemFormat when true, the CRL is PEM-encoded; otherwise DER
+     * @return Mono emitting the CRL, or 503 before the first publish
+     */
+    @Override
+    public Mono<@NonNull ResponseEntity<?>> certificateRevocationList(boolean pemFormat) {
+        return certificateService.revocationList(pemFormat);
+    }
+
+    /**
+     * Answers an OCSP request from the pre-signed responses of the last publish.
+     *
+     * @param ocspRequest DER-encoded OCSP request
+     * @return Mono emitting the DER-encoded OCSP response
+     */
+    @Override
+    public Mono<@NonNull ResponseEntity<byte[]>> certificateStatus(byte[] ocspRequest) {
+        return certificateService.certificateStatus(ocspRequest);
     }
 }
@@ -13,12 +13,15 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.NonNull;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import reactor.core.publisher.Mono;
 
 import static com.chencraft.api.models.ResponseConstants.*;
 import static com.chencraft.api.models.TagConstants.FILE;
@@ -30,11 +33,28 @@ public interface FileApi {
     @Operation(summary = "Download file from public storage", description = "Download file with public scope", tags = {FILE})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", ref = OK_FILE_RESPONSE),
+            @ApiResponse(responseCode = "206", description = "Requested byte range of the file"),
+            @ApiResponse(responseCode = "304", description = "File has not changed since the client's copy"),
+            @ApiResponse(responseCode = "307", description = "Redirect to a short-lived presigned storage URL"),
             @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
             @ApiResponse(responseCode = "404", ref = FILE_NOT_FOUND_RESPONSE),
+            @ApiResponse(responseCode = "416", description = "Requested range lies outside the file"),
             @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
     @RequestMapping(value = "/file/{filename}", method = RequestMethod.GET)
-    ResponseEntity<@NonNull Resource> file(@Parameter(in = ParameterIn.PATH, description = "Filename to be downloaded", required = true, schema = @Schema(), example = "test_connection") @PathVariable("filename") String filename
+    Mono<@NonNull ResponseEntity<@NonNull Resource>> file(@Parameter(in = ParameterIn.PATH, description = "Filename to be downloaded", required = true, schema = @Schema(), example = "test_connection") @PathVariable("filename") String filename,
+            @Parameter(hidden = true) @RequestHeader HttpHeaders headers
+    );
+
+    @Operation(summary = "Describe file in public storage", description = "Headers of the public file download without its content", tags = {FILE})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "File exists, size and validators in the headers"),
+            @ApiResponse(responseCode = "304", description = "File has not changed since the client's copy"),
+            @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
+            @ApiResponse(responseCode = "404", ref = FILE_NOT_FOUND_RESPONSE),
+            @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
+    @RequestMapping(value = "/file/{filename}", method = RequestMethod.HEAD)
+    Mono<@NonNull ResponseEntity<@NonNull Resource>> fileMetadata(@Parameter(in = ParameterIn.PATH, description = "Filename to be described", required = true, schema = @Schema(), example = "test_connection") @PathVariable("filename") String filename,
+            @Parameter(hidden = true) @RequestHeader HttpHeaders headers
     );
 
     @Operation(
@@ -44,12 +64,13 @@ public interface FileApi {
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", ref = OK_FILE_RESPONSE),
+            @ApiResponse(responseCode = "307", description = "Redirect to a short-lived presigned storage URL"),
             @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
             @ApiResponse(responseCode = "404", ref = FILE_NOT_FOUND_RESPONSE),
             @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)
     })
     @RequestMapping(value = "/file/share", method = RequestMethod.GET)
-    ResponseEntity<@NonNull Resource> share(
+    Mono<@NonNull ResponseEntity<@NonNull Resource>> share(
             @Parameter(
                     in = ParameterIn.QUERY,
                     name = "token",
@@ -6,8 +6,10 @@ import com.chencraft.model.FileUpload;
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
 
 /**
  * Public file download controller implementing FileApi. Serves files from the PUBLIC bucket.
@@ -35,15 +37,31 @@ public class FileApiController implements FileApi {
      * Downloads a public file by filename.
      *
      * @param filename object key to fetch from PUBLIC storage
-     * @return HTTP 200 with resource body or appropriate error from FileService
+     * @param headers  request headers; Range/If-Range select a partial download
+     * @return Mono emitting HTTP 200 with resource body, a redirect to a presigned URL when enabled,
+     * or appropriate error from FileService
      */
     @Override
-    public ResponseEntity<@NonNull Resource> file(String filename) {
-        return fileService.downloadFile(FileUpload.Type.PUBLIC, filename);
+    public Mono<@NonNull ResponseEntity<@NonNull Resource>> file(String filename, HttpHeaders headers) {
+        return fileService.presignDownload(FileUpload.Type.PUBLIC, filename)
+                          .map(url -> Mono.just(url.toRedirect()))
+                          .orElseGet(() -> fileService.downloadFileAsync(FileUpload.Type.PUBLIC, filename, headers));
+    }
+
+    /**
+     * Describes a public file without transferring it.
+     *
+     * @param filename object key from the PUBLIC storage
+     * @param headers  request headers; If-None-Match/If-Modified-Since may yield 304
+     * @return Mono emitting HTTP 200 with the download headers and no body, or appropriate error from FileService
+     */
+    @Override
+    public Mono<@NonNull ResponseEntity<@NonNull Resource>> fileMetadata(String filename, HttpHeaders headers) {
+        return fileService.headFileAsync(FileUpload.Type.PUBLIC, filename, headers);
     }
 
     @Override
-    public ResponseEntity<@NonNull Resource> share(String token) {
+    public Mono<@NonNull ResponseEntity<@NonNull Resource>> share(String token) {
         return fileTokenService.accessFile(token);
     }
 }
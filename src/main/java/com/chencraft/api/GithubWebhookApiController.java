@@ -80,7 +80,7 @@ public class GithubWebhookApiController implements GithubWebhookApi {
             for (GitHubWebhookReleaseReleaseAssets asset : assets) {
                 String downloadUrl = asset.getUrl();
                 String filename = asset.getName();
-                gitHubApiService.fetchFileFromGitHub(downloadUrl, filename);
+                gitHubApiService.fetchFileFromGitHub(downloadUrl, filename, asset.getDigest());
             }
         } catch (GitHubUnauthorizedException e) {
             messenger.alertUnauthorizedGitHubToken(repoName);
@@ -5,6 +5,9 @@
  */
 package com.chencraft.api.secure;
 
+import com.chencraft.api.CertificateApi;
+import com.chencraft.model.CertificateBatchIssueRequest;
+import com.chencraft.model.CertificateIssueResult;
 import com.chencraft.model.CertificateRenewal;
 import com.chencraft.model.CertificateRevokeRequest;
 import com.chencraft.model.OnboardingToken;
@@ -20,6 +23,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.NonNull;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -27,6 +31,7 @@ import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import static com.chencraft.api.models.ResponseConstants.*;
@@ -63,6 +68,34 @@ public interface SecureCertificateApi {
             method = RequestMethod.POST)
     Mono<@NonNull ResponseEntity<?>> renew(@Parameter(in = ParameterIn.DEFAULT, description = "Certificate renewal request", schema = @Schema(implementation = CertificateRenewal.class)) @NotNull @Valid @RequestBody CertificateRenewal certificateRenewal);
 
+    @Operation(summary = "Renew client certificate from a CSR", description = "Refresh client certificate before expiry for a key pair generated on the device. Accepts a PEM-encoded PKCS#10 CSR and returns the PEM certificate chain; the CN is taken from the presented client certificate", security = {
+            @SecurityRequirement(name = "mTLS")}, tags = {TLS})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "PEM certificate chain, leaf first", content = @Content(mediaType = "application/x-pem-file", schema = @Schema(implementation = String.class))),
+            @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
+            @ApiResponse(responseCode = "401", ref = UNAUTHORIZED_RESPONSE),
+            @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)
+    })
+    @RequestMapping(value = "/certificate/renew/csr",
+            produces = {"application/x-pem-file", MediaType.APPLICATION_JSON_VALUE},
+            consumes = {"application/pkcs10", MediaType.TEXT_PLAIN_VALUE},
+            method = RequestMethod.POST)
+    Mono<@NonNull ResponseEntity<?>> renewFromCsr(@Parameter(in = ParameterIn.DEFAULT, description = "PEM-encoded PKCS#10 certificate signing request", required = true) @NotNull @Size(max = CertificateApi.MAX_CSR_LENGTH) @RequestBody String csr);
+
+    @Operation(summary = "Issue certificates to a batch of devices", description = "Issues certificates with server-generated keys to every listed device, signing in parallel. Streams one JSON object per line and device as soon as its certificate is recorded; failed devices are reported in the stream with their status", security = {
+            @SecurityRequirement(name = "mTLS")}, tags = {TLS})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "One JSON object per line and device"),
+            @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
+            @ApiResponse(responseCode = "401", ref = UNAUTHORIZED_RESPONSE),
+            @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)
+    })
+    @RequestMapping(value = "/certificate/issue/batch",
+            produces = {"application/x-ndjson"},
+            consumes = {MediaType.APPLICATION_JSON_VALUE},
+            method = RequestMethod.POST)
+    Flux<@NonNull CertificateIssueResult> issueBatch(@Parameter(in = ParameterIn.DEFAULT, description = "Devices to issue certificates to", schema = @Schema(implementation = CertificateBatchIssueRequest.class)) @NotNull @Valid @RequestBody CertificateBatchIssueRequest batchRequest);
+
     @Operation(summary = "Revoke certificate(s)", description = "Revokes certificate record identified by mongoId, deviceId, or fingerprintSha256.", security = {
             @SecurityRequirement(name = "mTLS")}, tags = {TLS})
     @ApiResponses(value = {
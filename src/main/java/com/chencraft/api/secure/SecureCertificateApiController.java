@@ -2,11 +2,13 @@ package com.chencraft.api.secure;
 
 import com.chencraft.common.component.AuthorizationTokenStorage;
 import com.chencraft.common.service.cert.CertificateService;
+import com.chencraft.common.service.cert.ClientCertificateResolver;
 import com.chencraft.common.service.cert.MTlsService;
+import com.chencraft.model.CertificateBatchIssueRequest;
+import com.chencraft.model.CertificateIssueResult;
 import com.chencraft.model.CertificateRenewal;
 import com.chencraft.model.CertificateRevokeRequest;
 import com.chencraft.model.OnboardingToken;
-import com.chencraft.utils.CertificateUtils;
 import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
 import jakarta.servlet.http.HttpServletRequest;
@@ -15,6 +17,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -29,6 +32,7 @@ public class SecureCertificateApiController implements SecureCertificateApi {
     private final AuthorizationTokenStorage tokenStorage;
     private final CertificateService certificateService;
     private final MTlsService mTlsService;
+    private final ClientCertificateResolver clientCertificateResolver;
     private final HttpServletRequest request;
 
 
@@ -42,10 +46,12 @@ public class SecureCertificateApiController implements SecureCertificateApi {
     public SecureCertificateApiController(AuthorizationTokenStorage tokenStorage,
                                           CertificateService certificateService,
                                           MTlsService mTlsService,
+                                          ClientCertificateResolver clientCertificateResolver,
                                           HttpServletRequest request) {
         this.tokenStorage = tokenStorage;
         this.certificateService = certificateService;
         this.mTlsService = mTlsService;
+        this.clientCertificateResolver = clientCertificateResolver;
         this.request = request;
     }
 
@@ -64,22 +70,43 @@ public class SecureCertificateApiController implements SecureCertificateApi {
      * verified client cert presented at the nginx mTLS boundary; any deviceId in the request body
      * is ignored. Returns a PEM bundle when requested.
      *
-     * @param renewal payload — only {@code pemFormat} is honoured
+     * @param renewal payload — only {@code pemFormat} and {@code keyProfile} are honoured
      * @return reactive ResponseEntity from CertificateService, or 401 if no verifiable client cert was presented
      */
     @Override
     public Mono<@NonNull ResponseEntity<?>> renew(CertificateRenewal renewal) {
-        String clientCert = request.getHeader("X-Client-Cert");
-        if (clientCert == null || clientCert.isBlank()) {
+        String verifiedDeviceId = verifiedDeviceId();
+        if (verifiedDeviceId == null) {
             return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
         }
-        String verifiedDeviceId;
-        try {
-            verifiedDeviceId = CertificateUtils.extractCNSubject(clientCert);
-        } catch (Exception e) {
+        return certificateService.issueCertificate(verifiedDeviceId, renewal.isPemFormat(), renewal.getKeyProfile());
+    }
+
+    /**
+     * Renews the calling device's certificate for a key pair generated on the device. As with {@link #renew},
+     * the CN is derived from the verified client cert and the CSR subject is ignored.
+     *
+     * @param csr PEM-encoded PKCS#10 certificate signing request
+     * @return reactive ResponseEntity with the PEM certificate chain, or 401 if no verifiable client cert was presented
+     */
+    @Override
+    public Mono<@NonNull ResponseEntity<?>> renewFromCsr(String csr) {
+        String verifiedDeviceId = verifiedDeviceId();
+        if (verifiedDeviceId == null) {
             return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
         }
-        return certificateService.issueCertificate(verifiedDeviceId, renewal.isPemFormat());
+        return certificateService.signCertificate(verifiedDeviceId, csr);
+    }
+
+    /**
+     * Issues certificates to a batch of devices, e.g. when onboarding a fleet.
+     *
+     * @param batchRequest devices and key profile
+     * @return stream of per-device results in completion order
+     */
+    @Override
+    public Flux<@NonNull CertificateIssueResult> issueBatch(CertificateBatchIssueRequest batchRequest) {
+        return certificateService.issueCertificates(batchRequest.getDeviceIds(), batchRequest.getKeyProfile());
     }
 
     @Override
@@ -95,16 +122,41 @@ public class SecureCertificateApiController implements SecureCertificateApi {
 
         if (revokeRequest.getMongoId() != null && !revokeRequest.getMongoId().isBlank()) {
             return mTlsService.revokeById(revokeRequest.getMongoId(), reason)
+                              .doOnNext(this::publishIfRevoked)
                               .map(found -> ResponseEntity.ok(found ? "1 record affected. " : "0 records affected."));
-        }
-
-        if (revokeRequest.getFingerprintSha256() != null && !revokeRequest.getFingerprintSha256().isBlank()) {
+        } else if (revokeRequest.getFingerprintSha256() != null && !revokeRequest.getFingerprintSha256().isBlank()) {
             return mTlsService.revokeByFingerprint(revokeRequest.getFingerprintSha256(), reason)
+                              .doOnNext(this::publishIfRevoked)
                               .map(found -> ResponseEntity.ok(found ? "1 record affected. " : "0 records affected."));
+        } else {
+            // deviceId path: revoke all active certificates for the device
+            return mTlsService.revokeByDeviceId(revokeRequest.getDeviceId(), reason)
+                              .doOnNext(count -> publishIfRevoked(count > 0))
+                              .map(count -> ResponseEntity.ok(count + " records affected. "));
+        }
+    }
+
+    /**
+     * Publishes the new CRL right away rather than at the next scheduled refresh, unless nothing was revoked
+     */
+    private void publishIfRevoked(boolean revoked) {
+        if (revoked) {
+            certificateService.publishRevocations();
         }
+    }
 
-        // deviceId path: revoke all active certificates for the device
-        return mTlsService.revokeByDeviceId(revokeRequest.getDeviceId(), reason)
-                          .map(count -> ResponseEntity.ok(count + " records affected. "));
+    /**
+     * @return CN of the client cert presented at the nginx mTLS boundary, or null if there is none or it cannot be parsed
+     */
+    private String verifiedDeviceId() {
+        String clientCert = request.getHeader("X-Client-Cert");
+        if (clientCert == null || clientCert.isBlank()) {
+            return null;
+        }
+        try {
+            return clientCertificateResolver.resolve(clientCert).commonName();
+        } catch (Exception e) {
+            return null;
+        }
     }
 }
@@ -5,6 +5,10 @@
  */
 package com.chencraft.api.secure;
 
+import com.chencraft.model.FileBatchDeleteRequest;
+import com.chencraft.model.FileBatchUpload;
+import com.chencraft.model.FileMetadata;
+import com.chencraft.model.FileOperationResult;
 import com.chencraft.model.FileUpload;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,11 +18,18 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import lombok.NonNull;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
 
 import static com.chencraft.api.models.ResponseConstants.*;
 import static com.chencraft.api.models.TagConstants.FILE;
@@ -31,14 +42,65 @@ public interface SecureFileApi {
             @SecurityRequirement(name = "mTLS")}, tags = {FILE})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", ref = OK_FILE_RESPONSE),
+            @ApiResponse(responseCode = "206", description = "Requested byte range of the file"),
+            @ApiResponse(responseCode = "304", description = "File has not changed since the client's copy"),
             @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
             @ApiResponse(responseCode = "401", ref = UNAUTHORIZED_RESPONSE),
             @ApiResponse(responseCode = "404", ref = FILE_NOT_FOUND_RESPONSE),
+            @ApiResponse(responseCode = "416", description = "Requested range lies outside the file"),
             @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
     @RequestMapping(value = "/file/{filename}", method = RequestMethod.GET)
-    ResponseEntity<@NonNull Resource> secureFile(@Parameter(in = ParameterIn.PATH, description = "Filename to be downloaded", required = true, schema = @Schema(), example = "test_connection") @PathVariable("filename") String filename
+    Mono<@NonNull ResponseEntity<@NonNull Resource>> secureFile(@Parameter(in = ParameterIn.PATH, description = "Filename to be downloaded", required = true, schema = @Schema(), example = "test_connection") @PathVariable("filename") String filename,
+            @Parameter(hidden = true) @RequestHeader HttpHeaders headers
     );
 
+    @Operation(summary = "Describe file in private storage", description = "Headers of the private file download without its content", security = {
+            @SecurityRequirement(name = "mTLS")}, tags = {FILE})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "File exists, size and validators in the headers"),
+            @ApiResponse(responseCode = "304", description = "File has not changed since the client's copy"),
+            @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
+            @ApiResponse(responseCode = "401", ref = UNAUTHORIZED_RESPONSE),
+            @ApiResponse(responseCode = "404", ref = FILE_NOT_FOUND_RESPONSE),
+            @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
+    @RequestMapping(value = "/file/{filename}", method = RequestMethod.HEAD)
+    Mono<@NonNull ResponseEntity<@NonNull Resource>> secureFileMetadata(@Parameter(in = ParameterIn.PATH, description = "Filename to be described", required = true, schema = @Schema(), example = "test_connection") @PathVariable("filename") String filename,
+            @Parameter(hidden = true) @RequestHeader HttpHeaders headers
+    );
+
+    @Operation(summary = "List files in storage", description = "Stream the metadata of every file in a namespace as newline-delimited JSON, in filename order",
+            security = {@SecurityRequirement(name = "mTLS")}, tags = {FILE})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "One JSON object per line and file"),
+            @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
+            @ApiResponse(responseCode = "401", ref = UNAUTHORIZED_RESPONSE),
+            @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
+    @RequestMapping(value = "/file",
+            produces = {"application/x-ndjson"},
+            method = RequestMethod.GET)
+    Flux<@NonNull FileMetadata> listFiles(
+            @Parameter(
+                    in = ParameterIn.QUERY,
+                    name = "namespace",
+                    description = "Namespace to list",
+                    required = true,
+                    schema = @Schema(implementation = FileUpload.Type.class, example = "PRIVATE")
+            )
+            @RequestParam("namespace") FileUpload.Type namespace,
+            @Parameter(
+                    in = ParameterIn.QUERY,
+                    name = "startAfter",
+                    description = "Continue the listing after this filename, the last one of the previous page"
+            )
+            @RequestParam(value = "startAfter", required = false) String startAfter,
+            @Parameter(
+                    in = ParameterIn.QUERY,
+                    name = "limit",
+                    description = "Maximum number of files to list",
+                    schema = @Schema(defaultValue = "1000")
+            )
+            @RequestParam(value = "limit", defaultValue = "1000") @Min(1) @Max(100000) int limit);
+
     @Operation(summary = "Upload file to specific storage location", description = "Upload file to cloud storage", security = {@SecurityRequirement(name = "mTLS")}, tags = {FILE})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "File being uploaded successfully"),
@@ -48,7 +110,20 @@ public interface SecureFileApi {
     @RequestMapping(value = "/file",
             consumes = {"multipart/form-data"},
             method = RequestMethod.POST)
-    ResponseEntity<?> uploadFile(@ModelAttribute @Valid FileUpload request);
+    Mono<@NonNull ResponseEntity<?>> uploadFile(@ModelAttribute @Valid FileUpload request);
+
+    @Operation(summary = "Upload several files to specific storage location", description = "Upload files to cloud storage in parallel, reporting the outcome per file", security = {@SecurityRequirement(name = "mTLS")}, tags = {FILE})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All files being uploaded successfully"),
+            @ApiResponse(responseCode = "207", description = "Some files failed to upload, see the per-file results"),
+            @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
+            @ApiResponse(responseCode = "401", ref = UNAUTHORIZED_RESPONSE),
+            @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
+    @RequestMapping(value = "/file/batch",
+            consumes = {"multipart/form-data"},
+            produces = {"application/json"},
+            method = RequestMethod.POST)
+    Mono<@NonNull ResponseEntity<@NonNull List<FileOperationResult>>> uploadFiles(@ModelAttribute @Valid FileBatchUpload request);
 
     @Operation(summary = "Delete file from storage", description = "Delete file if exists",
             security = {@SecurityRequirement(name = "mTLS")}, tags = {FILE})
@@ -58,7 +133,7 @@ public interface SecureFileApi {
             @ApiResponse(responseCode = "401", ref = UNAUTHORIZED_RESPONSE),
             @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
     @RequestMapping(value = "/file/{filename}", method = RequestMethod.DELETE)
-    ResponseEntity<?> deleteFile(
+    Mono<@NonNull ResponseEntity<?>> deleteFile(
             @Parameter(
                     in = ParameterIn.PATH,
                     description = "Filename to be deleted",
@@ -74,4 +149,18 @@ public interface SecureFileApi {
                     schema = @Schema(implementation = FileUpload.Type.class, example = "PRIVATE")
             )
             @RequestParam("namespace") FileUpload.Type namespace);
+
+    @Operation(summary = "Delete several files from storage", description = "Delete files if they exist, reporting the outcome per file",
+            security = {@SecurityRequirement(name = "mTLS")}, tags = {FILE})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All files being deleted successfully"),
+            @ApiResponse(responseCode = "207", description = "Some files failed to be deleted, see the per-file results"),
+            @ApiResponse(responseCode = "400", ref = INVALID_INPUT_RESPONSE),
+            @ApiResponse(responseCode = "401", ref = UNAUTHORIZED_RESPONSE),
+            @ApiResponse(ref = INTERNAL_SERVER_ERROR_RESPONSE)})
+    @RequestMapping(value = "/file/batch/delete",
+            consumes = {"application/json"},
+            produces = {"application/json"},
+            method = RequestMethod.POST)
+    Mono<@NonNull ResponseEntity<@NonNull List<FileOperationResult>>> deleteFiles(@RequestBody @Valid FileBatchDeleteRequest request);
 }
@@ -4,19 +4,30 @@ import com.chencraft.api.ApiException;
 import com.chencraft.common.component.AlertMessenger;
 import com.chencraft.common.service.file.FileService;
 import com.chencraft.common.service.file.FileTokenService;
+import com.chencraft.model.FileBatchDeleteRequest;
+import com.chencraft.model.FileBatchUpload;
+import com.chencraft.model.FileMetadata;
+import com.chencraft.model.FileOperationResult;
 import com.chencraft.model.FileUpload;
 import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -32,6 +43,7 @@ public class SecureFileApiController implements SecureFileApi {
     private final FileService fileService;
     private final FileTokenService fileTokenService;
     private final AlertMessenger alertMessenger;
+    private final int batchParallelism;
 
     /**
      * Constructs SecureFileApiController.
@@ -39,66 +51,182 @@ public class SecureFileApiController implements SecureFileApi {
      * @param fileService      file storage service abstraction
      * @param fileTokenService service for generating file access tokens
      * @param alertMessenger   service for sending operational alerts
+     * @param batchParallelism number of files of a batch upload transferred at the same time
      */
     @Autowired
     public SecureFileApiController(FileService fileService,
                                    FileTokenService fileTokenService,
-                                   AlertMessenger alertMessenger) {
+                                   AlertMessenger alertMessenger,
+                                   @Value("${app.file.batch-parallelism:4}") int batchParallelism) {
         this.fileService = fileService;
         this.fileTokenService = fileTokenService;
         this.alertMessenger = alertMessenger;
+        this.batchParallelism = batchParallelism;
     }
 
     /**
      * Downloads a private file by filename.
      *
      * @param filename object key from the PRIVATE storage
-     * @return resource stream or error from FileService
+     * @param headers  request headers; Range/If-Range select a partial download
+     * @return Mono emitting the resource stream or error from FileService
      */
     @Override
-    public ResponseEntity<@NonNull Resource> secureFile(String filename) {
-        return fileService.downloadFile(FileUpload.Type.PRIVATE, filename);
+    public Mono<@NonNull ResponseEntity<@NonNull Resource>> secureFile(String filename, HttpHeaders headers) {
+        return fileService.downloadFileAsync(FileUpload.Type.PRIVATE, filename, headers);
+    }
+
+    /**
+     * Describes a private file without transferring it.
+     *
+     * @param filename object key from the PRIVATE storage
+     * @param headers  request headers; If-None-Match/If-Modified-Since may yield 304
+     * @return Mono emitting HTTP 200 with the download headers and no body, or error from FileService
+     */
+    @Override
+    public Mono<@NonNull ResponseEntity<@NonNull Resource>> secureFileMetadata(String filename, HttpHeaders headers) {
+        return fileService.headFileAsync(FileUpload.Type.PRIVATE, filename, headers);
+    }
+
+    /**
+     * Streams the files of a namespace as NDJSON; storage pages are fetched only as fast as the client reads.
+     *
+     * @param namespace  namespace to list
+     * @param startAfter filename the listing continues after, may be null
+     * @param limit      maximum number of files to emit
+     * @return Flux emitting one metadata entry per file
+     */
+    @Override
+    public Flux<@NonNull FileMetadata> listFiles(FileUpload.Type namespace, String startAfter, int limit) {
+        return fileService.listFiles(namespace, startAfter)
+                          .take(limit);
     }
 
     /**
      * Uploads a file to the configured destination in PRIVATE storage.
+     * The servlet thread is released while storage and Mongo respond.
      *
      * @param request multipart request binding including destination and file
-     * @return HTTP 200 when uploaded
+     * @return Mono emitting HTTP 200 when uploaded, with a one-time access URL for SHARE uploads
      * @throws com.chencraft.api.ApiException if file bytes cannot be read
      */
     @Override
-    public ResponseEntity<?> uploadFile(FileUpload request) {
-        String filename = request.getFile().getOriginalFilename();
-        String contentType = request.getFile().getContentType();
-        byte[] content;
-        try {
-            content = request.getFile().getBytes();
-        } catch (IOException e) {
-            throw new ApiException(HttpStatus.BAD_REQUEST, "Failed to read in file: " + filename, e);
-        }
+    public Mono<@NonNull ResponseEntity<?>> uploadFile(FileUpload request) {
+        MultipartFile file = request.getFile();
+        String filename = file.getOriginalFilename();
+        Mono<@NonNull Void> upload = upload(request.getDestination(), file);
 
-        fileService.uploadFile(request.getDestination(), filename, contentType, content);
         if (request.getDestination() == FileUpload.Type.SHARE) {
-            String accessUrl = fileTokenService.generateAccessToken(filename);
-            alertMessenger.alertFileShare(filename, accessUrl);
-            return ResponseEntity.ok()
-                                 .contentType(MediaType.APPLICATION_JSON)
-                                 .body(Map.of(
-                                         "message", "File uploaded successfully for one-time sharing.",
-                                         "url", accessUrl
-                                 ));
+            return upload.then(share(filename))
+                         .map(accessUrl -> ResponseEntity.ok()
+                                                         .contentType(MediaType.APPLICATION_JSON)
+                                                         .body(Map.of(
+                                                                 "message", "File uploaded successfully for one-time sharing.",
+                                                                 "url", accessUrl
+                                                         )));
         } else {
-            return new ResponseEntity<>(HttpStatus.OK);
+            return upload.thenReturn(new ResponseEntity<>(HttpStatus.OK));
+        }
+    }
+
+    /**
+     * Streams the multipart temp file into storage instead of pulling the whole upload onto the heap
+     */
+    private Mono<@NonNull Void> upload(FileUpload.Type destination, MultipartFile file) {
+        String filename = file.getOriginalFilename();
+        return Mono.using(file::getInputStream,
+                          content -> fileService.uploadFileAsync(destination, filename, file.getContentType(), content),
+                          SecureFileApiController::closeQuietly)
+                   .onErrorMap(IOException.class, e -> new ApiException(HttpStatus.BAD_REQUEST, "Failed to read in file: " + filename, e));
+    }
+
+    /**
+     * Issues the one-time access URL of a SHARE upload and announces it
+     */
+    private Mono<@NonNull String> share(String filename) {
+        return fileTokenService.generateAccessToken(filename)
+                               .doOnNext(accessUrl -> alertMessenger.alertFileShare(filename, accessUrl));
+    }
+
+    /**
+     * Uploads several files to the same destination, up to app.file.batch-parallelism at a time.
+     * A failing file does not abort the others; SHARE uploads get a one-time access URL each.
+     *
+     * @param request multipart request binding including destination and files
+     * @return HTTP 200 when all files were uploaded, 207 with per-file results otherwise
+     */
+    @Override
+    public Mono<@NonNull ResponseEntity<@NonNull List<FileOperationResult>>> uploadFiles(FileBatchUpload request) {
+        FileUpload.Type destination = request.getDestination();
+        return Flux.fromIterable(request.getFiles())
+                   .flatMapSequential(file -> uploadOne(destination, file), batchParallelism)
+                   .collectList()
+                   .map(SecureFileApiController::toBatchResponse);
+    }
+
+    private Mono<@NonNull FileOperationResult> uploadOne(FileUpload.Type destination, MultipartFile file) {
+        String filename = file.getOriginalFilename();
+        // One open stream per file in flight
+        Mono<@NonNull FileOperationResult> upload = upload(destination, file)
+                .then(Mono.fromCallable(() -> FileOperationResult.success(filename)));
+
+        if (destination == FileUpload.Type.SHARE) {
+            upload = upload.flatMap(result -> share(filename).map(accessUrl -> {
+                result.setUrl(accessUrl);
+                return result;
+            }));
         }
+        return upload.onErrorResume(e -> {
+            log.error("Failed to upload {} in batch", filename, e);
+            HttpStatus status = e instanceof ApiException apiException ? apiException.getCode() : HttpStatus.INTERNAL_SERVER_ERROR;
+            return Mono.just(FileOperationResult.failure(filename, status, e.getMessage()));
+        });
     }
 
     @Override
-    public ResponseEntity<?> deleteFile(String filename, FileUpload.Type namespace) {
-        fileService.deleteFile(namespace, filename);
-        if (namespace == FileUpload.Type.SHARE) {
-            fileTokenService.revokeAccessToken(filename);
+    public Mono<@NonNull ResponseEntity<?>> deleteFile(String filename, FileUpload.Type namespace) {
+        return fileService.deleteFileAsync(namespace, filename)
+                          .then(Mono.<ResponseEntity<?>>fromCallable(() -> {
+                              if (namespace == FileUpload.Type.SHARE) {
+                                  fileTokenService.revokeAccessToken(filename);
+                              }
+                              return new ResponseEntity<>(HttpStatus.OK);
+                          }));
+    }
+
+    /**
+     * Deletes several files of one namespace, revoking the access tokens of deleted SHARE files.
+     *
+     * @param request namespace and filenames to delete
+     * @return HTTP 200 when all files were deleted, 207 with per-file results otherwise
+     */
+    @Override
+    public Mono<@NonNull ResponseEntity<@NonNull List<FileOperationResult>>> deleteFiles(FileBatchDeleteRequest request) {
+        FileUpload.Type namespace = request.getNamespace();
+        return fileService.deleteFilesAsync(namespace, request.getFilenames())
+                          .collectList()
+                          .doOnNext(results -> {
+                              if (namespace == FileUpload.Type.SHARE) {
+                                  results.stream()
+                                         .filter(FileOperationResult::isSucceeded)
+                                         .forEach(result -> fileTokenService.revokeAccessToken(result.getFilename()));
+                              }
+                          })
+                          .map(SecureFileApiController::toBatchResponse);
+    }
+
+    private static ResponseEntity<@NonNull List<FileOperationResult>> toBatchResponse(List<FileOperationResult> results) {
+        HttpStatus status = results.stream().allMatch(FileOperationResult::isSucceeded) ? HttpStatus.OK : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status)
+                             .contentType(MediaType.APPLICATION_JSON)
+                             .body(results);
+    }
+
+    private static void closeQuietly(InputStream content) {
+        try {
+            content.close();
+        } catch (IOException e) {
+            log.warn("Failed to close uploaded file stream", e);
         }
-        return new ResponseEntity<>(HttpStatus.OK);
     }
 }
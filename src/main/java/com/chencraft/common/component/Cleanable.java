@@ -1,5 +1,19 @@
 package com.chencraft.common.component;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
 public interface Cleanable {
     void cleanUp();
+
+    /**
+     * Counter of documents a cleanup run touched, tagged by collection and action (soft_delete|hard_delete)
+     */
+    static Counter cleanupCounter(MeterRegistry meterRegistry, String collection, String action) {
+        return Counter.builder("cleanup.documents")
+                      .description("Documents soft-deleted or purged by the periodic cleanup")
+                      .tag("collection", collection)
+                      .tag("action", action)
+                      .register(meterRegistry);
+    }
 }
@@ -13,7 +13,8 @@ public class CacheConfig {
 
     @Bean
     public CaffeineCacheManager cacheManager(MeterRegistry meterRegistry) {
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager("certificatesByFingerprint");
+        // Certificate records by fingerprint are cached by CertificateCache, which evicts per fingerprint
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
         cacheManager.setCaffeine(
                 Caffeine.newBuilder()
                         .maximumSize(10_000)
@@ -10,6 +10,10 @@ import org.springframework.context.annotation.Lazy;
 @Getter
 @Configuration
 public class S3Config {
+    private static final int MIN_PART_SIZE_MB = 5;
+    // Parts are buffered in a byte[], well below both the int range and R2's 5 GiB part limit
+    private static final int MAX_PART_SIZE_MB = 1024;
+
     /**
      * Configuration class for R2 credentials and endpoint
      */
@@ -17,12 +21,27 @@ public class S3Config {
     private final String secretKey;
     private final String endpoint;
 
+    /**
+     * Fixed size of each multipart upload part in bytes, bounds the memory held per upload
+     */
+    private final int partSize;
+
     @Autowired
     public S3Config(@Value("${cloudflare.r2.account-id}") String accountId,
                     @Value("${cloudflare.r2.access-key}") String accessKey,
-                    @Value("${cloudflare.r2.secret-key}") String secretKey) {
+                    @Value("${cloudflare.r2.secret-key}") String secretKey,
+                    @Value("${cloudflare.r2.multipart.part-size-mb:8}") int partSizeMb) {
         this.accessKey = accessKey;
         this.secretKey = secretKey;
         this.endpoint = String.format("https://%s.r2.cloudflarestorage.com", accountId);
+
+        // S3 (and R2) reject multipart parts below 5 MiB, except for the last one
+        if (partSizeMb < MIN_PART_SIZE_MB) {
+            throw new IllegalArgumentException("cloudflare.r2.multipart.part-size-mb must be at least " + MIN_PART_SIZE_MB);
+        }
+        if (partSizeMb > MAX_PART_SIZE_MB) {
+            throw new IllegalArgumentException("cloudflare.r2.multipart.part-size-mb must be at most " + MAX_PART_SIZE_MB);
+        }
+        this.partSize = partSizeMb * 1024 * 1024;
     }
 }
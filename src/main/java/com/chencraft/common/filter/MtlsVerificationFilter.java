@@ -2,11 +2,13 @@ package com.chencraft.common.filter;
 
 
 import com.chencraft.common.component.AlertMessenger;
+import com.chencraft.common.service.cert.ClientCertificateResolver;
 import com.chencraft.common.service.cert.MTlsService;
+import com.chencraft.common.service.cert.RevocationIndex;
 import com.chencraft.model.mongo.CertificateRecord;
-import com.chencraft.utils.CertificateUtils;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.PostConstruct;
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -21,30 +23,60 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.time.Clock;
-
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Guards /secure/** behind the client certificate verified by nginx: the X-Client-Verify result, the X-Proxy-Secret
+ * shared with nginx and the certificate record of the X-Client-Cert fingerprint, which must exist and not be revoked.
+ * <p>
+ * Revoked and never-issued certificates are settled from RevocationIndex without a lookup. A record served from
+ * CertificateCache is checked on the request thread. On a cache miss the request goes async
+ * instead of parking the Tomcat worker on Mongo, and is dispatched again once the lookup completes; the verdict is
+ * carried to that dispatch in a request attribute. A lookup exceeding app.mtls.lookup-timeout, or failing, rejects
+ * the request with 503 unless app.mtls.fail-open is set, in which case it is let through.
+ * Thread-safety: stateless per request; Spring singleton.
+ */
 @Slf4j
 @Component
 public class MtlsVerificationFilter extends OncePerRequestFilter {
+    private static final String VERDICT_ATTRIBUTE = MtlsVerificationFilter.class.getName() + ".VERDICT";
+    private static final Verdict ALLOWED = new Verdict(HttpServletResponse.SC_OK, null);
+    private static final Verdict NOT_FOUND = new Verdict(HttpServletResponse.SC_UNAUTHORIZED, "Certificate record not found");
 
     private final MTlsService mtlsService;
+    private final ClientCertificateResolver clientCertificateResolver;
+    private final RevocationIndex revocationIndex;
     private final AlertMessenger alertMessenger;
     private final Clock clock;
     private final boolean mongoCheckMandatory;
     private final byte[] expectedProxySecret;
+    private final Duration lookupTimeout;
+    private final boolean failOpen;
 
     @Autowired
     public MtlsVerificationFilter(MTlsService mtlsService,
+                                  ClientCertificateResolver clientCertificateResolver,
+                                  RevocationIndex revocationIndex,
                                   AlertMessenger alertMessenger,
                                   Clock clock,
                                   @Value("${app.mtls.mongo-check-mandatory}") boolean mongoCheckMandatory,
-                                  @Value("${app.mtls.proxy-secret:}") String proxySecret) {
+                                  @Value("${app.mtls.proxy-secret:}") String proxySecret,
+                                  @Value("${app.mtls.lookup-timeout:PT2S}") Duration lookupTimeout,
+                                  @Value("${app.mtls.fail-open:false}") boolean failOpen) {
         this.mtlsService = mtlsService;
+        this.clientCertificateResolver = clientCertificateResolver;
+        this.revocationIndex = revocationIndex;
         this.alertMessenger = alertMessenger;
         this.clock = clock;
         this.mongoCheckMandatory = mongoCheckMandatory;
         this.expectedProxySecret = (proxySecret == null || proxySecret.isBlank())
                 ? null
                 : proxySecret.getBytes(StandardCharsets.UTF_8);
+        this.lookupTimeout = lookupTimeout;
+        this.failOpen = failOpen;
     }
 
     @PostConstruct
@@ -63,10 +95,24 @@ public class MtlsVerificationFilter extends OncePerRequestFilter {
         return !request.getRequestURI().startsWith("/secure/");
     }
 
+    /**
+     * Async dispatches are filtered too, to apply the verdict of a lookup that completed off the request thread
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
     @Override
     protected void doFilterInternal(@Nonnull HttpServletRequest request,
                                     @Nonnull HttpServletResponse response,
                                     @Nonnull FilterChain filterChain) throws ServletException, IOException {
+        if (isAsyncDispatch(request) && request.getAttribute(VERDICT_ATTRIBUTE) instanceof Verdict verdict) {
+            // Verified before going async, either by this filter or before the controller's own async processing
+            apply(verdict, request, response, filterChain);
+            return;
+        }
+
         // Defense in depth: when configured, the request must carry the shared secret nginx injects.
         // This stops any peer that reaches the upstream directly from forging X-Client-Verify/X-Client-Cert.
         if (expectedProxySecret != null) {
@@ -98,7 +144,7 @@ public class MtlsVerificationFilter extends OncePerRequestFilter {
             // Client cert should always be present when proxied through nginx, it is not available when running tests
             String fingerprint;
             try {
-                fingerprint = CertificateUtils.computeSha256Fingerprint(clientCert);
+                fingerprint = clientCertificateResolver.resolve(clientCert).fingerprint();
             } catch (RuntimeException e) {
                 log.warn("Rejecting {} — X-Client-Cert is not a valid PEM: {}",
                         request.getRequestURI(), e.getMessage());
@@ -107,25 +153,98 @@ public class MtlsVerificationFilter extends OncePerRequestFilter {
             }
             log.debug("Client certificate fingerprint: {}", fingerprint);
 
-            CertificateRecord certRecord = mtlsService.findByFingerprint(fingerprint)
-                                                      .blockOptional()
-                                                      .orElse(null);
-
-            if (certRecord == null && mongoCheckMandatory) {
-                response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Certificate record not found");
+            CertificateRecord revokedRecord = revocationIndex.findRevoked(fingerprint);
+            if (revokedRecord != null) {
+                apply(revoked(revokedRecord, fingerprint, request.getRequestURI()), request, response, filterChain);
+                return;
+            }
+            // Only reported while the change stream delivers certificates issued by other instances
+            if (revocationIndex.isUnknown(fingerprint)) {
+                apply(mongoCheckMandatory ? NOT_FOUND : ALLOWED, request, response, filterChain);
                 return;
             }
 
-            // Certificate revocation check
-            if (certRecord != null && certRecord.getRevokedAt() != null) {
-                log.warn("Certificate revoked for {} on {}", fingerprint, certRecord.getRevokedAt()
-                                                                                    .atZone(clock.getZone()));
-                response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Certificate revoked");
-                alertMessenger.alertRevokedCertificateAccess(certRecord, request.getRequestURI());
+            CompletableFuture<Optional<CertificateRecord>> lookup = mtlsService.findByFingerprint(fingerprint)
+                                                                               .map(Optional::of)
+                                                                               .defaultIfEmpty(Optional.empty())
+                                                                               .timeout(lookupTimeout)
+                                                                               .toFuture();
+            if (!lookup.isDone()) {
+                verifyAsync(lookup, fingerprint, request);
                 return;
             }
+            apply(verdictOf(lookup, fingerprint, request.getRequestURI()), request, response, filterChain);
+            return;
         }
 
+        apply(ALLOWED, request, response, filterChain);
+    }
+
+    /**
+     * Releases the request thread until the lookup completes, then dispatches the request again to apply the verdict
+     */
+    private void verifyAsync(CompletableFuture<Optional<CertificateRecord>> lookup, String fingerprint, HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        AsyncContext asyncContext = request.startAsync();
+        lookup.whenComplete((certRecord, error) -> {
+            try {
+                request.setAttribute(VERDICT_ATTRIBUTE, verdictOf(lookup, fingerprint, uri));
+                asyncContext.dispatch();
+            } catch (IllegalStateException e) {
+                // The container already completed the request, e.g. the client went away
+                log.debug("Could not dispatch {} after certificate lookup", uri, e);
+            }
+        });
+    }
+
+    private void apply(Verdict verdict, HttpServletRequest request, HttpServletResponse response,
+                       FilterChain filterChain) throws ServletException, IOException {
+        if (verdict != ALLOWED) {
+            response.sendError(verdict.status(), verdict.message());
+            return;
+        }
+        request.setAttribute(VERDICT_ATTRIBUTE, ALLOWED);
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * @param lookup completed lookup of the certificate record
+     */
+    private Verdict verdictOf(CompletableFuture<Optional<CertificateRecord>> lookup, String fingerprint, String uri) {
+        CertificateRecord certRecord;
+        try {
+            certRecord = lookup.join().orElse(null);
+        } catch (CompletionException e) {
+            if (failOpen) {
+                log.warn("Certificate lookup for {} failed, letting {} through (fail-open)", fingerprint, uri, e.getCause());
+                return ALLOWED;
+            }
+            log.warn("Certificate lookup for {} failed, rejecting {}", fingerprint, uri, e.getCause());
+            return new Verdict(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Certificate status unavailable");
+        }
+
+        if (certRecord == null && mongoCheckMandatory) {
+            return NOT_FOUND;
+        }
+
+        // Certificate revocation check
+        if (certRecord != null && certRecord.getRevokedAt() != null) {
+            return revoked(certRecord, fingerprint, uri);
+        }
+        return ALLOWED;
+    }
+
+    private Verdict revoked(CertificateRecord certRecord, String fingerprint, String uri) {
+        log.warn("Certificate revoked for {} on {}", fingerprint, certRecord.getRevokedAt()
+                                                                            .atZone(clock.getZone()));
+        alertMessenger.alertRevokedCertificateAccess(certRecord, uri);
+        return new Verdict(HttpServletResponse.SC_UNAUTHORIZED, "Certificate revoked");
+    }
+
+    /**
+     * @param status  HTTP status the request is rejected with, unless it is {@link #ALLOWED}
+     * @param message error message of the rejection
+     */
+    private record Verdict(int status, String message) {
+    }
 }
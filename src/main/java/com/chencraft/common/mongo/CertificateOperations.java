@@ -0,0 +1,35 @@
+package com.chencraft.common.mongo;
+
+import com.chencraft.model.mongo.CertificateRecord;
+import lombok.NonNull;
+import org.bson.BsonValue;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Multi-document certificate updates and change streams that derived queries cannot express, mixed into
+ * CertificateRepository.
+ */
+public interface CertificateOperations {
+    /**
+     * Revokes every active certificate of the given machines except the newly issued ones, in a single updateMany.
+     *
+     * @param machineIds       machines that were just issued new certificates
+     * @param keepFingerprints fingerprints of the new certificates, which stay valid
+     * @param revokedAt        instant recorded as revokedAt
+     * @return number of certificates revoked
+     */
+    Mono<@NonNull Long> supersede(Collection<String> machineIds, Collection<String> keepFingerprints, Instant revokedAt);
+
+    /**
+     * Streams inserts, updates and replacements of certificate records, each with the current document.
+     * Requires a replica set.
+     *
+     * @param resumeAfter resume token of the last event seen, or null to start from now
+     */
+    Flux<@NonNull ChangeStreamEvent<CertificateRecord>> watch(BsonValue resumeAfter);
+}
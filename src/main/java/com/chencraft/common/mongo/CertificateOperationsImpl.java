@@ -0,0 +1,56 @@
+package com.chencraft.common.mongo;
+
+import com.chencraft.model.mongo.CertificateRecord;
+import com.mongodb.client.model.changestream.FullDocument;
+import lombok.NonNull;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * ReactiveMongoTemplate backed implementation of CertificateOperations.
+ */
+public class CertificateOperationsImpl implements CertificateOperations {
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    public CertificateOperationsImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<@NonNull Long> supersede(Collection<String> machineIds, Collection<String> keepFingerprints, Instant revokedAt) {
+        Query query = Query.query(Criteria.where("machineId").in(machineIds)
+                                          .and("isDeleted").is(false)
+                                          .and("revokedAt").is(null)
+                                          .and("fingerprintSha256").nin(keepFingerprints));
+        Update update = new Update().set("revokedAt", revokedAt)
+                                    .set("revokeReason", "Superseded by new certificate")
+                                    .inc("version", 1);
+        return mongoTemplate.updateMulti(query, update, CertificateRecord.class)
+                            .map(result -> result.getModifiedCount());
+    }
+
+    @Override
+    public Flux<@NonNull ChangeStreamEvent<CertificateRecord>> watch(BsonValue resumeAfter) {
+        ChangeStreamOptions.ChangeStreamOptionsBuilder options =
+                ChangeStreamOptions.builder()
+                                   .filter(Aggregation.newAggregation(Aggregation.match(Criteria.where("operationType").in("insert", "update", "replace"))))
+                                   .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        if (resumeAfter != null) {
+            options.resumeAfter(resumeAfter);
+        }
+        return mongoTemplate.changeStream(mongoTemplate.getCollectionName(CertificateRecord.class), options.build(), CertificateRecord.class);
+    }
+}
@@ -3,15 +3,40 @@ package com.chencraft.common.mongo;
 import com.chencraft.model.mongo.CertificateRecord;
 import lombok.NonNull;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.data.mongodb.repository.Update;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
+import java.util.Collection;
+
 @Repository
-public interface CertificateRepository extends ReactiveMongoRepository<@NonNull CertificateRecord, @NonNull String> {
+public interface CertificateRepository extends ReactiveMongoRepository<@NonNull CertificateRecord, @NonNull String>, CertificateOperations {
     Flux<@NonNull CertificateRecord> findByMachineIdAndIsDeletedFalse(String machineId);
 
     Mono<@NonNull CertificateRecord> findByFingerprintSha256AndIsDeletedFalse(String fingerprint);
 
+    Flux<@NonNull CertificateRecord> findByIsDeletedFalse();
+
     Flux<@NonNull CertificateRecord> findByIsDeletedFalseAndRevokedAtIsNull();
+
+    Flux<@NonNull CertificateRecord> findByIsDeletedFalseAndSerialNumberIsNotNull();
+
+    Flux<@NonNull CertificateRecord> findByMachineIdInAndRevokedAt(Collection<String> machineIds, Instant revokedAt);
+
+    /**
+     * Soft-deletes every certificate expired before the threshold in a single updateMany.
+     *
+     * @return number of records marked deleted
+     */
+    @Update("{ '$set': { 'isDeleted': true }, '$inc': { 'version': 1 } }")
+    Mono<@NonNull Long> findAndSoftDeleteByIsDeletedFalseAndExpiresAtBefore(Instant threshold);
+
+    /**
+     * Purges soft-deleted certificates expired before the threshold in a single deleteMany.
+     *
+     * @return number of records removed
+     */
+    Mono<@NonNull Long> deleteByIsDeletedTrueAndExpiresAtBefore(Instant threshold);
 }
@@ -0,0 +1,31 @@
+package com.chencraft.common.mongo;
+
+import com.chencraft.model.mongo.FileToken;
+import lombok.NonNull;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+/**
+ * Atomic single-document operations on file tokens that derived queries cannot express,
+ * mixed into FileTokenRepository.
+ */
+public interface FileTokenOperations {
+    /**
+     * Marks an unused, non-deleted token as used in one findAndModify, so a token is consumed at most once
+     * even under concurrent requests.
+     *
+     * @param token  token value from the share URL
+     * @param usedAt instant recorded as usedAt
+     * @return Mono emitting the consumed token, empty when it does not exist, is deleted or was already used
+     */
+    Mono<@NonNull FileToken> consume(String token, Instant usedAt);
+
+    /**
+     * Reverts a consumption whose download failed, so the token can be used again.
+     * Only applies while usedAt still holds the instant set by that consumption.
+     *
+     * @return Mono emitting true when the token was released
+     */
+    Mono<@NonNull Boolean> release(String token, Instant usedAt);
+}
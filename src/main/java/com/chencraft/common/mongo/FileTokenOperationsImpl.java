@@ -0,0 +1,48 @@
+package com.chencraft.common.mongo;
+
+import com.chencraft.model.mongo.FileToken;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+/**
+ * ReactiveMongoTemplate backed implementation of FileTokenOperations; the queries match the
+ * token_deleted_used_idx compound index of FileToken.
+ */
+public class FileTokenOperationsImpl implements FileTokenOperations {
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    public FileTokenOperationsImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<@NonNull FileToken> consume(String token, Instant usedAt) {
+        Query query = Query.query(Criteria.where("token").is(token)
+                                          .and("isDeleted").is(false)
+                                          .and("usedAt").is(null));
+        // Bumps the version like a save would, so a token read before cannot be saved over the consumption
+        Update update = new Update().set("usedAt", usedAt)
+                                    .inc("version", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), FileToken.class);
+    }
+
+    @Override
+    public Mono<@NonNull Boolean> release(String token, Instant usedAt) {
+        Query query = Query.query(Criteria.where("token").is(token)
+                                          .and("isDeleted").is(false)
+                                          .and("usedAt").is(usedAt));
+        Update update = new Update().unset("usedAt")
+                                    .inc("version", 1);
+        return mongoTemplate.updateFirst(query, update, FileToken.class)
+                            .map(result -> result.getModifiedCount() > 0);
+    }
+}
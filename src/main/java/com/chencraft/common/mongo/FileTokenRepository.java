@@ -3,12 +3,39 @@ package com.chencraft.common.mongo;
 import com.chencraft.model.mongo.FileToken;
 import lombok.NonNull;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.data.mongodb.repository.Update;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
 
 @Repository
-public interface FileTokenRepository extends ReactiveMongoRepository<@NonNull FileToken, @NonNull String> {
+public interface FileTokenRepository extends ReactiveMongoRepository<@NonNull FileToken, @NonNull String>, FileTokenOperations {
     Flux<@NonNull FileToken> findByFilenameAndIsDeletedFalse(String filename);
 
     Flux<@NonNull FileToken> findByTokenAndIsDeletedFalse(String token);
+
+    /**
+     * Soft-deletes every live token of a file in a single updateMany.
+     *
+     * @return number of tokens marked deleted
+     */
+    @Update("{ '$set': { 'isDeleted': true }, '$inc': { 'version': 1 } }")
+    Mono<@NonNull Long> findAndSoftDeleteByFilenameAndIsDeletedFalse(String filename);
+
+    /**
+     * Soft-deletes every token used before the threshold in a single updateMany.
+     *
+     * @return number of tokens marked deleted
+     */
+    @Update("{ '$set': { 'isDeleted': true }, '$inc': { 'version': 1 } }")
+    Mono<@NonNull Long> findAndSoftDeleteByIsDeletedFalseAndUsedAtBefore(Instant threshold);
+
+    /**
+     * Purges soft-deleted tokens used before the threshold in a single deleteMany.
+     *
+     * @return number of tokens removed
+     */
+    Mono<@NonNull Long> deleteByIsDeletedTrueAndUsedAtBefore(Instant threshold);
 }
@@ -0,0 +1,62 @@
+package com.chencraft.common.mongo;
+
+import com.chencraft.common.service.cert.MTlsService;
+import com.chencraft.common.service.file.FileTokenService;
+import com.chencraft.model.mongo.CertificateRecord;
+import com.chencraft.model.mongo.FileToken;
+import jakarta.annotation.PostConstruct;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static com.chencraft.utils.PublisherUtils.fireAndForget;
+
+/**
+ * Optionally lets Mongo purge soft-deleted file tokens and certificates itself through TTL indexes, limited by a
+ * partial filter to documents already marked deleted. The periodic cleanups still soft-delete; with the indexes in
+ * place their hard-delete step merely finds nothing left to remove.
+ * <p>
+ * Configuration: app.cleanup.ttl-indexes (default false).
+ */
+@Slf4j
+@Component
+public class MongoExpiryIndexes {
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final boolean enabled;
+
+    @Autowired
+    public MongoExpiryIndexes(ReactiveMongoTemplate mongoTemplate,
+                              @Value("${app.cleanup.ttl-indexes:false}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        fireAndForget(ensureExpiryIndex(FileToken.class, "usedAt", FileTokenService.HARD_DELETE_AFTER)
+                              .then(ensureExpiryIndex(CertificateRecord.class, "expiresAt", MTlsService.HARD_DELETE_AFTER)));
+    }
+
+    private Mono<@NonNull String> ensureExpiryIndex(Class<?> entityClass, String field, Duration expireAfter) {
+        Index index = new Index().on(field, Sort.Direction.ASC)
+                                 .named(field + "_ttl_idx")
+                                 .expire(expireAfter)
+                                 .partial(PartialIndexFilter.of(Criteria.where("isDeleted").is(true)));
+        return mongoTemplate.indexOps(entityClass)
+                            .createIndex(index)
+                            .doOnNext(name -> log.info("Ensured TTL index {} on {} ({})", name, entityClass.getSimpleName(), expireAfter));
+    }
+}
@@ -0,0 +1,12 @@
+package com.chencraft.common.mongo;
+
+import com.chencraft.model.mongo.StoredFile;
+import lombok.NonNull;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface StoredFileRepository extends ReactiveMongoRepository<@NonNull StoredFile, @NonNull String> {
+    Mono<@NonNull StoredFile> findFirstBySha256AndKeyNot(String sha256, String key);
+}
@@ -11,11 +11,13 @@ import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
 
@@ -27,6 +29,8 @@ import java.time.Duration;
 @Slf4j
 @Service
 public class GitHubApiService {
+    private static final String SHA256_DIGEST_PREFIX = "sha256:";
+
     private final WebClient webClient;
 
     private final FileService fileService;
@@ -80,7 +84,28 @@ public class GitHubApiService {
      * @throws GitHubUnauthorizedException if token unauthorized
      */
     public void fetchFileFromGitHub(String url, String filename) {
+        fetchFileFromGitHub(url, filename, null);
+    }
+
+    /**
+     * Downloads a file from GitHub asset API and stores it via FileService under PUBLIC bucket,
+     * skipping the download when content with the same SHA-256 digest is already stored.
+     *
+     * @param url      GitHub asset API URL
+     * @param filename file name to use when storing
+     * @param digest   asset digest reported by GitHub (sha256:hex), may be null
+     * @throws GitHubUnauthorizedException if token unauthorized
+     */
+    public void fetchFileFromGitHub(String url, String filename, @Nullable String digest) {
         int timeout = 60;
+        if (digest != null && digest.startsWith(SHA256_DIGEST_PREFIX)
+                && Boolean.TRUE.equals(fileService.reuseStoredContent(FileUpload.Type.PUBLIC, filename,
+                                                                      digest.substring(SHA256_DIGEST_PREFIX.length()))
+                                                  .block(Duration.ofSeconds(timeout)))) {
+            log.info("Skipping fetch of {} from GitHub, identical content is already stored", filename);
+            return;
+        }
+
         log.info("Fetching {} from GitHub: {}", filename, url);
         webClient.get()
                  .uri(url)
@@ -89,11 +114,11 @@ public class GitHubApiService {
                  .accept(MediaType.APPLICATION_OCTET_STREAM)
                  .exchangeToMono(response -> {
                      if (response.statusCode().is2xxSuccessful()) {
-                         return response.bodyToMono(byte[].class)
-                                        .doOnNext(bytes ->
-                                                          fileService.uploadFile(FileUpload.Type.PUBLIC, filename,
-                                                                                 response.headers().contentType().orElse(MediaType.APPLICATION_OCTET_STREAM).toString(),
-                                                                                 bytes));
+                         // Stream the asset straight into storage, the upload blocks so keep it off the event loop
+                         String contentType = response.headers().contentType().orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+                         return Mono.<Void>fromRunnable(() -> fileService.uploadFile(FileUpload.Type.PUBLIC, filename, contentType,
+                                                                               response.bodyToFlux(DataBuffer.class)))
+                                    .subscribeOn(Schedulers.boundedElastic());
                      } else if (HttpStatus.UNAUTHORIZED.equals(response.statusCode())) {
                          return Mono.error(new GitHubUnauthorizedException("Unauthorized request to GitHub"));
                      } else {
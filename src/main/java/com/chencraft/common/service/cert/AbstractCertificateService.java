@@ -1,26 +1,54 @@
 package com.chencraft.common.service.cert;
 
+import com.chencraft.api.ApiException;
+import com.chencraft.model.CertificateIssueResult;
 import com.chencraft.model.CertificatePEM;
+import com.chencraft.model.KeyProfile;
 import com.chencraft.model.mongo.CertificateRecord;
+import com.chencraft.utils.CertificateUtils;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.edec.EdECObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.RSAPublicKey;
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.PKCSException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Consumer;
 
 import static com.chencraft.utils.PublisherUtils.fireAndForget;
 
+@Slf4j
 @RequiredArgsConstructor
 public abstract class AbstractCertificateService implements CertificateService {
+    private static final int MIN_RSA_KEY_SIZE = 2048;
+    private static final int PERSIST_BATCH_SIZE = 100;
+    private static final Duration PERSIST_BATCH_WINDOW = Duration.ofMillis(200);
+
     protected final MTlsService mtlsService;
+    protected final IssuanceMetrics issuanceMetrics;
 
     @Override
-    public Mono<@NonNull ResponseEntity<?>> issueCertificate(String deviceId, boolean pemFormat) {
-        CertificatePEM certificatePem = createCertificateAndPrivateKey(deviceId);
+    public Mono<@NonNull ResponseEntity<?>> issueCertificate(String deviceId, boolean pemFormat, KeyProfile keyProfile) {
+        CertificatePEM certificatePem = issueWithServerKey(deviceId, keyProfile);
         ResponseEntity<?> response;
 
         if (pemFormat) {
@@ -37,14 +65,149 @@ public abstract class AbstractCertificateService implements CertificateService {
                    .doOnSuccess(revokeSupersededCerts(certificatePem.getRecord()));
     }
 
+    @Override
+    public Mono<@NonNull ResponseEntity<?>> signCertificate(String deviceId, String pemCsr) {
+        PKCS10CertificationRequest csr;
+        try {
+            csr = CertificateUtils.parseCertificationRequest(pemCsr);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        validateCertificationRequest(csr);
+
+        CertificatePEM certificatePem;
+        try {
+            certificatePem = signCertificateRequest(deviceId, csr);
+            issuanceMetrics.recordOutcome(IssuanceMetrics.CSR_PROFILE, true);
+        } catch (RuntimeException e) {
+            issuanceMetrics.recordOutcome(IssuanceMetrics.CSR_PROFILE, false);
+            throw e;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/x-pem-file"));
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"client.crt\"");
+        ResponseEntity<?> response = new ResponseEntity<>(certificatePem.getCertificate(), headers, HttpStatus.OK);
+
+        return Mono.<ResponseEntity<?>>just(response)
+                   .doOnSuccess(revokeSupersededCerts(certificatePem.getRecord()));
+    }
+
+    /**
+     * Signs on the parallel scheduler, one worker per core since issuance is CPU-bound, and records the
+     * certificates in bulk per buffer of up to PERSIST_BATCH_SIZE results.
+     */
+    @Override
+    public Flux<@NonNull CertificateIssueResult> issueCertificates(Collection<String> deviceIds, KeyProfile keyProfile) {
+        return Flux.fromIterable(deviceIds)
+                   .distinct()
+                   .flatMap(deviceId -> Mono.fromCallable(() -> issueWithServerKey(deviceId, keyProfile))
+                                            .subscribeOn(Schedulers.parallel())
+                                            .map(certificatePem -> CertificateIssueResult.success(deviceId, certificatePem))
+                                            .onErrorResume(e -> Mono.just(issueFailure(deviceId, e))),
+                            Schedulers.DEFAULT_POOL_SIZE)
+                   .bufferTimeout(PERSIST_BATCH_SIZE, PERSIST_BATCH_WINDOW)
+                   .concatMap(this::recordIssued);
+    }
+
+    /**
+     * Persists the successful results of a buffer; if that fails, their certificates are unknown to mTLS and
+     * reported as failed instead.
+     */
+    private Flux<@NonNull CertificateIssueResult> recordIssued(List<CertificateIssueResult> results) {
+        List<CertificateRecord> records = results.stream()
+                                                 .filter(CertificateIssueResult::isSucceeded)
+                                                 .map(CertificateIssueResult::getRecord)
+                                                 .toList();
+        if (records.isEmpty()) {
+            return Flux.fromIterable(results);
+        }
+        return mtlsService.insertNewRecords(records)
+                          .doOnNext(this::publishSupersededRevocations)
+                          .thenMany(Flux.fromIterable(results))
+                          .onErrorResume(e -> {
+                              log.error("Failed to record {} certificates of a batch", records.size(), e);
+                              return Flux.fromIterable(results)
+                                         .map(result -> result.isSucceeded()
+                                                 ? CertificateIssueResult.failure(result.getDeviceId(), HttpStatus.INTERNAL_SERVER_ERROR, "Failed to record certificate")
+                                                 : result);
+                          });
+    }
+
+    private CertificatePEM issueWithServerKey(String deviceId, KeyProfile keyProfile) {
+        try {
+            CertificatePEM certificatePem = createCertificateAndPrivateKey(deviceId, keyProfile);
+            issuanceMetrics.recordOutcome(keyProfile.toTag(), true);
+            return certificatePem;
+        } catch (RuntimeException e) {
+            issuanceMetrics.recordOutcome(keyProfile.toTag(), false);
+            throw e;
+        }
+    }
+
+    private static CertificateIssueResult issueFailure(String deviceId, Throwable e) {
+        if (e instanceof ApiException apiException) {
+            return CertificateIssueResult.failure(deviceId, apiException.getCode(), apiException.getMessage());
+        }
+        log.error("Failed to issue certificate for {} in batch", deviceId, e);
+        return CertificateIssueResult.failure(deviceId, HttpStatus.INTERNAL_SERVER_ERROR, "Failed to issue certificate");
+    }
+
     private Consumer<ResponseEntity<?>> revokeSupersededCerts(CertificateRecord record) {
         return responseEntity -> {
             if (responseEntity == null || !responseEntity.getStatusCode().is2xxSuccessful()) {
                 return;
             }
-            fireAndForget(mtlsService.insertNewRecord(record));
+            fireAndForget(mtlsService.insertNewRecord(record).doOnNext(this::publishSupersededRevocations));
         };
     }
 
-    protected abstract CertificatePEM createCertificateAndPrivateKey(String deviceId);
+    /**
+     * Renewals revoke the certificates they supersede, which should not wait for the next scheduled publish
+     */
+    private void publishSupersededRevocations(long superseded) {
+        if (superseded > 0) {
+            publishRevocations();
+        }
+    }
+
+    /**
+     * Accepts the same key types the server issues itself (RSA of at least 2048 bits, EC P-256 and Ed25519), and
+     * only when the CSR is signed by its own key, i.e. the requester holds the private key.
+     *
+     * @throws ApiException BAD_REQUEST if the CSR is rejected
+     */
+    private static void validateCertificationRequest(PKCS10CertificationRequest csr) {
+        SubjectPublicKeyInfo publicKeyInfo = csr.getSubjectPublicKeyInfo();
+        AlgorithmIdentifier algorithm = publicKeyInfo.getAlgorithm();
+        try {
+            if (PKCSObjectIdentifiers.rsaEncryption.equals(algorithm.getAlgorithm())) {
+                int keySize = RSAPublicKey.getInstance(publicKeyInfo.parsePublicKey()).getModulus().bitLength();
+                if (keySize < MIN_RSA_KEY_SIZE) {
+                    throw new ApiException(HttpStatus.BAD_REQUEST, "RSA keys must be at least " + MIN_RSA_KEY_SIZE + " bits");
+                }
+            } else if (X9ObjectIdentifiers.id_ecPublicKey.equals(algorithm.getAlgorithm())) {
+                if (!SECObjectIdentifiers.secp256r1.equals(algorithm.getParameters())) {
+                    throw new ApiException(HttpStatus.BAD_REQUEST, "Only the P-256 curve is supported for EC keys");
+                }
+            } else if (!EdECObjectIdentifiers.id_Ed25519.equals(algorithm.getAlgorithm())) {
+                throw new ApiException(HttpStatus.BAD_REQUEST, "Unsupported key algorithm " + algorithm.getAlgorithm());
+            }
+
+            if (!csr.isSignatureValid(new JcaContentVerifierProviderBuilder().build(publicKeyInfo))) {
+                throw new ApiException(HttpStatus.BAD_REQUEST, "Certificate signing request signature is invalid");
+            }
+        } catch (IOException | OperatorCreationException | PKCSException e) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Certificate signing request could not be verified", e);
+        }
+    }
+
+    protected abstract CertificatePEM createCertificateAndPrivateKey(String deviceId, KeyProfile keyProfile);
+
+    /**
+     * Signs the public key of a validated CSR. The subject of the CSR is ignored, the certificate is always issued
+     * to deviceId.
+     *
+     * @return the certificate chain without a private key
+     */
+    protected abstract CertificatePEM signCertificateRequest(String deviceId, PKCS10CertificationRequest csr);
 }
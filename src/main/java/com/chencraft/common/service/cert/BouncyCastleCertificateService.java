@@ -5,43 +5,56 @@ import com.chencraft.common.component.AlertMessenger;
 import com.chencraft.common.component.AppConfig;
 import com.chencraft.common.service.executor.TaskExecutor;
 import com.chencraft.model.CertificatePEM;
+import com.chencraft.model.KeyProfile;
 import com.chencraft.model.mongo.CertificateRecord;
 import com.chencraft.utils.PemUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.x500.X500Name;
-import org.bouncycastle.asn1.x500.style.BCStyle;
-import org.bouncycastle.asn1.x500.style.RFC4519Style;
 import org.bouncycastle.asn1.x509.*;
 import org.bouncycastle.cert.CertIOException;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
-import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
-import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.pkcs.PKCS10CertificationRequest;
-import org.bouncycastle.pkcs.PKCS10CertificationRequestBuilder;
-import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Path;
 import java.security.*;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.chencraft.utils.PublisherUtils.fireAndForget;
 
 @Lazy
 @Slf4j
@@ -49,36 +62,62 @@ import java.util.Date;
 public class BouncyCastleCertificateService extends AbstractCertificateService {
     private static final int DEFAULT_VALIDITY_DAYS = 60;
     private static final String BC_PROVIDER = "BC";
-    private static final String KEY_ALGORITHM = "RSA";
-    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    private static final int RSA_KEY_SIZE = 4096;
+    private static final String EC_CURVE = "secp256r1";
+    private static final MediaType PEM_FILE = MediaType.parseMediaType("application/x-pem-file");
+    private static final MediaType PKIX_CRL = MediaType.parseMediaType("application/pkix-crl");
+    private static final MediaType OCSP_RESPONSE = MediaType.parseMediaType("application/ocsp-response");
+    // Immutable extension values shared by every issued certificate
+    private static final BasicConstraints END_ENTITY = new BasicConstraints(false);
+    private static final ExtendedKeyUsage SERVER_AND_CLIENT_AUTH = new ExtendedKeyUsage(new KeyPurposeId[]{KeyPurposeId.id_kp_serverAuth, KeyPurposeId.id_kp_clientAuth});
+    private static final KeyUsage RSA_KEY_USAGE = new KeyUsage(KeyUsage.digitalSignature | KeyUsage.keyEncipherment);
+    private static final KeyUsage SIGNATURE_KEY_USAGE = new KeyUsage(KeyUsage.digitalSignature);
+    private static final SecureRandom SERIAL_RANDOM = new SecureRandom();
+    private static final JcaX509CertificateConverter CERTIFICATE_CONVERTER = new JcaX509CertificateConverter().setProvider(BC_PROVIDER);
 
     private final AlertMessenger messenger;
     private final TaskExecutor taskExecutor;
     private final AppConfig appConfig;
-    private final X509Certificate caCert;
-    private final PrivateKey caPrivateKey;
+    private final CertificateAuthority ca;
+    private final RevocationPublisher revocationPublisher;
+    private final Duration crlRefreshInterval;
+    private final Map<KeyProfile, KeyPairPool> keyPairPools = new EnumMap<>(KeyProfile.class);
 
     @Autowired
     public BouncyCastleCertificateService(AlertMessenger messenger,
                                           TaskExecutor taskExecutor,
                                           AppConfig appConfig,
                                           MTlsService mtlsService,
+                                          MeterRegistry meterRegistry,
+                                          IssuanceMetrics issuanceMetrics,
+                                          Clock clock,
                                           @Value("${app.tls.keystore}") String keystorePath,
                                           @Value("${app.tls.keystore-password}") String keystorePassword,
-                                          @Value("${app.tls.keystore-alias}") String alias) throws Exception {
-        super(mtlsService);
+                                          @Value("${app.tls.keystore-alias}") String alias,
+                                          @Value("${app.cert.key-pool.size:16}") int keyPoolSize,
+                                          @Value("${app.cert.key-pool.low-watermark:4}") int keyPoolLowWatermark,
+                                          @Value("${app.cert.key-pool.workers:2}") int keyPoolWorkers,
+                                          @Value("${app.cert.crl.refresh-interval:PT1H}") Duration crlRefreshInterval,
+                                          @Value("${app.cert.crl.validity:PT24H}") Duration crlValidity,
+                                          @Value("${app.cert.crl.path:}") String crlPath) throws Exception {
+        super(mtlsService, issuanceMetrics);
 
         this.messenger = messenger;
         this.taskExecutor = taskExecutor;
         this.appConfig = appConfig;
+        this.crlRefreshInterval = crlRefreshInterval;
+        for (KeyProfile profile : KeyProfile.values()) {
+            this.keyPairPools.put(profile, new KeyPairPool(profile.toTag(), () -> generateClientKeyPair(profile),
+                                                           keyPoolSize, keyPoolLowWatermark, keyPoolWorkers, meterRegistry));
+        }
 
         KeyStore ks = KeyStore.getInstance("PKCS12");
         try (FileInputStream fis = new FileInputStream(keystorePath)) {
             ks.load(fis, keystorePassword.toCharArray());
         }
 
-        this.caCert = (X509Certificate) ks.getCertificate(alias);
-        this.caPrivateKey = (PrivateKey) ks.getKey(alias, keystorePassword.toCharArray());
+        X509Certificate caCert = (X509Certificate) ks.getCertificate(alias);
+        PrivateKey caPrivateKey = (PrivateKey) ks.getKey(alias, keystorePassword.toCharArray());
 
         if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
             Security.addProvider(new BouncyCastleProvider());
@@ -87,23 +126,55 @@ public class BouncyCastleCertificateService extends AbstractCertificateService {
         if (caCert == null || caPrivateKey == null) {
             throw new IllegalStateException("Could not load CA cert or private key from keystore");
         }
+        // The issued certificate is signed by the CA, so the signature algorithm follows the CA key, not the client key
+        this.ca = new CertificateAuthority(caCert, caPrivateKey, signatureAlgorithmFor(caPrivateKey), BC_PROVIDER);
+        this.revocationPublisher = new RevocationPublisher(this.ca, mtlsService, clock, crlValidity,
+                                                           crlPath == null || crlPath.isBlank() ? null : Path.of(crlPath));
         log.info("Loaded CA certificate: {}", caCert.getSubjectX500Principal().getName());
     }
 
     @PostConstruct
     public void init() {
-        this.taskExecutor.scheduleAtFixedRate(this::certificateCheck, 0, 1, java.util.concurrent.TimeUnit.DAYS);
+        this.taskExecutor.scheduleAtFixedRate(this::certificateCheck, 0, 1, TimeUnit.DAYS);
+        this.keyPairPools.values().forEach(KeyPairPool::start);
+        this.taskExecutor.scheduleAtFixedRate(this::publishRevocations, 0, crlRefreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        this.keyPairPools.values().forEach(KeyPairPool::close);
+    }
+
+    @Override
+    public Mono<@NonNull ResponseEntity<?>> revocationList(boolean pemFormat) {
+        Optional<ResponseEntity<?>> response = pemFormat
+                ? revocationPublisher.crlPem().<ResponseEntity<?>>map(crl -> ResponseEntity.ok().contentType(PEM_FILE).body(crl))
+                : revocationPublisher.crl().<ResponseEntity<?>>map(crl -> ResponseEntity.ok().contentType(PKIX_CRL).body(crl));
+        return Mono.just(response.orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build()));
+    }
+
+    @Override
+    public Mono<@NonNull ResponseEntity<byte[]>> certificateStatus(byte[] ocspRequest) {
+        return Mono.fromCallable(() -> ResponseEntity.ok()
+                                                     .contentType(OCSP_RESPONSE)
+                                                     .body(revocationPublisher.respond(ocspRequest)))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public void publishRevocations() {
+        fireAndForget(revocationPublisher.publish());
     }
 
     private void certificateCheck() {
         // If the certificate is expiring in 30 days, shoot the reminder
         Instant monthFromNow = Instant.now().plusSeconds(DEFAULT_VALIDITY_DAYS * 24L * 60 * 60);
-        boolean shouldNotify = this.caCert.getNotAfter().toInstant().isBefore(monthFromNow);
-        String deviceName = new X500Name(this.caCert.getSubjectX500Principal().getName())
-                .getRDNs(BCStyle.CN)[0].getFirst().getValue().toString();
+        X509Certificate caCert = this.ca.certificate();
+        boolean shouldNotify = caCert.getNotAfter().toInstant().isBefore(monthFromNow);
+        String deviceName = this.ca.commonName();
 
         if (shouldNotify) {
-            LocalDate validity = LocalDate.ofInstant(this.caCert.getNotAfter().toInstant(),
+            LocalDate validity = LocalDate.ofInstant(caCert.getNotAfter().toInstant(),
                                                      ZonedDateTime.now().getZone());
             if (appConfig.isDev()) {
                 throw new RuntimeException("Certificate is expiring on " + validity + ", please renew before continuing.");
@@ -114,94 +185,140 @@ public class BouncyCastleCertificateService extends AbstractCertificateService {
     }
 
     @Override
-    protected CertificatePEM createCertificateAndPrivateKey(String deviceId) {
+    protected CertificatePEM createCertificateAndPrivateKey(String deviceId, KeyProfile keyProfile) {
         Instant validUntil = Instant.now().plusSeconds(DEFAULT_VALIDITY_DAYS * 24L * 60 * 60);
-        KeyPair clientKey = generateClientKeyPair();
-        X509Certificate clientCert = issueClientCertificate(clientKey, deviceId, validUntil);
+        String profile = keyProfile.toTag();
+        // Mostly a pool hit; the histogram shows when issuance outpaces the background generation
+        Timer.Sample keyGeneration = Timer.start();
+        KeyPair clientKey = keyPairPools.get(keyProfile).take();
+        keyGeneration.stop(issuanceMetrics.stage(IssuanceMetrics.Stage.KEY_GENERATION, profile));
+        log.info("Issuing {} certificate with a server-generated key for device {}", keyProfile, deviceId);
+        X509Certificate clientCert = issueClientCertificate(SubjectPublicKeyInfo.getInstance(clientKey.getPublic().getEncoded()),
+                                                            deviceId, validUntil, profile);
         CertificateRecord record = new CertificateRecord(clientCert, deviceId);
 
+        Timer.Sample pemEncoding = Timer.start();
         try {
-            String certPem = PemUtils.toPem(clientCert, this.caCert);
+            String certPem = PemUtils.toPem(clientCert) + this.ca.pem();
             String keyPem = PemUtils.toPem(clientKey.getPrivate());
             return new CertificatePEM(certPem, keyPem, validUntil, record);
         } catch (IOException e) {
             throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to convert certificate to PEM", e);
+        } finally {
+            pemEncoding.stop(issuanceMetrics.stage(IssuanceMetrics.Stage.PEM_ENCODING, profile));
+        }
+    }
+
+    @Override
+    protected CertificatePEM signCertificateRequest(String deviceId, PKCS10CertificationRequest csr) {
+        Instant validUntil = Instant.now().plusSeconds(DEFAULT_VALIDITY_DAYS * 24L * 60 * 60);
+        log.info("Issuing certificate from a CSR for device {}", deviceId);
+        X509Certificate clientCert = issueClientCertificate(csr.getSubjectPublicKeyInfo(), deviceId, validUntil, IssuanceMetrics.CSR_PROFILE);
+        CertificateRecord record = new CertificateRecord(clientCert, deviceId);
+
+        Timer.Sample pemEncoding = Timer.start();
+        try {
+            return new CertificatePEM(PemUtils.toPem(clientCert) + this.ca.pem(), null, validUntil, record);
+        } catch (IOException e) {
+            throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to convert certificate to PEM", e);
+        } finally {
+            pemEncoding.stop(issuanceMetrics.stage(IssuanceMetrics.Stage.PEM_ENCODING, IssuanceMetrics.CSR_PROFILE));
         }
     }
 
-    private X509Certificate issueClientCertificate(KeyPair clientKeyPair, String clientCn, Instant validUntil) {
-        // Update X500Name
-        X500Name rootCertIssuer = new X500Name(RFC4519Style.INSTANCE, this.caCert.getSubjectX500Principal().getName());
-        String serverCn = rootCertIssuer.getRDNs(BCStyle.CN)[0].getFirst().getValue().toString();
-        String updatedDnString = rootCertIssuer.toString()
-                                               .replace("CN=" + serverCn, "CN=" + clientCn)
-                                               .replace("cn=" + serverCn, "cn=" + clientCn);
-        X500Name clientCertSubject = new X500Name(updatedDnString);
+    /**
+     * @param profile tag the certificate build and signing stages are timed under
+     */
+    private X509Certificate issueClientCertificate(SubjectPublicKeyInfo clientPublicKey, String clientCn, Instant validUntil, String profile) {
+        Timer.Sample certificateBuild = Timer.start();
+        X500Name clientCertSubject = this.ca.subjectFor(clientCn);
 
         // Set up certificate validity dates
         Date notBefore = new Date();
         Date notAfter = Date.from(validUntil);
 
-        // Generating a CSR (Certificate Signing Request)
-        BigInteger issuedCertSerialNum = new BigInteger(Long.toString(new SecureRandom().nextLong()));
-        log.info("Issuing certificate for device {} with subject {}", clientCn, clientCertSubject);
-
-        PKCS10CertificationRequestBuilder p10Builder = new JcaPKCS10CertificationRequestBuilder(clientCertSubject, clientKeyPair.getPublic());
-        JcaContentSignerBuilder csrBuilder = new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).setProvider(BC_PROVIDER);
+        // Here serial number is randomly generated. In general, CAs use
+        // a sequence to generate Serial number and avoid collisions.
+        // RFC 5280 requires a positive serial; 64 random bits plus one is never zero or negative
+        BigInteger issuedCertSerialNum = new BigInteger(64, SERIAL_RANDOM).add(BigInteger.ONE);
+        log.debug("Issuing certificate {} with subject {}", issuedCertSerialNum, clientCertSubject);
 
-        // Sign the new KeyPair with the root cert Private Key
-        ContentSigner csrContentSigner;
+        // Sign with the root cert Private Key
+        ContentSigner contentSigner;
         try {
-            csrContentSigner = csrBuilder.build(this.caPrivateKey);
+            contentSigner = this.ca.newSigner();
         } catch (OperatorCreationException e) {
-            throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create CSR signer", e);
+            throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create certificate signer", e);
         }
-        PKCS10CertificationRequest csr = p10Builder.build(csrContentSigner);
 
-        // Use the Signed KeyPair and CSR to generate an issued Certificate
-        // Here serial number is randomly generated. In general, CAs use
-        // a sequence to generate Serial number and avoid collisions
-        X509v3CertificateBuilder issuedCertBuilder = new X509v3CertificateBuilder(rootCertIssuer, issuedCertSerialNum, notBefore, notAfter, csr.getSubject(), csr.getSubjectPublicKeyInfo());
-
-        JcaX509ExtensionUtils issuedCertExtUtils;
-        try {
-            issuedCertExtUtils = new JcaX509ExtensionUtils();
-        } catch (NoSuchAlgorithmException e) {
-            throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create extension utils", e);
-        }
+        X509v3CertificateBuilder issuedCertBuilder = new X509v3CertificateBuilder(this.ca.issuer(), issuedCertSerialNum, notBefore, notAfter, clientCertSubject, clientPublicKey);
 
         try {
             // Add extensions
-            issuedCertBuilder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
-            issuedCertBuilder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature | KeyUsage.keyEncipherment));
-            issuedCertBuilder.addExtension(Extension.extendedKeyUsage, false, new ExtendedKeyUsage(new KeyPurposeId[]{KeyPurposeId.id_kp_serverAuth, KeyPurposeId.id_kp_clientAuth}));
+            issuedCertBuilder.addExtension(Extension.basicConstraints, true, END_ENTITY);
+            issuedCertBuilder.addExtension(Extension.keyUsage, true, keyUsageFor(clientPublicKey));
+            issuedCertBuilder.addExtension(Extension.extendedKeyUsage, false, SERVER_AND_CLIENT_AUTH);
 
             // Add Issuer cert identifier
-            issuedCertBuilder.addExtension(Extension.authorityKeyIdentifier, false, issuedCertExtUtils.createAuthorityKeyIdentifier(this.caCert));
-            issuedCertBuilder.addExtension(Extension.subjectKeyIdentifier, false, issuedCertExtUtils.createSubjectKeyIdentifier(csr.getSubjectPublicKeyInfo()));
+            issuedCertBuilder.addExtension(Extension.authorityKeyIdentifier, false, this.ca.authorityKeyIdentifier());
+            issuedCertBuilder.addExtension(Extension.subjectKeyIdentifier, false, CertificateAuthority.subjectKeyIdentifier(clientPublicKey));
         } catch (CertIOException e) {
             throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to add extensions", e);
-        } catch (CertificateEncodingException e) {
-            throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to encode certificate", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to compute subject key identifier", e);
         }
 
-        X509CertificateHolder issuedCertHolder = issuedCertBuilder.build(csrContentSigner);
+        certificateBuild.stop(issuanceMetrics.stage(IssuanceMetrics.Stage.CERTIFICATE_BUILD, profile));
+
+        Timer.Sample signing = Timer.start();
+        X509CertificateHolder issuedCertHolder = issuedCertBuilder.build(contentSigner);
         try {
-            return new JcaX509CertificateConverter().setProvider(BC_PROVIDER).getCertificate(issuedCertHolder);
+            return CERTIFICATE_CONVERTER.getCertificate(issuedCertHolder);
         } catch (CertificateException e) {
             throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to convert issued certificate to X509Certificate", e);
+        } finally {
+            signing.stop(issuanceMetrics.stage(IssuanceMetrics.Stage.SIGNING, profile));
         }
     }
 
-    private KeyPair generateClientKeyPair() {
+    private static KeyPair generateClientKeyPair(KeyProfile keyProfile) {
         try {
-            KeyPairGenerator keyGen = KeyPairGenerator.getInstance(KEY_ALGORITHM, BC_PROVIDER);
-            keyGen.initialize(4096);
+            KeyPairGenerator keyGen;
+            switch (keyProfile) {
+                case RSA_4096 -> {
+                    keyGen = KeyPairGenerator.getInstance("RSA", BC_PROVIDER);
+                    keyGen.initialize(RSA_KEY_SIZE);
+                }
+                case EC_P256 -> {
+                    keyGen = KeyPairGenerator.getInstance("EC", BC_PROVIDER);
+                    keyGen.initialize(new ECGenParameterSpec(EC_CURVE));
+                }
+                case ED25519 -> keyGen = KeyPairGenerator.getInstance("Ed25519", BC_PROVIDER);
+                default -> throw new IllegalArgumentException("Unknown key profile " + keyProfile);
+            }
             return keyGen.generateKeyPair();
-        } catch (NoSuchAlgorithmException e) {
-            throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "RSA not supported", e);
+        } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+            throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, keyProfile + " not supported", e);
         } catch (NoSuchProviderException e) {
             throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "BC provider not found", e);
         }
     }
+
+    /**
+     * Key encipherment only applies to RSA key transport; EC and EdDSA keys are used for signatures only.
+     */
+    private static KeyUsage keyUsageFor(SubjectPublicKeyInfo publicKey) {
+        return PKCSObjectIdentifiers.rsaEncryption.equals(publicKey.getAlgorithm().getAlgorithm())
+                ? RSA_KEY_USAGE
+                : SIGNATURE_KEY_USAGE;
+    }
+
+    private static String signatureAlgorithmFor(PrivateKey signingKey) {
+        return switch (signingKey.getAlgorithm()) {
+            case "RSA" -> "SHA256withRSA";
+            case "EC", "ECDSA" -> "SHA256withECDSA";
+            case "Ed25519", "EdDSA" -> "Ed25519";
+            default -> throw new IllegalStateException("Unsupported CA key algorithm " + signingKey.getAlgorithm());
+        };
+    }
 }
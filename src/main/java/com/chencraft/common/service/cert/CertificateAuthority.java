@@ -0,0 +1,96 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.utils.PemUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.RFC4519Style;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Everything derived from the loaded CA that issuance needs, computed once instead of on every certificate:
+ * issuer name, authority key identifier, CA PEM and a configured signer builder.
+ * ContentSigner instances are stateful, so {@link #newSigner()} hands out a fresh one per certificate.
+ * Thread-safety: immutable after construction.
+ */
+final class CertificateAuthority {
+    private final X509Certificate certificate;
+    private final PrivateKey privateKey;
+    private final X500Name issuer;
+    private final String issuerDn;
+    private final String commonName;
+    private final AuthorityKeyIdentifier authorityKeyIdentifier;
+    private final String pem;
+    private final JcaContentSignerBuilder signerBuilder;
+
+    /**
+     * @param signatureAlgorithm JCA name of the signature algorithm matching the CA key, e.g. SHA256withRSA
+     * @param provider           JCA provider used for signing
+     */
+    CertificateAuthority(X509Certificate certificate, PrivateKey privateKey, String signatureAlgorithm, String provider)
+            throws IOException, NoSuchAlgorithmException, CertificateEncodingException {
+        this.certificate = certificate;
+        this.privateKey = privateKey;
+        this.issuer = new X500Name(RFC4519Style.INSTANCE, certificate.getSubjectX500Principal().getName());
+        this.issuerDn = issuer.toString();
+        this.commonName = issuer.getRDNs(BCStyle.CN)[0].getFirst().getValue().toString();
+        this.authorityKeyIdentifier = new JcaX509ExtensionUtils().createAuthorityKeyIdentifier(certificate);
+        this.pem = PemUtils.toPem(certificate);
+        this.signerBuilder = new JcaContentSignerBuilder(signatureAlgorithm).setProvider(provider);
+    }
+
+    X509Certificate certificate() {
+        return certificate;
+    }
+
+    X500Name issuer() {
+        return issuer;
+    }
+
+    String commonName() {
+        return commonName;
+    }
+
+    AuthorityKeyIdentifier authorityKeyIdentifier() {
+        return authorityKeyIdentifier;
+    }
+
+    /**
+     * @return PEM of the CA certificate, appended to every issued chain
+     */
+    String pem() {
+        return pem;
+    }
+
+    /**
+     * @return the CA subject with its CN replaced by the client's
+     */
+    X500Name subjectFor(String clientCn) {
+        return new X500Name(issuerDn.replace("CN=" + commonName, "CN=" + clientCn)
+                                    .replace("cn=" + commonName, "cn=" + clientCn));
+    }
+
+    ContentSigner newSigner() throws OperatorCreationException {
+        return signerBuilder.build(privateKey);
+    }
+
+    /**
+     * RFC 5280 method 1: SHA-1 of the subject public key bits, as JcaX509ExtensionUtils computes it
+     */
+    static SubjectKeyIdentifier subjectKeyIdentifier(SubjectPublicKeyInfo publicKeyInfo) throws NoSuchAlgorithmException {
+        byte[] keyId = MessageDigest.getInstance("SHA-1").digest(publicKeyInfo.getPublicKeyData().getBytes());
+        return new SubjectKeyIdentifier(keyId);
+    }
+}
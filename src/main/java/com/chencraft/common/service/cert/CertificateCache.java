@@ -0,0 +1,186 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.model.mongo.CertificateRecord;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Certificate records by SHA-256 fingerprint, as looked up by the mTLS filter on every /secure request.
+ * Issuance and revocation evict only the fingerprints they touched, so the rest of the cache stays warm.
+ * <p>
+ * Fingerprints without a record are remembered in a separate, smaller cache with a short lifetime, so a client
+ * presenting an unknown certificate does not reach Mongo on every request; issuing a certificate evicts its
+ * fingerprint from both. Concurrent misses for the same fingerprint share one query.
+ * <p>
+ * Changes made by other instances arrive through CertificateChangeListener, which evicts them as well. Records
+ * loaded while its change stream is established are kept for app.mtls.cache.change-stream.expire-after, all
+ * others only for app.mtls.cache.expire-after, the delay after which another instance's change is seen without it.
+ * <p>
+ * Metrics: cert.cache.lookups counts lookups by result (hit|negative_hit|miss); cert.cache.evictions counts removed
+ * entries by cause (issue|revoke|remote|resync|size|expired). Caffeine statistics of the positive cache are
+ * published as cache.* with cache=certificatesByFingerprint.
+ * Configuration: app.mtls.cache.max-size, app.mtls.cache.expire-after, app.mtls.cache.change-stream.expire-after,
+ * app.mtls.negative-cache.max-size, app.mtls.negative-cache.expire-after.
+ * Thread-safety: safe for concurrent use; Spring singleton.
+ */
+@Component
+public class CertificateCache {
+    static final String ISSUE = "issue";
+    static final String REVOKE = "revoke";
+    static final String REMOTE = "remote";
+
+    private final AsyncCache<String, CertificateRecord> records;
+    private final Cache<String, Boolean> unknownFingerprints;
+    // Bumped on every eviction, a miss loaded across one must not be remembered as unknown
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hits;
+    private final Counter negativeHits;
+    private final Counter misses;
+    private final MeterRegistry meterRegistry;
+    private volatile boolean changeStreamEstablished;
+
+    @Autowired
+    public CertificateCache(MeterRegistry meterRegistry,
+                            @Value("${app.mtls.cache.max-size:10000}") long maxSize,
+                            @Value("${app.mtls.cache.expire-after:PT1H}") Duration expireAfter,
+                            @Value("${app.mtls.cache.change-stream.expire-after:PT12H}") Duration watchedExpireAfter,
+                            @Value("${app.mtls.negative-cache.max-size:1000}") long negativeMaxSize,
+                            @Value("${app.mtls.negative-cache.expire-after:PT30S}") Duration negativeExpireAfter) {
+        this.meterRegistry = meterRegistry;
+        this.records = Caffeine.newBuilder()
+                               .maximumSize(maxSize)
+                               .expireAfter(Expiry.creating((String key, CertificateRecord record) ->
+                                       changeStreamEstablished ? watchedExpireAfter : expireAfter))
+                               .recordStats()
+                               .removalListener((String key, CertificateRecord record, RemovalCause cause) -> countEviction(cause))
+                               .buildAsync();
+        this.unknownFingerprints = Caffeine.newBuilder()
+                                           .maximumSize(negativeMaxSize)
+                                           .expireAfterWrite(negativeExpireAfter)
+                                           .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, records, "certificatesByFingerprint");
+
+        this.hits = lookupCounter(meterRegistry, "hit");
+        this.negativeHits = lookupCounter(meterRegistry, "negative_hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+    }
+
+    /**
+     * Returns the cached record of the fingerprint, querying it first on a miss.
+     *
+     * @param load queries the record; an empty result is remembered as unknown
+     * @return Mono emitting the record, empty if the fingerprint is unknown
+     */
+    public Mono<@NonNull CertificateRecord> get(String fingerprint, Function<String, Mono<CertificateRecord>> load) {
+        return Mono.defer(() -> {
+            if (unknownFingerprints.getIfPresent(fingerprint) != null) {
+                negativeHits.increment();
+                return Mono.empty();
+            }
+
+            AtomicBoolean loading = new AtomicBoolean();
+            CompletableFuture<CertificateRecord> future = records.get(fingerprint, (key, executor) -> {
+                loading.set(true);
+                long loadedAt = generation.get();
+                // A null result leaves no entry behind in an AsyncCache
+                return load.apply(key)
+                           .toFuture()
+                           .thenApply(record -> {
+                               if (record == null && generation.get() == loadedAt) {
+                                   unknownFingerprints.put(key, Boolean.TRUE);
+                               }
+                               return record;
+                           });
+            });
+            (loading.get() ? misses : hits).increment();
+            // Cancelling one subscriber must not cancel the query other requests are waiting on
+            return Mono.fromFuture(future, true);
+        });
+    }
+
+    /**
+     * Evicts the fingerprints after their records changed; a query in flight for one of them is not cached.
+     *
+     * @param cause tag of the eviction metric, {@link #ISSUE}, {@link #REVOKE} or {@link #REMOTE}
+     */
+    public void invalidate(Collection<String> fingerprints, String cause) {
+        generation.incrementAndGet();
+        int evicted = 0;
+        for (String fingerprint : fingerprints) {
+            unknownFingerprints.invalidate(fingerprint);
+            if (records.asMap().remove(fingerprint) != null) {
+                evicted++;
+            }
+        }
+        evictionCounter(cause).increment(evicted);
+    }
+
+    /**
+     * Empties the cache when changes may have been missed, e.g. while the change stream was disconnected
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        int evicted = records.asMap().size();
+        records.synchronous().invalidateAll();
+        unknownFingerprints.invalidateAll();
+        evictionCounter("resync").increment(evicted);
+    }
+
+    /**
+     * Records loaded from now on are kept for the longer lifetime, changes of other instances evict them
+     */
+    public void changeStreamEstablished() {
+        changeStreamEstablished = true;
+    }
+
+    /**
+     * Records loaded from now on are kept for the short lifetime; those already cached stay until evicted or flushed
+     */
+    public void changeStreamLost() {
+        changeStreamEstablished = false;
+    }
+
+    /**
+     * Explicit removals are counted by {@link #invalidate} with the cause that triggered them
+     */
+    private void countEviction(RemovalCause cause) {
+        switch (cause) {
+            case SIZE -> evictionCounter("size").increment();
+            case EXPIRED -> evictionCounter("expired").increment();
+            default -> {
+            }
+        }
+    }
+
+    private Counter evictionCounter(String cause) {
+        return Counter.builder("cert.cache.evictions")
+                      .description("Certificate records evicted from the fingerprint cache, by cause")
+                      .tag("cause", cause)
+                      .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("cert.cache.lookups")
+                      .description("Fingerprint lookups by whether they hit a record, hit a known-unknown fingerprint or queried Mongo")
+                      .tag("result", result)
+                      .register(meterRegistry);
+    }
+}
@@ -0,0 +1,160 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.common.mongo.CertificateRepository;
+import com.chencraft.model.mongo.CertificateRecord;
+import com.mongodb.MongoCommandException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static com.chencraft.utils.PublisherUtils.fireAndForget;
+
+/**
+ * Keeps CertificateCache and RevocationIndex coherent across instances: every insert or update of a certificate
+ * record, from any instance, evicts its fingerprint and updates the index through a MongoDB change stream. This is
+ * what lets the cache lifetime be long and more than one instance serve /secure requests.
+ * <p>
+ * The stream counts as established once it delivered an event or stayed open for a few seconds, a stream that
+ * cannot be opened fails right away; only then does the cache keep records for the longer lifetime. A dropped
+ * stream is reopened after the last event seen, so no change is lost; if there is no such event or the oplog no
+ * longer reaches back that far, and an established stream had been relied on, the whole cache is emptied and the
+ * index rebuilt instead. Requires MongoDB to run as a replica set; without one, this is logged once and the cache
+ * keeps its short lifetime.
+ * Configuration: app.mtls.cache.change-stream.enabled.
+ * Thread-safety: events are handled sequentially on the driver thread; Spring singleton.
+ */
+@Slf4j
+@Component
+public class CertificateChangeListener {
+    private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+    private static final Duration ESTABLISHED_AFTER = Duration.ofSeconds(5);
+    // $changeStream is only supported on replica sets
+    private static final int NOT_REPLICA_SET = 40573;
+    // ChangeStreamFatalError, ChangeStreamHistoryLost: the resume token can no longer be used
+    private static final Set<Integer> RESUME_FAILED = Set.of(280, 286);
+
+    private final CertificateRepository certRepo;
+    private final CertificateCache certificateCache;
+    private final RevocationIndex revocationIndex;
+    private final boolean enabled;
+    private volatile BsonValue resumeToken;
+    private volatile boolean established;
+    // The cache holds records kept for the longer lifetime, which may only outlive the stream if it can resume
+    private volatile boolean reliedOn;
+    private Disposable subscription;
+
+    @Autowired
+    public CertificateChangeListener(CertificateRepository certRepo,
+                                     CertificateCache certificateCache,
+                                     RevocationIndex revocationIndex,
+                                     @Value("${app.mtls.cache.change-stream.enabled:true}") boolean enabled) {
+        this.certRepo = certRepo;
+        this.certificateCache = certificateCache;
+        this.revocationIndex = revocationIndex;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.warn("app.mtls.cache.change-stream.enabled is false, certificate changes of other instances are only "
+                             + "seen once cache entries expire (app.mtls.cache.expire-after) and at the next revocation index rebuild");
+            return;
+        }
+        subscription = Flux.defer(() -> certRepo.watch(resumeToken)
+                                                .doOnNext(this::evict)
+                                                .mergeWith(Mono.delay(ESTABLISHED_AFTER)
+                                                               .then(Mono.<ChangeStreamEvent<CertificateRecord>>fromRunnable(this::established))))
+                           .doOnError(this::handleError)
+                           .retryWhen(Retry.backoff(Long.MAX_VALUE, MIN_BACKOFF)
+                                           .maxBackoff(MAX_BACKOFF)
+                                           .filter(e -> !isUnsupported(e)))
+                           .subscribe(event -> {
+                           }, e -> log.warn("MongoDB does not support change streams, it is not a replica set; certificate "
+                                                    + "changes of other instances are only seen once cache entries expire", e));
+        log.info("Watching certificate changes for cache eviction");
+    }
+
+    @PreDestroy
+    public void close() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private void established() {
+        if (!established) {
+            established = true;
+            reliedOn = true;
+            certificateCache.changeStreamEstablished();
+            fireAndForget(revocationIndex.changeStreamEstablished());
+            log.info("Certificate change stream established");
+        }
+    }
+
+    private void evict(ChangeStreamEvent<CertificateRecord> event) {
+        established();
+        CertificateRecord record = event.getBody();
+        // The full document is looked up after the fact, it is missing if the record was deleted since
+        if (record != null && record.getFingerprintSha256() != null) {
+            revocationIndex.update(record);
+            certificateCache.invalidate(List.of(record.getFingerprintSha256()), CertificateCache.REMOTE);
+        }
+        resumeToken = event.getResumeToken();
+    }
+
+    private void handleError(Throwable e) {
+        if (isUnsupported(e)) {
+            return;
+        }
+        established = false;
+        certificateCache.changeStreamLost();
+        revocationIndex.changeStreamLost();
+
+        if (resumeToken != null && !isResumeFailure(e)) {
+            log.warn("Certificate change stream failed, resuming after the last event", e);
+        } else if (reliedOn) {
+            // Without a usable resume token, changes made while reconnecting would go unnoticed
+            log.warn("Certificate change stream failed and cannot resume, emptying the certificate cache", e);
+            resumeToken = null;
+            reliedOn = false;
+            certificateCache.invalidateAll();
+            fireAndForget(revocationIndex.rebuild());
+        } else {
+            // Nothing was kept on the strength of the stream, so there is nothing to flush
+            log.warn("Certificate change stream could not be opened, retrying", e);
+            resumeToken = null;
+        }
+    }
+
+    private static boolean isUnsupported(Throwable e) {
+        return hasErrorCode(e, Set.of(NOT_REPLICA_SET));
+    }
+
+    private static boolean isResumeFailure(Throwable e) {
+        return hasErrorCode(e, RESUME_FAILED);
+    }
+
+    private static boolean hasErrorCode(Throwable e, Set<Integer> codes) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCommandException commandException && codes.contains(commandException.getErrorCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,9 +1,60 @@
 package com.chencraft.common.service.cert;
 
+import com.chencraft.api.ApiException;
+import com.chencraft.model.CertificateIssueResult;
+import com.chencraft.model.KeyProfile;
 import lombok.NonNull;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 public interface CertificateService {
-    Mono<@NonNull ResponseEntity<?>> issueCertificate(String deviceId, boolean pemFormat);
+    Mono<@NonNull ResponseEntity<?>> issueCertificate(String deviceId, boolean pemFormat, KeyProfile keyProfile);
+
+    default Mono<@NonNull ResponseEntity<?>> issueCertificate(String deviceId, boolean pemFormat) {
+        return issueCertificate(deviceId, pemFormat, KeyProfile.RSA_4096);
+    }
+
+    /**
+     * Issues a certificate for the public key of a PKCS#10 CSR generated on the device, so no private key is
+     * generated by or sent from the server.
+     *
+     * @param deviceId CN of the issued certificate, the subject of the CSR is ignored
+     * @param pemCsr   PEM-encoded CSR
+     * @return PEM certificate chain (leaf, then CA)
+     */
+    Mono<@NonNull ResponseEntity<?>> signCertificate(String deviceId, String pemCsr);
+
+    /**
+     * Issues certificates with server-generated keys to a batch of devices, signing in parallel.
+     * A result is emitted once its certificate is recorded, so results arrive in completion order.
+     *
+     * @return one result per distinct device, failed devices included
+     */
+    Flux<@NonNull CertificateIssueResult> issueCertificates(Collection<String> deviceIds, KeyProfile keyProfile);
+
+    /**
+     * Current CA-signed certificate revocation list. The default has no CA to sign one with.
+     *
+     * @param pemFormat PEM instead of DER, the format nginx's ssl_crl reads
+     */
+    default Mono<@NonNull ResponseEntity<?>> revocationList(boolean pemFormat) {
+        return Mono.error(new ApiException(HttpStatus.NOT_IMPLEMENTED, "Revocation lists are not published"));
+    }
+
+    /**
+     * Answers a DER-encoded OCSP request with a DER-encoded OCSP response. The default has no CA to sign one with.
+     */
+    default Mono<@NonNull ResponseEntity<byte[]>> certificateStatus(byte[] ocspRequest) {
+        return Mono.error(new ApiException(HttpStatus.NOT_IMPLEMENTED, "Certificate status is not published"));
+    }
+
+    /**
+     * Republishes revocation state right away, e.g. after a revocation, instead of at the next scheduled publish.
+     */
+    default void publishRevocations() {
+    }
 }
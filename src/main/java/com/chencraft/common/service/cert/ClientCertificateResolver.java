@@ -0,0 +1,61 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.utils.CertificateUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+
+/**
+ * Resolves the X-Client-Cert header forwarded by nginx to the fingerprint and CN of the client certificate.
+ * A device sends the same header on every request, so results are cached by the raw header value: a hit costs
+ * the String hash and one comparison of the header, a miss decodes the PEM and parses the certificate once.
+ * Keying by the full value rather than a digest of it means two headers can never share an entry.
+ * <p>
+ * Metrics: Caffeine statistics as cache.* with cache=clientCertificates.
+ * Configuration: app.mtls.header-cache.max-size, app.mtls.header-cache.expire-after.
+ * Thread-safety: safe for concurrent use; Spring singleton.
+ */
+@Component
+public class ClientCertificateResolver {
+    private final Cache<String, ClientCertificate> resolved;
+
+    @Autowired
+    public ClientCertificateResolver(MeterRegistry meterRegistry,
+                                     @Value("${app.mtls.header-cache.max-size:4096}") long maxSize,
+                                     @Value("${app.mtls.header-cache.expire-after:PT1H}") Duration expireAfter) {
+        this.resolved = Caffeine.newBuilder()
+                                .maximumSize(maxSize)
+                                .expireAfterAccess(expireAfter)
+                                .recordStats()
+                                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, resolved, "clientCertificates");
+    }
+
+    /**
+     * @param header PEM certificate as forwarded in X-Client-Cert
+     * @throws IllegalArgumentException if the header is not a PEM-encoded X.509 certificate; such headers are not cached
+     */
+    public ClientCertificate resolve(String header) {
+        return resolved.get(header, ClientCertificateResolver::parse);
+    }
+
+    private static ClientCertificate parse(String header) {
+        byte[] der = CertificateUtils.decodePem(header);
+        X509Certificate certificate = CertificateUtils.parseCertificate(der);
+        return new ClientCertificate(CertificateUtils.computeSha256Fingerprint(der), CertificateUtils.extractCNSubject(certificate));
+    }
+
+    /**
+     * @param fingerprint upper-case hex SHA-256 of the DER certificate, as stored in CertificateRecord
+     * @param commonName  CN of the subject, null if it has none
+     */
+    public record ClientCertificate(String fingerprint, String commonName) {
+    }
+}
@@ -0,0 +1,72 @@
+package com.chencraft.common.service.cert;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over certificate fingerprints: {@link #mightContain} never misses an added fingerprint, and reports
+ * one that was never added with about the configured false positive probability. Entries cannot be removed.
+ * Thread-safety: safe for concurrent use; adds are visible to reads on other threads once they return.
+ */
+final class FingerprintBloomFilter {
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions       number of fingerprints the filter is sized for
+     * @param falsePositiveProbability e.g. 0.01, reached once expectedInsertions fingerprints were added
+     */
+    FingerprintBloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        this.bits = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (m + 63) / 64));
+        this.bitCount = bits.length() * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    void add(String fingerprint) {
+        long hash1 = hash(fingerprint);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                // Another bit of the same word was set concurrently, retry
+            }
+        }
+    }
+
+    boolean mightContain(String fingerprint) {
+        long hash1 = hash(fingerprint);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, finalized so that similar fingerprints spread over the whole range
+     */
+    private static long hash(String fingerprint) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < fingerprint.length(); i++) {
+            hash = (hash ^ fingerprint.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Finalizer of SplitMix64
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,126 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.model.KeyProfile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Meters of certificate issuance, registered once so the hot path only looks them up.
+ * <p>
+ * Metrics: cert.issuance.stage times key generation, certificate build, signing and PEM encoding as histograms,
+ * tagged by stage and profile; cert.issuance.persistence times the record insert and the supersede revocation,
+ * tagged by step; cert.issuance.requests counts issuances by profile and outcome (success|failure).
+ * The profile tag is the lower-case key profile, or csr for certificates signed from a device CSR.
+ * Thread-safety: immutable after construction; Spring singleton.
+ */
+@Component
+public class IssuanceMetrics {
+    public static final String CSR_PROFILE = "csr";
+
+    private static final Duration MIN_EXPECTED = Duration.ofNanos(100_000);
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(10);
+
+    private final Map<String, Map<Stage, Timer>> stageTimers = new HashMap<>();
+    private final Map<String, Counter> successes = new HashMap<>();
+    private final Map<String, Counter> failures = new HashMap<>();
+    private final Timer insertTimer;
+    private final Timer supersedeTimer;
+
+    @Autowired
+    public IssuanceMetrics(MeterRegistry meterRegistry) {
+        for (KeyProfile profile : KeyProfile.values()) {
+            register(meterRegistry, profile.toTag());
+        }
+        register(meterRegistry, CSR_PROFILE);
+        this.insertTimer = persistenceTimer(meterRegistry, "insert");
+        this.supersedeTimer = persistenceTimer(meterRegistry, "supersede");
+    }
+
+    public enum Stage {
+        KEY_GENERATION,
+        CERTIFICATE_BUILD,
+        SIGNING,
+        PEM_ENCODING;
+
+        String toTag() {
+            return this.name().toLowerCase();
+        }
+    }
+
+    /**
+     * @param profile tag of the key profile, see {@link KeyProfile#toTag()} and {@link #CSR_PROFILE}
+     */
+    public Timer stage(Stage stage, String profile) {
+        return stageTimers.get(profile).get(stage);
+    }
+
+    public void recordOutcome(String profile, boolean succeeded) {
+        (succeeded ? successes : failures).get(profile).increment();
+    }
+
+    /**
+     * Times the insert of new certificate records from subscription until it terminates.
+     */
+    public <T> Mono<@NonNull T> timeInsert(Mono<T> insert) {
+        return timed(insert, insertTimer);
+    }
+
+    /**
+     * Times the revocation of the certificates superseded by newly inserted ones.
+     */
+    public <T> Mono<@NonNull T> timeSupersede(Mono<T> supersede) {
+        return timed(supersede, supersedeTimer);
+    }
+
+    private static <T> Mono<@NonNull T> timed(Mono<T> mono, Timer timer) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start();
+            return mono.doFinally(signal -> sample.stop(timer));
+        });
+    }
+
+    private void register(MeterRegistry meterRegistry, String profile) {
+        Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            timers.put(stage, Timer.builder("cert.issuance.stage")
+                                   .description("Time spent in each stage of issuing a certificate")
+                                   .tag("stage", stage.toTag())
+                                   .tag("profile", profile)
+                                   .publishPercentileHistogram()
+                                   .minimumExpectedValue(MIN_EXPECTED)
+                                   .maximumExpectedValue(MAX_EXPECTED)
+                                   .register(meterRegistry));
+        }
+        stageTimers.put(profile, timers);
+        successes.put(profile, outcomeCounter(meterRegistry, profile, "success"));
+        failures.put(profile, outcomeCounter(meterRegistry, profile, "failure"));
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String profile, String outcome) {
+        return Counter.builder("cert.issuance.requests")
+                      .description("Certificate issuances by key profile and outcome")
+                      .tag("profile", profile)
+                      .tag("outcome", outcome)
+                      .register(meterRegistry);
+    }
+
+    private static Timer persistenceTimer(MeterRegistry meterRegistry, String step) {
+        return Timer.builder("cert.issuance.persistence")
+                    .description("Time spent recording issued certificates and revoking the ones they supersede")
+                    .tag("step", step)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(MIN_EXPECTED)
+                    .maximumExpectedValue(MAX_EXPECTED)
+                    .register(meterRegistry);
+    }
+}
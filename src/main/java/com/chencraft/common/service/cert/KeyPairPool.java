@@ -0,0 +1,140 @@
+package com.chencraft.common.service.cert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded stock of pre-generated key pairs, so certificate issuance only signs instead of waiting for key
+ * generation. Whenever the stock drops to the low watermark, background workers on virtual threads generate
+ * pairs until it is full again; an empty pool falls back to generating inline.
+ * Every pair is handed out at most once and the stock only ever lives in memory.
+ * <p>
+ * Metrics: cert.keypool.size (gauge of pairs in stock) and cert.keypool.misses (takes that found the pool empty),
+ * both tagged with the key profile.
+ * Thread-safety: safe for concurrent use.
+ */
+@Slf4j
+public class KeyPairPool implements AutoCloseable {
+    private final String profile;
+    private final Supplier<KeyPair> generator;
+    private final BlockingQueue<KeyPair> stock;
+    private final int lowWatermark;
+    private final int maxWorkers;
+    private final AtomicInteger workers = new AtomicInteger();
+    private final ExecutorService executor;
+    private final Counter misses;
+    private volatile boolean closed;
+
+    /**
+     * @param profile      key profile the pairs belong to, used in logs and metric tags
+     * @param generator    generates one key pair, called on the refill workers
+     * @param capacity     maximum number of pairs kept in stock
+     * @param lowWatermark stock level at or below which a refill starts
+     * @param maxWorkers   maximum number of virtual threads generating at the same time
+     */
+    public KeyPairPool(String profile, Supplier<KeyPair> generator, int capacity, int lowWatermark, int maxWorkers,
+                       MeterRegistry meterRegistry) {
+        this(profile, generator, capacity, lowWatermark, maxWorkers, meterRegistry,
+             Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("keypool-" + profile + "-", 0).factory()));
+    }
+
+    KeyPairPool(String profile, Supplier<KeyPair> generator, int capacity, int lowWatermark, int maxWorkers,
+                MeterRegistry meterRegistry, ExecutorService executor) {
+        this.profile = profile;
+        this.generator = generator;
+        this.stock = new ArrayBlockingQueue<>(capacity);
+        this.lowWatermark = Math.min(lowWatermark, capacity - 1);
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.executor = executor;
+
+        Gauge.builder("cert.keypool.size", stock, BlockingQueue::size)
+             .description("Pre-generated key pairs ready for certificate issuance")
+             .tag("profile", profile)
+             .register(meterRegistry);
+        this.misses = Counter.builder("cert.keypool.misses")
+                             .description("Certificate issuances that generated their key pair inline because the pool was empty")
+                             .tag("profile", profile)
+                             .register(meterRegistry);
+    }
+
+    /**
+     * Fills the pool in the background
+     */
+    public void start() {
+        refillIfLow();
+    }
+
+    /**
+     * Hands out a key pair from stock, or generates one inline when the stock is exhausted.
+     */
+    public KeyPair take() {
+        KeyPair keyPair = stock.poll();
+        refillIfLow();
+        if (keyPair == null) {
+            misses.increment();
+            log.debug("Key pair pool {} is empty, generating inline", profile);
+            return generator.get();
+        }
+        return keyPair;
+    }
+
+    public int size() {
+        return stock.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        stock.clear();
+    }
+
+    private void refillIfLow() {
+        if (closed || stock.size() > lowWatermark) {
+            return;
+        }
+        // Start the missing workers once, a failing generator must not be retried in a loop
+        int missing = maxWorkers - workers.get();
+        for (int i = 0; i < missing; i++) {
+            if (workers.incrementAndGet() > maxWorkers) {
+                workers.decrementAndGet();
+                return;
+            }
+            try {
+                executor.execute(this::refill);
+            } catch (RejectedExecutionException e) {
+                // Closed concurrently
+                workers.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void refill() {
+        try {
+            while (!closed && stock.remainingCapacity() > 0) {
+                if (!stock.offer(generator.get())) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to refill key pair pool {}", profile, e);
+            return;
+        } finally {
+            workers.decrementAndGet();
+        }
+        // Pairs taken while the last one was generated may have drained the pool again
+        refillIfLow();
+    }
+}
@@ -3,10 +3,11 @@ package com.chencraft.common.service.cert;
 import com.chencraft.common.component.Cleanable;
 import com.chencraft.common.mongo.CertificateRepository;
 import com.chencraft.model.mongo.CertificateRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -14,38 +15,105 @@ import reactor.core.publisher.Mono;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 
 import static com.chencraft.utils.PublisherUtils.fireAndForget;
 
+@Slf4j
 @Service
 public class MTlsService implements Cleanable {
+    private static final Duration SOFT_DELETE_AFTER = Duration.ofDays(60);
+    // Also the lifetime of the TTL index created by MongoExpiryIndexes
+    public static final Duration HARD_DELETE_AFTER = Duration.ofDays(365);
+
     private final CertificateRepository certRepo;
     private final Clock clock;
+    private final IssuanceMetrics issuanceMetrics;
+    private final CertificateCache certificateCache;
+    private final RevocationIndex revocationIndex;
+    private final Counter softDeleted;
+    private final Counter hardDeleted;
 
     @Autowired
-    public MTlsService(CertificateRepository certRepo, Clock clock) {
+    public MTlsService(CertificateRepository certRepo, Clock clock, MeterRegistry meterRegistry, IssuanceMetrics issuanceMetrics,
+                       CertificateCache certificateCache, RevocationIndex revocationIndex) {
         this.certRepo = certRepo;
         this.clock = clock;
+        this.issuanceMetrics = issuanceMetrics;
+        this.certificateCache = certificateCache;
+        this.revocationIndex = revocationIndex;
+        this.softDeleted = Cleanable.cleanupCounter(meterRegistry, "certificates", "soft_delete");
+        this.hardDeleted = Cleanable.cleanupCounter(meterRegistry, "certificates", "hard_delete");
     }
 
-    @Cacheable(value = "certificatesByFingerprint", key = "#fingerprint")
+    /**
+     * @return the non-deleted record of the fingerprint, served from CertificateCache
+     */
     public Mono<@NonNull CertificateRecord> findByFingerprint(String fingerprint) {
-        return certRepo.findByFingerprintSha256AndIsDeletedFalse(fingerprint);
+        return certificateCache.get(fingerprint, certRepo::findByFingerprintSha256AndIsDeletedFalse);
     }
 
-    @CacheEvict(value = "certificatesByFingerprint", allEntries = true)
-    public Mono<@NonNull CertificateRecord> insertNewRecord(CertificateRecord record) {
-        return certRepo.save(record)
-                       .flatMap(savedRecord ->
-                                        certRepo.findByMachineIdAndIsDeletedFalse(savedRecord.getMachineId())
-                                                .filter(old -> !old.getFingerprintSha256().equals(savedRecord.getFingerprintSha256()))
-                                                .flatMap(old -> {
-                                                    // Revoke old cert
-                                                    old.setRevokedAt(record.getIssuedAt());
-                                                    old.setRevokeReason("Superseded by new certificate");
-                                                    return certRepo.save(old);
-                                                })
-                                                .then(Mono.just(savedRecord)));
+    /**
+     * @return every non-deleted certificate with a known serial number, revoked or not
+     */
+    public Flux<@NonNull CertificateRecord> findIssuedRecords() {
+        return certRepo.findByIsDeletedFalseAndSerialNumberIsNotNull();
+    }
+
+    /**
+     * Records a newly issued certificate, then revokes the certificates of the same machine it supersedes.
+     *
+     * @return Mono emitting the number of superseded certificates
+     */
+    public Mono<@NonNull Long> insertNewRecord(CertificateRecord record) {
+        return issuanceMetrics.timeInsert(certRepo.save(record))
+                              .doOnNext(savedRecord -> {
+                                  revocationIndex.update(savedRecord);
+                                  certificateCache.invalidate(List.of(savedRecord.getFingerprintSha256()), CertificateCache.ISSUE);
+                              })
+                              .flatMap(savedRecord -> issuanceMetrics.timeSupersede(
+                                      certRepo.findByMachineIdAndIsDeletedFalse(savedRecord.getMachineId())
+                                              .filter(old -> !old.getFingerprintSha256().equals(savedRecord.getFingerprintSha256()))
+                                              .flatMap(old -> {
+                                                  // Revoke old cert
+                                                  old.setRevokedAt(record.getIssuedAt());
+                                                  old.setRevokeReason("Superseded by new certificate");
+                                                  return certRepo.save(old);
+                                              })
+                                              .doOnNext(revocationIndex::update)
+                                              .map(CertificateRecord::getFingerprintSha256)
+                                              .collectList()
+                                              .doOnNext(superseded -> certificateCache.invalidate(superseded, CertificateCache.REVOKE))
+                                              .map(superseded -> (long) superseded.size())));
+    }
+
+    /**
+     * Records a batch of newly issued certificates with one bulk insert, then revokes the certificates they
+     * supersede with one updateMany.
+     *
+     * @return Mono emitting the number of superseded certificates
+     */
+    public Mono<@NonNull Long> insertNewRecords(List<CertificateRecord> records) {
+        List<String> machineIds = records.stream().map(CertificateRecord::getMachineId).distinct().toList();
+        List<String> fingerprints = records.stream().map(CertificateRecord::getFingerprintSha256).toList();
+        return issuanceMetrics.timeInsert(certRepo.insert(records).then())
+                              .doOnSuccess(ignored -> {
+                                  records.forEach(revocationIndex::update);
+                                  certificateCache.invalidate(fingerprints, CertificateCache.ISSUE);
+                              })
+                              .then(issuanceMetrics.timeSupersede(Mono.defer(() -> {
+                                  Instant revokedAt = clock.instant();
+                                  // The superseded records are found again by their revocation time to evict exactly those
+                                  return certRepo.supersede(machineIds, fingerprints, revokedAt)
+                                                 .flatMap(count -> count == 0
+                                                         ? Mono.just(count)
+                                                         : certRepo.findByMachineIdInAndRevokedAt(machineIds, revokedAt)
+                                                                   .doOnNext(revocationIndex::update)
+                                                                   .map(CertificateRecord::getFingerprintSha256)
+                                                                   .collectList()
+                                                                   .doOnNext(superseded -> certificateCache.invalidate(superseded, CertificateCache.REVOKE))
+                                                                   .thenReturn(count));
+                              })));
     }
 
     /**
@@ -53,7 +121,6 @@ public class MTlsService implements Cleanable {
      *
      * @return Mono<Boolean> true if a record was found and revoked; false otherwise.
      */
-    @CacheEvict(value = "certificatesByFingerprint", allEntries = true)
     public Mono<@NonNull Boolean> revokeById(String id, String reason) {
         Instant now = clock.instant();
         return certRepo.findById(id)
@@ -67,7 +134,6 @@ public class MTlsService implements Cleanable {
      *
      * @return Mono<Boolean> true if a record was found and revoked; false otherwise.
      */
-    @CacheEvict(value = "certificatesByFingerprint", key = "#fingerprint")
     public Mono<@NonNull Boolean> revokeByFingerprint(String fingerprint, String reason) {
         Instant now = clock.instant();
         return certRepo.findByFingerprintSha256AndIsDeletedFalse(fingerprint)
@@ -80,7 +146,6 @@ public class MTlsService implements Cleanable {
      *
      * @return Mono<Long> count of revoked records.
      */
-    @CacheEvict(value = "certificatesByFingerprint", allEntries = true)
     public Mono<@NonNull Long> revokeByDeviceId(String deviceId, String reason) {
         Instant now = clock.instant();
         return certRepo.findByMachineIdAndIsDeletedFalse(deviceId)
@@ -96,31 +161,31 @@ public class MTlsService implements Cleanable {
         } else {
             record.setRevokeReason(reason);
         }
-        return certRepo.save(record);
+        return certRepo.save(record)
+                       .doOnNext(saved -> {
+                           revocationIndex.update(saved);
+                           certificateCache.invalidate(List.of(saved.getFingerprintSha256()), CertificateCache.REVOKE);
+                       });
     }
 
+    /**
+     * Soft-deletes certificates 2 months past expiration and purges them after 1 year, each step a single
+     * updateMany/deleteMany on the deleted_expires_idx index.
+     */
     @Override
     public void cleanUp() {
-        // Mark certificates 2 months past expiration as deleted and delete them after 1 year
         Instant now = clock.instant();
-        Instant softDeleteThreshold = now.minus(Duration.ofDays(60));
-        Instant hardDeleteThreshold = now.minus(Duration.ofDays(365));
-
-        // Soft-delete: mark expired and not yet deleted
-        Flux<@NonNull CertificateRecord> softDeleteFlow = certRepo.findAll()
-                                                         .filter(rec -> rec.getExpiresAt() != null && rec.getExpiresAt().isBefore(softDeleteThreshold) && !rec.isDeleted)
-                                                         .flatMap(rec -> {
-                                                             rec.isDeleted = true;
-                                                             return certRepo.save(rec);
-                                                         });
-
-        // Hard-delete: purge records long past expiration and already marked as deleted
-        Mono<@NonNull Void> hardDeleteFlow = certRepo.findAll()
-                                            .filter(rec -> rec.isDeleted && rec.getExpiresAt() != null && rec.getExpiresAt().isBefore(hardDeleteThreshold))
-                                            .flatMap(rec -> certRepo.deleteById(rec.getId()))
-                                            .then();
+        Instant softDeleteThreshold = now.minus(SOFT_DELETE_AFTER);
+        Instant hardDeleteThreshold = now.minus(HARD_DELETE_AFTER);
+
+        Mono<@NonNull Long> softDeleteFlow = certRepo.findAndSoftDeleteByIsDeletedFalseAndExpiresAtBefore(softDeleteThreshold)
+                                                     .doOnNext(softDeleted::increment);
+        Mono<@NonNull Long> hardDeleteFlow = certRepo.deleteByIsDeletedTrueAndExpiresAtBefore(hardDeleteThreshold)
+                                                     .doOnNext(hardDeleted::increment);
 
         // Execute asynchronously (fire-and-forget); order soft-delete then hard-delete
-        fireAndForget(softDeleteFlow.then(hardDeleteFlow));
+        fireAndForget(softDeleteFlow.zipWhen(soft -> hardDeleteFlow)
+                                    .doOnNext(counts -> log.info("Cleaned up certificates: {} soft-deleted, {} purged",
+                                                                 counts.getT1(), counts.getT2())));
     }
 }
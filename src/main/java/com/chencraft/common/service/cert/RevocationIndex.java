@@ -0,0 +1,198 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.common.mongo.CertificateRepository;
+import com.chencraft.common.service.executor.TaskExecutor;
+import com.chencraft.model.mongo.CertificateRecord;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.chencraft.utils.PublisherUtils.fireAndForget;
+
+/**
+ * In-memory view of every non-deleted certificate, so the mTLS filter can settle the rare cases without a lookup:
+ * revoked certificates are held in a map by fingerprint, and a Bloom filter of all known fingerprints tells
+ * certificates that were never issued (or were purged) apart from the rest. Only a possibly known, unrevoked
+ * fingerprint is left to CertificateCache and Mongo.
+ * <p>
+ * The index is loaded at startup and rebuilt periodically, which also drops purged fingerprints from the Bloom
+ * filter; in between, it is updated by MTlsService on issuance and revocation and by CertificateChangeListener
+ * for changes of other instances. Until the first load completes, nothing is reported as revoked or unknown.
+ * <p>
+ * Certificates issued by other instances only reach the index through the change stream, so a fingerprint is only
+ * reported unknown while the stream is established and the snapshot was read after it was; otherwise the lookup
+ * goes to CertificateCache and Mongo as if the fingerprint might be known.
+ * <p>
+ * Metrics: cert.revocation_index.revoked gauges the revoked certificates held.
+ * Configuration: app.mtls.revocation-index.expected-certificates, app.mtls.revocation-index.false-positive-rate,
+ * app.mtls.revocation-index.rebuild-interval.
+ * Thread-safety: lookups are lock-free; updates and rebuilds synchronize on the index.
+ */
+@Slf4j
+@Component
+public class RevocationIndex {
+    private final CertificateRepository certRepo;
+    private final TaskExecutor taskExecutor;
+    private final long expectedCertificates;
+    private final double falsePositiveRate;
+    private final Duration rebuildInterval;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // Asked for while a rebuild was running, which may have read the collection too early
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+    private final AtomicLong rebuildsStarted = new AtomicLong();
+    // First rebuild whose snapshot may report unknown fingerprints, none while the change stream is down
+    private volatile long trustedFromRebuild = Long.MAX_VALUE;
+    private volatile Snapshot snapshot;
+    // Updates received while a rebuild reads the collection, replayed onto the rebuilt snapshot; guarded by this
+    private List<CertificateRecord> pendingUpdates;
+
+    @Autowired
+    public RevocationIndex(CertificateRepository certRepo,
+                           TaskExecutor taskExecutor,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.mtls.revocation-index.expected-certificates:100000}") long expectedCertificates,
+                           @Value("${app.mtls.revocation-index.false-positive-rate:0.01}") double falsePositiveRate,
+                           @Value("${app.mtls.revocation-index.rebuild-interval:PT6H}") Duration rebuildInterval) {
+        this.certRepo = certRepo;
+        this.taskExecutor = taskExecutor;
+        this.expectedCertificates = expectedCertificates;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildInterval = rebuildInterval;
+        Gauge.builder("cert.revocation_index.revoked", this, index -> {
+                 Snapshot current = index.snapshot;
+                 return current == null ? 0 : current.revoked().size();
+             })
+             .description("Revoked certificates held in memory for the mTLS filter")
+             .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        this.taskExecutor.scheduleAtFixedRate(() -> fireAndForget(rebuild()), 0, rebuildInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the revoked record of the fingerprint, or null if it is not known to be revoked
+     */
+    public CertificateRecord findRevoked(String fingerprint) {
+        Snapshot current = snapshot;
+        return current == null ? null : current.revoked().get(fingerprint);
+    }
+
+    /**
+     * @return true only if no certificate with this fingerprint exists; false if it may exist, or the index may not
+     * have seen every issuance because it is not loaded or the change stream is not established
+     */
+    public boolean isUnknown(String fingerprint) {
+        Snapshot current = snapshot;
+        return current != null && current.rebuild() >= trustedFromRebuild && !current.known().mightContain(fingerprint);
+    }
+
+    /**
+     * Called once the change stream delivers every change, reloads the index so that nothing issued before is missing.
+     *
+     * @return Mono completing when the reload was started, unknown fingerprints are reported once it finished
+     */
+    public Mono<@NonNull Void> changeStreamEstablished() {
+        trustedFromRebuild = rebuildsStarted.get() + 1;
+        return rebuild();
+    }
+
+    /**
+     * Called when the change stream dropped, unknown fingerprints are no longer reported until it is established again
+     */
+    public void changeStreamLost() {
+        trustedFromRebuild = Long.MAX_VALUE;
+    }
+
+    /**
+     * Applies an inserted or changed record, e.g. a new certificate or a revocation.
+     */
+    public synchronized void update(CertificateRecord record) {
+        if (record.getFingerprintSha256() == null) {
+            return;
+        }
+        if (snapshot != null) {
+            snapshot.apply(record);
+        }
+        if (pendingUpdates != null) {
+            pendingUpdates.add(record);
+        }
+    }
+
+    /**
+     * Reloads the index from all non-deleted certificate records. While a rebuild is already running, another one is
+     * started once it finished instead.
+     */
+    public Mono<@NonNull Void> rebuild() {
+        return Mono.defer(() -> {
+            if (!rebuilding.compareAndSet(false, true)) {
+                rebuildRequested.set(true);
+                // The running rebuild may have finished in between without seeing the request
+                if (!rebuilding.compareAndSet(false, true)) {
+                    return Mono.empty();
+                }
+                rebuildRequested.set(false);
+            }
+            long rebuild = rebuildsStarted.incrementAndGet();
+            synchronized (this) {
+                pendingUpdates = new ArrayList<>();
+            }
+            return certRepo.findByIsDeletedFalse()
+                           .collect(() -> new Snapshot(rebuild, new FingerprintBloomFilter(expectedCertificates, falsePositiveRate),
+                                                       new ConcurrentHashMap<>()),
+                                    Snapshot::apply)
+                           .doOnNext(this::replaceSnapshot)
+                           .doFinally(signal -> {
+                               synchronized (this) {
+                                   pendingUpdates = null;
+                               }
+                               rebuilding.set(false);
+                               if (rebuildRequested.getAndSet(false)) {
+                                   fireAndForget(rebuild());
+                               }
+                           })
+                           .then();
+        });
+    }
+
+    private synchronized void replaceSnapshot(Snapshot next) {
+        pendingUpdates.forEach(next::apply);
+        snapshot = next;
+        log.info("Loaded revocation index with {} revoked certificates", next.revoked().size());
+    }
+
+    /**
+     * @param rebuild number of the rebuild that read it
+     * @param known   every fingerprint seen, deleted ones stay until the next rebuild
+     * @param revoked revoked records by fingerprint
+     */
+    private record Snapshot(long rebuild, FingerprintBloomFilter known, Map<String, CertificateRecord> revoked) {
+        void apply(CertificateRecord record) {
+            if (record.isDeleted) {
+                // Left to the lookup, which no longer finds it
+                revoked.remove(record.getFingerprintSha256());
+                return;
+            }
+            known.add(record.getFingerprintSha256());
+            if (record.getRevokedAt() != null) {
+                revoked.put(record.getFingerprintSha256(), record);
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.model.mongo.CertificateRecord;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.ocsp.*;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.util.io.pem.PemObject;
+import org.bouncycastle.util.io.pem.PemWriter;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.CertificateEncodingException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.chencraft.utils.PublisherUtils.fireAndForget;
+
+/**
+ * Publishes the revocation state of issued certificates in the forms a TLS terminator can enforce without asking
+ * this service per request: a CA-signed CRL, optionally written to a file for nginx's ssl_crl, and OCSP responses
+ * following the RFC 5019 lightweight profile.
+ * <p>
+ * Both are derived from a snapshot of CertificateRepository taken on every {@link #publish()}. OCSP responses are
+ * signed once per certificate ID and served from memory until the next publish; request nonces are ignored so
+ * responses stay cacheable. Certificates without a recorded serial number are not covered.
+ * Thread-safety: safe for concurrent use; publishes run one at a time, a publish asked for while one is running is
+ * run once it finished, so a snapshot is never replaced by one read before it.
+ */
+@Slf4j
+public class RevocationPublisher {
+    private static final byte[] MALFORMED_REQUEST = unsignedResponse(OCSPRespBuilder.MALFORMED_REQUEST);
+    private static final byte[] TRY_LATER = unsignedResponse(OCSPRespBuilder.TRY_LATER);
+    private static final byte[] UNAUTHORIZED = unsignedResponse(OCSPRespBuilder.UNAUTHORIZED);
+
+    private final CertificateAuthority ca;
+    private final X509CertificateHolder caHolder;
+    private final DigestCalculatorProvider digestCalculatorProvider;
+    private final MTlsService mtlsService;
+    private final Clock clock;
+    private final Duration validity;
+    private final Path crlPath;
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    // Asked for while a publish was running, which may have read the records before the change
+    private final AtomicBoolean publishRequested = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param validity time until the nextUpdate of the CRL and OCSP responses, longer than the publish interval
+     * @param crlPath  file the PEM CRL is written to after every publish, or null to only serve it over HTTP
+     */
+    RevocationPublisher(CertificateAuthority ca, MTlsService mtlsService, Clock clock, Duration validity, Path crlPath)
+            throws CertificateEncodingException, IOException, OperatorCreationException {
+        this.ca = ca;
+        this.caHolder = new X509CertificateHolder(ca.certificate().getEncoded());
+        this.digestCalculatorProvider = new JcaDigestCalculatorProviderBuilder().build();
+        this.mtlsService = mtlsService;
+        this.clock = clock;
+        this.validity = validity;
+        this.crlPath = crlPath;
+    }
+
+    /**
+     * Re-reads the revocation state, signs a new CRL and drops the OCSP responses signed for the previous one. While
+     * a publish is already running, another one is started once it finished instead.
+     */
+    public Mono<@NonNull Void> publish() {
+        return Mono.defer(() -> {
+            if (!publishing.compareAndSet(false, true)) {
+                publishRequested.set(true);
+                // The running publish may have finished in between without seeing the request
+                if (!publishing.compareAndSet(false, true)) {
+                    return Mono.empty();
+                }
+                publishRequested.set(false);
+            }
+            return mtlsService.findIssuedRecords()
+                              .collectList()
+                              .publishOn(Schedulers.boundedElastic())
+                              .doOnNext(this::replaceSnapshot)
+                              .doFinally(signal -> {
+                                  publishing.set(false);
+                                  if (publishRequested.getAndSet(false)) {
+                                      fireAndForget(publish());
+                                  }
+                              })
+                              .then();
+        });
+    }
+
+    /**
+     * @return DER-encoded CRL, empty before the first publish completed
+     */
+    public Optional<byte[]> crl() {
+        Snapshot current = snapshot;
+        return current == null ? Optional.empty() : Optional.of(current.crlDer());
+    }
+
+    public Optional<String> crlPem() {
+        Snapshot current = snapshot;
+        return current == null ? Optional.empty() : Optional.of(current.crlPem());
+    }
+
+    /**
+     * Answers a DER-encoded OCSP request for one certificate, as RFC 5019 clients send them. Certificates this CA
+     * did not issue get the unsigned "unauthorized" status, so only known certificates ever cost a signature.
+     *
+     * @return DER-encoded OCSP response
+     */
+    public byte[] respond(byte[] ocspRequest) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return TRY_LATER;
+        }
+        Req[] requests;
+        try {
+            requests = new OCSPReq(ocspRequest).getRequestList();
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Rejecting malformed OCSP request", e);
+            return MALFORMED_REQUEST;
+        }
+        if (requests.length != 1) {
+            return MALFORMED_REQUEST;
+        }
+
+        CertificateID certId = requests[0].getCertID();
+        if (!isIssuedByCa(certId) || !current.bySerial().containsKey(certId.getSerialNumber())) {
+            return UNAUTHORIZED;
+        }
+        return current.ocspResponses().computeIfAbsent(certId, id -> sign(current, id));
+    }
+
+    private void replaceSnapshot(List<CertificateRecord> records) {
+        Instant now = clock.instant();
+        Map<BigInteger, CertificateRecord> bySerial = new HashMap<>();
+        for (CertificateRecord record : records) {
+            bySerial.put(new BigInteger(record.getSerialNumber(), 16), record);
+        }
+
+        try {
+            X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(ca.issuer(), Date.from(now));
+            crlBuilder.setNextUpdate(Date.from(now.plus(validity)));
+            crlBuilder.addExtension(Extension.authorityKeyIdentifier, false, ca.authorityKeyIdentifier());
+            // Milliseconds keep the CRL number increasing across restarts
+            crlBuilder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(now.toEpochMilli())));
+            int revoked = 0;
+            for (Map.Entry<BigInteger, CertificateRecord> entry : bySerial.entrySet()) {
+                CertificateRecord record = entry.getValue();
+                if (record.getRevokedAt() != null) {
+                    crlBuilder.addCRLEntry(entry.getKey(), Date.from(record.getRevokedAt()), reasonOf(record));
+                    revoked++;
+                }
+            }
+            X509CRLHolder crl = crlBuilder.build(ca.newSigner());
+
+            Snapshot next = new Snapshot(Map.copyOf(bySerial), now, crl.getEncoded(), toPem(crl), new ConcurrentHashMap<>());
+            snapshot = next;
+            writeCrlFile(next.crlPem());
+            log.info("Published CRL with {} revoked of {} certificates", revoked, bySerial.size());
+        } catch (IOException | OperatorCreationException e) {
+            throw new IllegalStateException("Failed to publish certificate revocation list", e);
+        }
+    }
+
+    private byte[] sign(Snapshot current, CertificateID certId) {
+        CertificateRecord record = current.bySerial().get(certId.getSerialNumber());
+        CertificateStatus status = record.getRevokedAt() == null
+                ? CertificateStatus.GOOD
+                : new RevokedStatus(Date.from(record.getRevokedAt()), reasonOf(record));
+        try {
+            BasicOCSPResp basicResponse = new BasicOCSPRespBuilder(new RespID(ca.issuer()))
+                    .addResponse(certId, status, Date.from(current.publishedAt()), Date.from(current.publishedAt().plus(validity)), null)
+                    .build(ca.newSigner(), null, Date.from(clock.instant()));
+            return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResponse).getEncoded();
+        } catch (IOException | OCSPException | OperatorCreationException e) {
+            throw new IllegalStateException("Failed to sign OCSP response", e);
+        }
+    }
+
+    private boolean isIssuedByCa(CertificateID certId) {
+        try {
+            return certId.matchesIssuer(caHolder, digestCalculatorProvider);
+        } catch (OCSPException e) {
+            return false;
+        }
+    }
+
+    private static byte[] unsignedResponse(int status) {
+        try {
+            return new OCSPRespBuilder().build(status, null).getEncoded();
+        } catch (IOException | OCSPException e) {
+            throw new IllegalStateException("Failed to encode OCSP response status " + status, e);
+        }
+    }
+
+    private void writeCrlFile(String crlPem) throws IOException {
+        if (crlPath == null) {
+            return;
+        }
+        // Write next to the target and move, so nginx never reads a partial file
+        Path tempFile = Files.createTempFile(crlPath.toAbsolutePath().getParent(), ".crl", ".tmp");
+        try {
+            Files.writeString(tempFile, crlPem, StandardCharsets.US_ASCII);
+            Files.move(tempFile, crlPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static int reasonOf(CertificateRecord record) {
+        return "Superseded by new certificate".equals(record.getRevokeReason())
+                ? CRLReason.superseded
+                : CRLReason.unspecified;
+    }
+
+    private static String toPem(X509CRLHolder crl) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        try (PemWriter pemWriter = new PemWriter(stringWriter)) {
+            pemWriter.writeObject(new PemObject("X509 CRL", crl.getEncoded()));
+        }
+        return stringWriter.toString();
+    }
+
+    /**
+     * @param ocspResponses OCSP responses signed from this snapshot, by the certificate ID they answer
+     */
+    private record Snapshot(Map<BigInteger, CertificateRecord> bySerial, Instant publishedAt, byte[] crlDer, String crlPem,
+                            ConcurrentMap<CertificateID, byte[]> ocspResponses) {
+    }
+}
@@ -0,0 +1,927 @@
+package com.chencraft.common.service.file;
+
+import com.chencraft.api.ApiException;
+import com.chencraft.api.NotFoundException;
+import com.chencraft.common.component.AppConfig;
+import com.chencraft.common.config.S3Config;
+import com.chencraft.model.FileMetadata;
+import com.chencraft.model.FileOperationResult;
+import com.chencraft.model.FileUpload;
+import com.chencraft.model.mongo.StoredFile;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.UnsupportedMediaTypeException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Shared plumbing for FileService implementations backed by Cloudflare R2 (S3-compatible) using AWS SDK v2.
+ * Subclasses only supply the transport (blocking S3Client or non-blocking S3AsyncClient) through the
+ * Mono-returning primitives below; key layout, request building and response mapping live here so both
+ * transports behave identically. The blocking FileService methods simply wait on the reactive ones.
+ * PUBLIC downloads are read through PublicFileCache, which is invalidated on upload and delete.
+ * A periodically refreshed ObjectMetadataIndex of the bucket listing answers HEAD requests for listed files
+ * without a round trip to R2; keys it does not list are asked of R2, other writers may have added them since.
+ * With cloudflare.r2.presign.enabled, PUBLIC and SHARE downloads can instead be redirected to presigned R2 URLs.
+ * <p>
+ * Configuration: cloudflare.r2.bucket; cloudflare.r2.client selects the transport (sync|async);
+ * cloudflare.r2.presign.enabled and cloudflare.r2.presign.expiry control redirects;
+ * app.file.batch-parallelism, shared with batch uploads, bounds the DeleteObjects calls of a batch delete in flight;
+ * cloudflare.r2.index.enabled, cloudflare.r2.index.refresh-interval and cloudflare.r2.index.max-entries control
+ * the metadata index.
+ * Thread-safety: SDK clients are thread-safe; implementations are Spring singletons.
+ */
+@Slf4j
+public abstract class AbstractR2FileService implements FileService {
+    // DeleteObjects accepts at most this many keys per call, ListObjectsV2 returns at most this many per page
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+    private static final int MAX_KEYS_PER_PAGE = 1000;
+
+    protected final AppConfig appConfig;
+    protected final int partSize;
+    protected final PublicFileCache publicFileCache;
+    protected final DownloadCoalescer downloadCoalescer;
+    protected final ContentHashIndex contentHashIndex;
+    // Keys found too large to buffer for coalescing, their requests skip straight to streaming
+    private final Cache<String, Boolean> largeObjects;
+    // PUBLIC keys found too large for the disk cache, their requests are streamed from R2
+    private final Cache<String, Boolean> uncachedObjects;
+    private final S3Presigner presigner;
+    // Signing is cheap but not free; hot PUBLIC files reuse a URL until half of its lifetime is spent
+    private final Cache<String, PresignedUrl> presignedUrls;
+    private final ObjectMetadataIndex metadataIndex = new ObjectMetadataIndex();
+    private Disposable indexRefresh;
+
+    @Value("${cloudflare.r2.bucket}")
+    protected String bucketName;
+
+    // Cache-Control sent per storage prefix; PUBLIC files may be cached, private and shared ones must not be
+    @Value("${cloudflare.r2.cache-control.public:public, max-age=300, must-revalidate}")
+    protected String publicCacheControl;
+    @Value("${cloudflare.r2.cache-control.private:no-store, no-cache, must-revalidate, max-age=0}")
+    protected String privateCacheControl;
+    @Value("${cloudflare.r2.cache-control.share:no-store, no-cache, must-revalidate, max-age=0}")
+    protected String shareCacheControl;
+
+    @Value("${cloudflare.r2.coalesce.max-buffer-kb:1024}")
+    protected int coalesceMaxBufferKb;
+
+    @Value("${cloudflare.r2.presign.enabled:false}")
+    protected boolean presignEnabled;
+    @Value("${cloudflare.r2.presign.expiry:PT15M}")
+    protected Duration presignExpiry;
+
+    @Value("${app.file.batch-parallelism:4}")
+    protected int batchParallelism;
+
+    @Value("${cloudflare.r2.index.enabled:true}")
+    protected boolean indexEnabled;
+    @Value("${cloudflare.r2.index.refresh-interval:PT5M}")
+    protected Duration indexRefreshInterval;
+    @Value("${cloudflare.r2.index.max-entries:100000}")
+    protected int indexMaxEntries;
+
+    protected AbstractR2FileService(S3Config config, AppConfig appConfig, PublicFileCache publicFileCache,
+                                    DownloadCoalescer downloadCoalescer, ContentHashIndex contentHashIndex) {
+        this.appConfig = appConfig;
+        this.partSize = config.getPartSize();
+        this.publicFileCache = publicFileCache;
+        this.downloadCoalescer = downloadCoalescer;
+        this.contentHashIndex = contentHashIndex;
+        this.largeObjects = Caffeine.newBuilder()
+                                    .maximumSize(10_000)
+                                    .expireAfterWrite(Duration.ofMinutes(10))
+                                    .build();
+        this.uncachedObjects = Caffeine.newBuilder()
+                                       .maximumSize(10_000)
+                                       .expireAfterWrite(Duration.ofMinutes(10))
+                                       .build();
+        this.presigner = S3Presigner.builder()
+                                    .endpointOverride(URI.create(config.getEndpoint()))
+                                    .credentialsProvider(credentialsProvider(config))
+                                    .region(Region.of("auto"))
+                                    .serviceConfiguration(serviceConfiguration())
+                                    .build();
+        this.presignedUrls = Caffeine.newBuilder()
+                                     .maximumSize(10_000)
+                                     .expireAfter(Expiry.creating((String key, PresignedUrl url) ->
+                                             Duration.between(Instant.now(), url.expiration()).dividedBy(2)))
+                                     .build();
+    }
+
+    /**
+     * Verifies connectivity to the configured bucket on startup; fails fast on misconfiguration.
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            // The API token does not permit for listBucket or createBucket, the bucket should already exist.
+            headBucket(HeadBucketRequest.builder().bucket(bucketName).build()).block();
+            log.info("Successfully connected to Cloudflare R2 Storage bucket: {}", bucketName);
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                throw new RuntimeException("Bucket does not exist: " + bucketName, e);
+            } else if (e.statusCode() == 403) {
+                throw new RuntimeException("Bucket exists but access denied: " + bucketName, e);
+            } else {
+                throw new RuntimeException("Error checking bucket: " + bucketName, e);
+            }
+        }
+
+        if (indexEnabled) {
+            // A failed refresh keeps the previous listing, the next tick tries again
+            indexRefresh = Flux.interval(Duration.ZERO, indexRefreshInterval)
+                               .onBackpressureDrop()
+                               .concatMap(tick -> refreshIndex()
+                                       .onErrorResume(e -> {
+                                           log.warn("Failed to refresh object metadata index of bucket {}", bucketName, e);
+                                           return Mono.empty();
+                                       }), 1)
+                               .subscribe();
+        }
+    }
+
+    /**
+     * Lists the whole bucket and replaces the metadata index with the result. A bucket beyond
+     * cloudflare.r2.index.max-entries is not indexed, every lookup then goes to R2.
+     */
+    Mono<@NonNull Void> refreshIndex() {
+        return Mono.defer(() -> {
+            Instant listedAt = Instant.now();
+            return listAll(ListObjectsV2Request.builder().bucket(bucketName).maxKeys(MAX_KEYS_PER_PAGE).build())
+                    .take(indexMaxEntries + 1L)
+                    .collectMap(S3Object::key)
+                    .doOnNext(objects -> {
+                        if (objects.size() > indexMaxEntries) {
+                            log.warn("Bucket {} holds more than {} objects, metadata index disabled until it shrinks", bucketName, indexMaxEntries);
+                            metadataIndex.clear();
+                        } else {
+                            metadataIndex.replace(objects, listedAt);
+                            log.debug("Refreshed object metadata index of bucket {}: {} objects", bucketName, objects.size());
+                        }
+                    })
+                    .then();
+        });
+    }
+
+    /**
+     * Lists the files under the destination prefix page by page, a page is only requested once the previous one
+     * has been consumed.
+     */
+    @Override
+    public Flux<@NonNull FileMetadata> listFiles(FileUpload.Type destination, @Nullable String startAfter) {
+        return Flux.defer(() -> {
+            String prefix = createPath(destination, "");
+            ListObjectsV2Request.Builder request = ListObjectsV2Request.builder()
+                                                                       .bucket(bucketName)
+                                                                       .prefix(prefix)
+                                                                       .maxKeys(MAX_KEYS_PER_PAGE);
+            if (startAfter != null && !startAfter.isEmpty()) {
+                request.startAfter(prefix + startAfter);
+            }
+            log.info("Listing files in S3: {}/{}", this.bucketName, prefix);
+            return listAll(request.build())
+                    .map(object -> new FileMetadata(object.key().substring(prefix.length()), object.size(),
+                                                    object.eTag(), object.lastModified()));
+        });
+    }
+
+    private Flux<@NonNull S3Object> listAll(ListObjectsV2Request request) {
+        return listObjects(request)
+                .expand(page -> Boolean.TRUE.equals(page.isTruncated())
+                        ? listObjects(request.toBuilder().continuationToken(page.nextContinuationToken()).build())
+                        : Mono.empty())
+                .concatMapIterable(ListObjectsV2Response::contents);
+    }
+
+    @Override
+    public void uploadFile(FileUpload.Type destination, String filename, String contentType, InputStream content) {
+        uploadFileAsync(destination, filename, contentType, content).block();
+    }
+
+    /**
+     * Streams a file into Cloudflare R2 under the given destination prefix, hashing it on the way.
+     * Content that fits into one part is hashed before anything is sent: if the key already holds it the upload
+     * is skipped, if another key does it is copied server-side. Larger content is streamed and indexed afterwards.
+     *
+     * @throws org.springframework.web.reactive.function.UnsupportedMediaTypeException when contentType/filename missing
+     */
+    @Override
+    public Mono<@NonNull Void> uploadFileAsync(FileUpload.Type destination, String filename, String contentType, InputStream content) {
+        return Mono.defer(() -> {
+            String type = Optional.ofNullable(contentType)
+                                  .orElseThrow(() -> new UnsupportedMediaTypeException("Content-Type is unknown"));
+
+            // Build the S3 key (prefix and filename)
+            String fullPath = createPath(destination, filename);
+            log.info("Uploading file to S3: {}/{}", this.bucketName, fullPath);
+
+            MessageDigest digest = ContentHashIndex.newDigest();
+            InputStream hashing = new DigestInputStream(content, digest);
+            return Mono.fromCallable(() -> readHead(hashing, fullPath))
+                       .subscribeOn(Schedulers.boundedElastic())
+                       .flatMap(head -> {
+                           if (head.length < this.partSize) {
+                               String sha256 = ContentHashIndex.toHex(digest);
+                               return reuse(fullPath, sha256, type)
+                                       .filter(Boolean.FALSE::equals)
+                                       .flatMap(notReused -> putObject(fullPath, type, head, InputStream.nullInputStream())
+                                               .flatMap(eTag -> contentHashIndex.record(fullPath, sha256, eTag)));
+                           }
+                           // The head becomes the first part, so no second part-sized buffer is allocated
+                           return putObject(fullPath, type, head, hashing)
+                                   .flatMap(eTag -> contentHashIndex.record(fullPath, ContentHashIndex.toHex(digest), eTag));
+                       })
+                       .doFinally(signal -> invalidateCached(destination, fullPath));
+        });
+    }
+
+    /**
+     * Copies identical stored content to the file with a server-side copy when the content hash is known.
+     * The content is not at hand, so a copy is typed by the filename.
+     */
+    @Override
+    public Mono<@NonNull Boolean> reuseStoredContent(FileUpload.Type destination, String filename, String sha256) {
+        return Mono.defer(() -> {
+            String fullPath = createPath(destination, filename);
+            String contentType = MediaTypeFactory.getMediaType(filename)
+                                                 .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                                                 .toString();
+            return reuse(fullPath, sha256, contentType)
+                    .doFinally(signal -> invalidateCached(destination, fullPath));
+        });
+    }
+
+    @Override
+    public ResponseEntity<@NonNull Resource> downloadFile(FileUpload.Type destination, @Nonnull String filename) {
+        return downloadFile(destination, filename, HttpHeaders.EMPTY);
+    }
+
+    @Override
+    public ResponseEntity<@NonNull Resource> downloadFile(FileUpload.Type destination, @Nonnull String filename, HttpHeaders requestHeaders) {
+        return downloadFileAsync(destination, filename, requestHeaders).block();
+    }
+
+    @Override
+    public Mono<@NonNull ResponseEntity<@NonNull Resource>> downloadFileAsync(FileUpload.Type destination, @Nonnull String filename) {
+        return downloadFileAsync(destination, filename, HttpHeaders.EMPTY);
+    }
+
+    /**
+     * Streams a file from Cloudflare R2. Responses carry the object's ETag and Last-Modified, and a client whose copy
+     * is still current (If-None-Match/If-Modified-Since) receives 304 Not Modified without a body.
+     * <p>
+     * PUBLIC files are served from the local disk cache, read through on a miss, unless they are too large for it.
+     * Otherwise a single byte range requested by the client is forwarded to R2, so only those bytes leave the bucket
+     * and the client receives 206 Partial Content; If-Range is checked by R2 as a precondition and a changed object
+     * is served in full instead. Multiple or malformed ranges are ignored.
+     *
+     * @throws NotFoundException when the object does not exist
+     */
+    @Override
+    public Mono<@NonNull ResponseEntity<@NonNull Resource>> downloadFileAsync(FileUpload.Type destination, @Nonnull String filename, HttpHeaders requestHeaders) {
+        return Mono.defer(() -> {
+            String fullPath = createPath(destination, filename);
+
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                                                                .bucket(bucketName)
+                                                                .key(fullPath)
+                                                                .build();
+            if (destination == FileUpload.Type.PUBLIC && requestHeaders.getFirst(HttpHeaders.IF_RANGE) == null
+                    && uncachedObjects.getIfPresent(fullPath) == null) {
+                // If-Range is left to R2, see below
+                return publicFileCache.open(fullPath, file -> downloadTo(getObjectRequest, file))
+                                      .map(file -> toResponse(destination, filename, file, requestHeaders))
+                                      // Too large to cache, or evicted before it could be opened
+                                      .onErrorResume(e -> e instanceof ObjectTooLargeException || e instanceof NoSuchFileException,
+                                                     e -> download(destination, filename, fullPath, getObjectRequest, requestHeaders))
+                                      .onErrorMap(NoSuchKeyException.class, e -> new NotFoundException(fullPath));
+            }
+            return download(destination, filename, fullPath, getObjectRequest, requestHeaders);
+        });
+    }
+
+    /**
+     * Fetches the object, or the requested range of it, from R2
+     */
+    private Mono<@NonNull ResponseEntity<@NonNull Resource>> download(FileUpload.Type destination, String filename, String fullPath,
+                                                                      GetObjectRequest getObjectRequest, HttpHeaders requestHeaders) {
+        // R2 evaluates the client's validators, so an unchanged object costs one bodiless round trip
+        GetObjectRequest conditionalRequest = withValidators(getObjectRequest, requestHeaders);
+        GetObjectRequest rangeRequest = toRangeRequest(conditionalRequest, requestHeaders);
+        if (rangeRequest == null && conditionalRequest == getObjectRequest
+                && destination != FileUpload.Type.SHARE && largeObjects.getIfPresent(fullPath) == null) {
+            log.info("Downloading file from S3: {}/{} (coalesced)", this.bucketName, fullPath);
+            return downloadCoalescer.execute(fullPath, () -> fetchBuffered(getObjectRequest))
+                                    .flatMap(buffered -> buffered.isPresent()
+                                            ? Mono.just(toResponse(destination, filename, buffered.get()))
+                                            : getObject(getObjectRequest).map(object -> toResponse(destination, filename, object)))
+                                    .onErrorMap(NoSuchKeyException.class, e -> new NotFoundException(fullPath));
+        }
+
+        Mono<ResponseInputStream<GetObjectResponse>> s3Object;
+        if (rangeRequest == null) {
+            log.info("Downloading file from S3: {}/{}", this.bucketName, fullPath);
+            s3Object = getObject(conditionalRequest);
+        } else {
+            log.info("Downloading file from S3: {}/{} ({})", this.bucketName, fullPath, rangeRequest.range());
+            s3Object = getObject(rangeRequest)
+                    // If-Range validator no longer matches, the client's partial copy is stale
+                    .onErrorResume(e -> hasStatus(e, HttpStatus.PRECONDITION_FAILED), e -> getObject(conditionalRequest));
+        }
+
+        return s3Object.map(object -> toResponse(destination, filename, object))
+                       .onErrorResume(e -> hasStatus(e, HttpStatus.NOT_MODIFIED), e -> Mono.just(notModified(destination, (S3Exception) e)))
+                       .onErrorResume(e -> hasStatus(e, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE), e -> rangeNotSatisfiable(fullPath))
+                       .onErrorMap(NoSuchKeyException.class, e -> new NotFoundException(fullPath));
+    }
+
+    /**
+     * Answers a HEAD request from the metadata index, asking R2 for keys the index does not list.
+     * Spring MVC evaluates If-None-Match/If-Modified-Since against the returned validators.
+     *
+     * @throws NotFoundException when the object does not exist
+     */
+    @Override
+    public Mono<@NonNull ResponseEntity<@NonNull Resource>> headFileAsync(FileUpload.Type destination, @Nonnull String filename, HttpHeaders requestHeaders) {
+        return Mono.defer(() -> {
+            String fullPath = createPath(destination, filename);
+
+            Optional<S3Object> indexed = metadataIndex.find(fullPath);
+            if (indexed.isPresent()) {
+                S3Object object = indexed.get();
+                return Mono.just(toHeadResponse(destination, filename, object.size(), object.eTag(), object.lastModified()));
+            }
+
+            HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
+                                                                   .bucket(bucketName)
+                                                                   .key(fullPath)
+                                                                   .build();
+            return headObject(headObjectRequest)
+                    .map(head -> toHeadResponse(destination, filename, head.contentLength(), head.eTag(), head.lastModified()))
+                    .onErrorMap(NoSuchKeyException.class, e -> new NotFoundException(fullPath));
+        });
+    }
+
+    private ResponseEntity<@NonNull Resource> toHeadResponse(FileUpload.Type destination, String filename, Long size,
+                                                             String eTag, Instant lastModified) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                                                           .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (size != null) {
+            builder.contentLength(size);
+        }
+        return withDownloadHeaders(builder, destination, filename, eTag, lastModified).build();
+    }
+
+    /**
+     * Signs a GET URL for PUBLIC and SHARE files when redirects are enabled; PRIVATE files stay behind mTLS.
+     * The signed request carries the attachment disposition and Cache-Control the proxied download would send.
+     * PUBLIC URLs are reused while at least half of their lifetime remains, SHARE URLs are signed per request.
+     * The object's existence is not checked, a missing file surfaces as a 404 from R2.
+     */
+    @Override
+    public Optional<PresignedUrl> presignDownload(FileUpload.Type destination, @Nonnull String filename) {
+        if (!presignEnabled || destination == FileUpload.Type.PRIVATE) {
+            return Optional.empty();
+        }
+
+        String fullPath = createPath(destination, filename);
+        if (destination == FileUpload.Type.PUBLIC) {
+            return Optional.of(presignedUrls.get(fullPath, key -> presign(destination, key, filename)));
+        }
+        return Optional.of(presign(destination, fullPath, filename));
+    }
+
+    @PreDestroy
+    public void close() {
+        if (indexRefresh != null) {
+            indexRefresh.dispose();
+        }
+        presigner.close();
+    }
+
+    @Override
+    public void deleteFile(FileUpload.Type destination, @Nonnull String filename) {
+        deleteFileAsync(destination, filename).block();
+    }
+
+    @Override
+    public Mono<@NonNull Void> deleteFileAsync(FileUpload.Type destination, @Nonnull String filename) {
+        return Mono.defer(() -> {
+            String fullPath = createPath(destination, filename);
+            log.info("Deleting file from S3: {}/{}", this.bucketName, fullPath);
+
+            DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
+                                                                         .bucket(bucketName)
+                                                                         .key(fullPath)
+                                                                         .build();
+            return deleteObject(deleteObjectRequest)
+                    .then(contentHashIndex.remove(fullPath))
+                    .doFinally(signal -> invalidateCached(destination, fullPath));
+        });
+    }
+
+    /**
+     * Deletes the files with DeleteObjects, up to 1000 keys per call with the calls running in parallel.
+     * Keys R2 reports as deleted (including ones that did not exist) succeed, per-key errors are reported as such.
+     */
+    @Override
+    public Flux<@NonNull FileOperationResult> deleteFilesAsync(FileUpload.Type destination, List<String> filenames) {
+        return Flux.fromIterable(filenames)
+                   .buffer(MAX_KEYS_PER_DELETE)
+                   .flatMapSequential(batch -> deleteBatch(destination, batch), this.batchParallelism);
+    }
+
+    private Flux<@NonNull FileOperationResult> deleteBatch(FileUpload.Type destination, List<String> filenames) {
+        Map<String, String> filenamesByKey = new LinkedHashMap<>();
+        for (String filename : filenames) {
+            filenamesByKey.put(createPath(destination, filename), filename);
+        }
+        log.info("Deleting {} files from S3: {}/{}", filenamesByKey.size(), this.bucketName, destination.toPrefix());
+
+        List<ObjectIdentifier> objects = filenamesByKey.keySet()
+                                                       .stream()
+                                                       .map(key -> ObjectIdentifier.builder().key(key).build())
+                                                       .toList();
+        DeleteObjectsRequest deleteObjectsRequest = DeleteObjectsRequest.builder()
+                                                                        .bucket(bucketName)
+                                                                        .delete(Delete.builder().objects(objects).quiet(false).build())
+                                                                        .build();
+        return deleteObjects(deleteObjectsRequest)
+                .flatMapMany(response -> {
+                    Map<String, S3Error> errors = response.errors()
+                                                          .stream()
+                                                          .collect(Collectors.toMap(S3Error::key, error -> error, (first, second) -> first));
+                    List<String> deleted = filenamesByKey.keySet()
+                                                         .stream()
+                                                         .filter(key -> !errors.containsKey(key))
+                                                         .toList();
+                    return Flux.fromIterable(deleted)
+                               .concatMap(contentHashIndex::remove)
+                               .thenMany(Flux.fromIterable(filenamesByKey.entrySet()))
+                               .map(entry -> {
+                                   S3Error error = errors.get(entry.getKey());
+                                   if (error == null) {
+                                       return FileOperationResult.success(entry.getValue());
+                                   }
+                                   log.warn("Failed to delete {}: {} {}", entry.getKey(), error.code(), error.message());
+                                   return FileOperationResult.failure(entry.getValue(), HttpStatus.BAD_GATEWAY, error.code() + ": " + error.message());
+                               });
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to delete batch of {} files from S3", filenamesByKey.size(), e);
+                    return Flux.fromIterable(filenamesByKey.values())
+                               .map(filename -> FileOperationResult.failure(filename, HttpStatus.BAD_GATEWAY, e.getMessage()));
+                })
+                .doFinally(signal -> filenamesByKey.keySet().forEach(key -> invalidateCached(destination, key)));
+    }
+
+    protected abstract Mono<@NonNull Void> headBucket(HeadBucketRequest request);
+
+    /**
+     * Stores the content under the given key, holding at most one part of it in memory.
+     *
+     * @param head first bytes of the content, already read; a full part is reused as the buffer of later parts
+     * @param rest remaining content, at its end when head is shorter than a part
+     * @return Mono emitting the ETag of the stored object
+     */
+    protected abstract Mono<@NonNull String> putObject(String fullPath, String contentType, byte[] head, InputStream rest);
+
+    protected abstract Mono<@NonNull ResponseInputStream<GetObjectResponse>> getObject(GetObjectRequest request);
+
+    protected abstract Mono<@NonNull HeadObjectResponse> headObject(HeadObjectRequest request);
+
+    /**
+     * @return Mono emitting the ETag of the copy
+     */
+    protected abstract Mono<@NonNull String> copyObject(CopyObjectRequest request);
+
+    protected abstract Mono<@NonNull Void> deleteObject(DeleteObjectRequest request);
+
+    protected abstract Mono<@NonNull DeleteObjectsResponse> deleteObjects(DeleteObjectsRequest request);
+
+    protected abstract Mono<@NonNull ListObjectsV2Response> listObjects(ListObjectsV2Request request);
+
+    protected static AwsCredentialsProvider credentialsProvider(S3Config config) {
+        AwsBasicCredentials credentials = AwsBasicCredentials.create(
+                config.getAccessKey(),
+                config.getSecretKey()
+        );
+        return StaticCredentialsProvider.create(credentials);
+    }
+
+    /**
+     * R2-specific S3 settings shared by both transports
+     */
+    protected static S3Configuration serviceConfiguration() {
+        return S3Configuration.builder()
+                              .pathStyleAccessEnabled(true)
+                              // disable AWS4 chunked uploads
+                              .chunkedEncodingEnabled(false)
+                              .build();
+    }
+
+    /**
+     * Derives the ranged GetObject request for the client's Range/If-Range headers, or null when the whole object
+     * should be sent: no Range, a malformed or multi-range one (R2 serves a single range), or an If-Range that can
+     * never match (weak ETag or unparsable date).
+     */
+    private static GetObjectRequest toRangeRequest(GetObjectRequest request, HttpHeaders requestHeaders) {
+        if (singleRange(requestHeaders) == null) {
+            return null;
+        }
+
+        GetObjectRequest.Builder builder = request.toBuilder().range(requestHeaders.getFirst(HttpHeaders.RANGE));
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return builder.build();
+        }
+        if (ifRange.startsWith("\"")) {
+            return builder.ifMatch(ifRange).build();
+        }
+        if (ifRange.startsWith("W/")) {
+            return null;    // If-Range requires a strong comparison
+        }
+        try {
+            Instant lastModified = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return builder.ifUnmodifiedSince(lastModified).build();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the single byte range the client asked for, null when there is none or it is malformed or multiple
+     */
+    private static HttpRange singleRange(HttpHeaders requestHeaders) {
+        String range = requestHeaders.getFirst(HttpHeaders.RANGE);
+        if (range == null) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            return ranges.size() == 1 ? ranges.getFirst() : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates If-None-Match, or failing that If-Modified-Since, against the validators of a cached file
+     */
+    private static boolean isNotModified(HttpHeaders requestHeaders, String eTag, Instant lastModified) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            return eTag != null && ifNoneMatch.stream()
+                                              .anyMatch(tag -> tag.equals("*") || tag.replace("W/", "").equals(eTag.replace("W/", "")));
+        }
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return ifModifiedSince != -1 && lastModified != null && lastModified.toEpochMilli() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Forwards If-None-Match, or failing that If-Modified-Since, so R2 answers 304 for an unchanged object.
+     * ETags are compared weakly as RFC 9110 requires for these headers.
+     */
+    private static GetObjectRequest withValidators(GetObjectRequest request, HttpHeaders requestHeaders) {
+        String ifNoneMatch = requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return request.toBuilder().ifNoneMatch(ifNoneMatch.replace("W/", "")).build();
+        }
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        if (ifModifiedSince != -1) {
+            return request.toBuilder().ifModifiedSince(Instant.ofEpochMilli(ifModifiedSince)).build();
+        }
+        return request;
+    }
+
+    private static boolean hasStatus(Throwable e, HttpStatus status) {
+        return e instanceof S3Exception s3Exception && s3Exception.statusCode() == status.value();
+    }
+
+    private Mono<@NonNull ResponseEntity<@NonNull Resource>> rangeNotSatisfiable(String fullPath) {
+        HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
+                                                               .bucket(bucketName)
+                                                               .key(fullPath)
+                                                               .build();
+        return headObject(headObjectRequest)
+                .map(head -> ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                           .header(HttpHeaders.CONTENT_RANGE, "bytes */" + head.contentLength())
+                                           .<Resource>build());
+    }
+
+    private byte[] readHead(InputStream content, String fullPath) {
+        try {
+            return content.readNBytes(this.partSize);
+        } catch (IOException e) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Failed to read in file: " + fullPath, e);
+        }
+    }
+
+    /**
+     * Makes the key hold the content with the given hash without uploading it: done already when the index says
+     * the key holds it and the object's ETag is still the one recorded, otherwise copied server-side from another
+     * key whose ETag still matches. Entries whose object is gone or was overwritten are dropped on the way.
+     * <p>
+     * Content-Type is the only metadata an upload sets, so unchanged content stored with another type is retyped
+     * with a copy onto itself instead of being reported unchanged with the old headers.
+     *
+     * @param contentType type the key is served with, replacing the one of a copied source
+     * @return Mono emitting true when no upload is needed
+     */
+    private Mono<@NonNull Boolean> reuse(String fullPath, String sha256, String contentType) {
+        Mono<Boolean> unchanged = contentHashIndex.find(fullPath)
+                                                  .filter(stored -> sha256.equals(stored.getSha256()))
+                                                  .flatMap(stored -> currentHead(stored).flatMap(head -> {
+                                                      if (contentType.equals(head.contentType())) {
+                                                          log.info("Skipping upload of {}, content is unchanged", fullPath);
+                                                          return Mono.just(true);
+                                                      }
+                                                      log.info("Retyping {} from {} to {}, content is unchanged", fullPath, head.contentType(), contentType);
+                                                      return copy(fullPath, fullPath, sha256, contentType);
+                                                  }));
+
+        Mono<Boolean> copied = contentHashIndex.findCopy(sha256, fullPath)
+                                               .filterWhen(this::isCurrent)
+                                               .flatMap(source -> {
+                                                   log.info("Copying {} to {} instead of uploading identical content", source.getKey(), fullPath);
+                                                   return copy(source.getKey(), fullPath, sha256, contentType);
+                                               });
+
+        return unchanged.switchIfEmpty(copied)
+                        .defaultIfEmpty(false);
+    }
+
+    /**
+     * Copies an object server-side with the given Content-Type and records the copy's hash
+     *
+     * @return Mono emitting true once copied, false when the source is gone
+     */
+    private Mono<@NonNull Boolean> copy(String sourceKey, String fullPath, String sha256, String contentType) {
+        // Without REPLACE the copy would keep the source's Content-Type
+        CopyObjectRequest copyObjectRequest = CopyObjectRequest.builder()
+                                                               .sourceBucket(bucketName)
+                                                               .sourceKey(sourceKey)
+                                                               .destinationBucket(bucketName)
+                                                               .destinationKey(fullPath)
+                                                               .metadataDirective(MetadataDirective.REPLACE)
+                                                               .contentType(contentType)
+                                                               .build();
+        return copyObject(copyObjectRequest)
+                .flatMap(eTag -> contentHashIndex.record(fullPath, sha256, eTag))
+                .thenReturn(true)
+                .onErrorResume(NoSuchKeyException.class, e -> contentHashIndex.remove(sourceKey).thenReturn(false));
+    }
+
+    /**
+     * Checks that the object still carries the ETag recorded with its hash, dropping the entry otherwise
+     */
+    private Mono<@NonNull Boolean> isCurrent(StoredFile stored) {
+        return currentHead(stored).hasElement();
+    }
+
+    /**
+     * @return Mono emitting the object's metadata while it carries the ETag recorded with its hash, empty after
+     * dropping the entry otherwise
+     */
+    private Mono<@NonNull HeadObjectResponse> currentHead(StoredFile stored) {
+        HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
+                                                               .bucket(bucketName)
+                                                               .key(stored.getKey())
+                                                               .build();
+        return headObject(headObjectRequest)
+                .filter(head -> head.eTag() != null && head.eTag().equals(stored.getETag()))
+                .onErrorResume(NoSuchKeyException.class, e -> Mono.empty())
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.info("Dropping stale content hash of {}, the object was changed or removed", stored.getKey());
+                    return contentHashIndex.remove(stored.getKey()).then(Mono.<HeadObjectResponse>empty());
+                }));
+    }
+
+    private ResponseEntity<@NonNull Resource> notModified(FileUpload.Type destination, S3Exception e) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                                           .header(HttpHeaders.CACHE_CONTROL, cacheControlFor(destination));
+        SdkHttpResponse response = e.awsErrorDetails().sdkHttpResponse();
+        response.firstMatchingHeader(HttpHeaders.ETAG).ifPresent(eTag -> builder.header(HttpHeaders.ETAG, eTag));
+        response.firstMatchingHeader(HttpHeaders.LAST_MODIFIED).ifPresent(date -> builder.header(HttpHeaders.LAST_MODIFIED, date));
+        return builder.build();
+    }
+
+    private Mono<PublicFileCache.@NonNull CachedFile> downloadTo(GetObjectRequest request, Path file) {
+        return getObject(request)
+                .flatMap(s3Object -> Mono.fromCallable(() -> {
+                    try (s3Object) {
+                        Long length = s3Object.response().contentLength();
+                        if (length == null || !publicFileCache.fits(length)) {
+                            uncachedObjects.put(request.key(), Boolean.TRUE);
+                            s3Object.abort();
+                            throw new ObjectTooLargeException();
+                        }
+                        Files.copy(s3Object, file);
+                    }
+                    GetObjectResponse response = s3Object.response();
+                    return new PublicFileCache.CachedFile(file, response.eTag(), response.lastModified());
+                }).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private PresignedUrl presign(FileUpload.Type destination, String fullPath, String filename) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                                                            .bucket(bucketName)
+                                                            .key(fullPath)
+                                                            .responseContentDisposition("attachment; filename=" + filename)
+                                                            .responseCacheControl(cacheControlFor(destination))
+                                                            .build();
+        PresignedGetObjectRequest presigned = presigner.presignGetObject(b -> b.signatureDuration(presignExpiry)
+                                                                               .getObjectRequest(getObjectRequest));
+        log.info("Presigned download URL for {}/{} until {}", this.bucketName, fullPath, presigned.expiration());
+        return new PresignedUrl(URI.create(presigned.url().toString()), presigned.expiration());
+    }
+
+    private void invalidateCached(FileUpload.Type destination, String fullPath) {
+        metadataIndex.markChanged(fullPath);
+        if (destination == FileUpload.Type.PUBLIC) {
+            publicFileCache.invalidate(fullPath);
+            presignedUrls.invalidate(fullPath);
+        }
+    }
+
+    /**
+     * Answers from a cached file opened for this response, evaluating conditional and range headers against it.
+     * The body is a stream over the open file rather than the path, so evicting the entry cannot cut it short.
+     */
+    private ResponseEntity<@NonNull Resource> toResponse(FileUpload.Type destination, String filename,
+                                                         PublicFileCache.OpenedFile file, HttpHeaders requestHeaders) {
+        if (isNotModified(requestHeaders, file.eTag(), file.lastModified())) {
+            file.close();
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                                               .header(HttpHeaders.CACHE_CONTROL, cacheControlFor(destination));
+            if (file.eTag() != null) {
+                builder.eTag(file.eTag());
+            }
+            if (file.lastModified() != null) {
+                builder.lastModified(file.lastModified());
+            }
+            return builder.build();
+        }
+
+        long size = file.size();
+        HttpRange range = singleRange(requestHeaders);
+        ResponseEntity.BodyBuilder builder;
+        long start = 0;
+        long length = size;
+        if (range == null) {
+            builder = ResponseEntity.ok();
+        } else {
+            try {
+                start = range.getRangeStart(size);
+                length = range.getRangeEnd(size) - start + 1;
+            } catch (IllegalArgumentException e) {
+                file.close();
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                     .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                                     .build();
+            }
+            builder = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + length - 1) + "/" + size);
+        }
+        // A plain stream resource, so Spring MVC does not apply the range a second time
+        return withDownloadHeaders(builder.header(HttpHeaders.ACCEPT_RANGES, "bytes").contentLength(length),
+                                   destination, filename, file.eTag(), file.lastModified())
+                .body(new InputStreamResource(file.stream(start, length)));
+    }
+
+    /**
+     * Fetches the whole object once for all concurrent requests, when it is small enough to hold in memory.
+     * A larger object is abandoned after its headers and remembered, so its requests stream individually.
+     */
+    private Mono<@NonNull Optional<BufferedObject>> fetchBuffered(GetObjectRequest request) {
+        return getObject(request)
+                .flatMap(s3Object -> Mono.fromCallable(() -> {
+                    try (s3Object) {
+                        Long length = s3Object.response().contentLength();
+                        if (length == null || length > coalesceMaxBufferKb * 1024L) {
+                            largeObjects.put(request.key(), Boolean.TRUE);
+                            s3Object.abort();
+                            return Optional.<BufferedObject>empty();
+                        }
+                        return Optional.of(new BufferedObject(s3Object.response(), s3Object.readAllBytes()));
+                    }
+                }).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private ResponseEntity<@NonNull Resource> toResponse(FileUpload.Type destination, String filename, BufferedObject object) {
+        return toResponse(destination, filename, object.response(), new ByteArrayResource(object.content()));
+    }
+
+    private ResponseEntity<@NonNull Resource> toResponse(FileUpload.Type destination, String filename, ResponseInputStream<GetObjectResponse> s3Object) {
+        return toResponse(destination, filename, s3Object.response(), new InputStreamResource(s3Object));
+    }
+
+    private ResponseEntity<@NonNull Resource> toResponse(FileUpload.Type destination, String filename, GetObjectResponse response, Resource body) {
+        // Spring leaves stream bodies alone, so range headers are mapped from R2's response here
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.contentRange() == null ? HttpStatus.OK : HttpStatus.PARTIAL_CONTENT)
+                                                           .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (response.contentRange() != null) {
+            builder.header(HttpHeaders.CONTENT_RANGE, response.contentRange());
+        }
+        if (response.contentLength() != null) {
+            builder.contentLength(response.contentLength());
+        }
+        return withDownloadHeaders(builder, destination, filename, response.eTag(), response.lastModified())
+                .body(body);
+    }
+
+    private ResponseEntity.BodyBuilder withDownloadHeaders(ResponseEntity.BodyBuilder builder, FileUpload.Type destination,
+                                                           String filename, String eTag, Instant lastModified) {
+        String cacheControl = cacheControlFor(destination);
+        if (cacheControl.contains("no-store") || cacheControl.contains("no-cache")) {
+            // For HTTP/1.0 caches that ignore Cache-Control
+            builder.header("Pragma", "no-cache")
+                   .header("Expires", "0");
+        }
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        if (lastModified != null) {
+            builder.lastModified(lastModified);
+        }
+        return builder.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                      .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                      .contentType(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    private String cacheControlFor(FileUpload.Type destination) {
+        return switch (destination) {
+            case PUBLIC -> publicCacheControl;
+            case PRIVATE -> privateCacheControl;
+            case SHARE -> shareCacheControl;
+        };
+    }
+
+    private record BufferedObject(GetObjectResponse response, byte[] content) {
+    }
+
+    /**
+     * The object exceeds the disk cache, it is streamed from R2 instead
+     */
+    private static final class ObjectTooLargeException extends RuntimeException {
+        private ObjectTooLargeException() {
+            super(null, null, false, false);
+        }
+    }
+
+    protected String createPath(FileUpload.Type destination, String filename) {
+        String tmp = this.appConfig.isDev() ? "tmp/" : "";  // tmp directory for testing, gets auto cleaned every day
+        filename = Optional.ofNullable(filename)
+                           .orElseThrow(() -> new UnsupportedMediaTypeException("Filename is missing"));
+        return destination.toPrefix() + tmp + filename;
+    }
+}
@@ -0,0 +1,151 @@
+package com.chencraft.common.service.file;
+
+import com.chencraft.common.component.AppConfig;
+import com.chencraft.common.config.S3Config;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.multipart.MultipartConfiguration;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * FileService implementation backed by Cloudflare R2 (S3-compatible) using the non-blocking AWS SDK v2
+ * S3AsyncClient. Requests are dispatched on the SDK's Netty event loop, so reactive callers release their
+ * request thread while R2 responds.
+ * <p>
+ * Only the wait for the response headers is non-blocking on downloads: the body is handed to Spring MVC as an
+ * InputStream, which a container thread copies to the client with blocking reads and writes for as long as the
+ * transfer takes. Memory stays bounded since the body is pulled as the client reads it, not buffered.
+ * Uploads use the SDK's multipart support with cloudflare.r2.multipart.part-size-mb sized parts.
+ * <p>
+ * External IO: performs object storage operations; requires cloudflare.r2.bucket and S3Config.
+ * Active when cloudflare.r2.client=async.
+ * Thread-safety: S3AsyncClient is thread-safe; this component is a Spring singleton.
+ */
+@Lazy
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cloudflare.r2.client", havingValue = "async")
+public class CloudflareR2AsyncFileService extends AbstractR2FileService {
+    private final S3AsyncClient s3Client;
+    // Reads blocking upload streams (e.g. multipart temp files) without occupying the SDK event loop
+    private final ExecutorService uploadExecutor;
+
+    /**
+     * Constructs CloudflareR2AsyncFileService using provided S3Config and application configuration.
+     *
+     * @param config            S3 endpoint and credentials for R2
+     * @param appConfig         app configuration for environment-specific behavior
+     * @param publicFileCache   local disk tier for PUBLIC downloads
+     * @param downloadCoalescer shares concurrent fetches of the same object
+     * @param contentHashIndex  content hashes of stored objects for deduplication
+     */
+    @Autowired
+    public CloudflareR2AsyncFileService(S3Config config, AppConfig appConfig, PublicFileCache publicFileCache,
+                                        DownloadCoalescer downloadCoalescer, ContentHashIndex contentHashIndex) {
+        super(config, appConfig, publicFileCache, downloadCoalescer, contentHashIndex);
+        this.s3Client = buildS3AsyncClient(config);
+        this.uploadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        log.info("Using non-blocking S3AsyncClient for Cloudflare R2");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdown();
+        s3Client.close();
+    }
+
+    @Override
+    protected Mono<@NonNull Void> headBucket(HeadBucketRequest request) {
+        return Mono.fromFuture(() -> s3Client.headBucket(request)).then();
+    }
+
+    @Override
+    protected Mono<@NonNull String> putObject(String fullPath, String contentType, byte[] head, InputStream rest) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                                                            .bucket(this.bucketName)
+                                                            .key(fullPath)
+                                                            .contentType(contentType)
+                                                            .build();
+        if (head.length < this.partSize) {
+            // The head is not written to afterwards, so the SDK may send it without a copy
+            return Mono.fromFuture(() -> s3Client.putObject(putObjectRequest, AsyncRequestBody.fromBytesUnsafe(head)))
+                       .map(PutObjectResponse::eTag);
+        }
+        // Length is unknown up front, the multipart client buffers one part at a time; the head is only referenced
+        // by the stream, which drops it once the client has copied it into its first part
+        InputStream content = new SequenceInputStream(new ByteArrayInputStream(head), rest);
+        AsyncRequestBody body = AsyncRequestBody.fromInputStream(b -> b.inputStream(content)
+                                                                       .executor(uploadExecutor));
+        return Mono.fromFuture(() -> s3Client.putObject(putObjectRequest, body))
+                   .map(PutObjectResponse::eTag);
+    }
+
+    @Override
+    protected Mono<@NonNull ResponseInputStream<GetObjectResponse>> getObject(GetObjectRequest request) {
+        // Completes once R2 sends the response headers; the body is pulled lazily, blocking whichever thread reads it
+        return Mono.fromFuture(() -> s3Client.getObject(request, AsyncResponseTransformer.toBlockingInputStream()));
+    }
+
+    @Override
+    protected Mono<@NonNull HeadObjectResponse> headObject(HeadObjectRequest request) {
+        return Mono.fromFuture(() -> s3Client.headObject(request));
+    }
+
+    @Override
+    protected Mono<@NonNull String> copyObject(CopyObjectRequest request) {
+        return Mono.fromFuture(() -> s3Client.copyObject(request))
+                   .map(response -> response.copyObjectResult().eTag());
+    }
+
+    @Override
+    protected Mono<@NonNull Void> deleteObject(DeleteObjectRequest request) {
+        return Mono.fromFuture(() -> s3Client.deleteObject(request)).then();
+    }
+
+    @Override
+    protected Mono<@NonNull DeleteObjectsResponse> deleteObjects(DeleteObjectsRequest request) {
+        return Mono.fromFuture(() -> s3Client.deleteObjects(request));
+    }
+
+    @Override
+    protected Mono<@NonNull ListObjectsV2Response> listObjects(ListObjectsV2Request request) {
+        return Mono.fromFuture(() -> s3Client.listObjectsV2(request));
+    }
+
+    /**
+     * Builds and configures the async S3 client with R2-specific settings and multipart uploads enabled
+     */
+    private S3AsyncClient buildS3AsyncClient(S3Config config) {
+        MultipartConfiguration multipartConfiguration = MultipartConfiguration.builder()
+                                                                              .thresholdInBytes((long) this.partSize)
+                                                                              .minimumPartSizeInBytes((long) this.partSize)
+                                                                              .build();
+
+        return S3AsyncClient.builder()
+                            .endpointOverride(URI.create(config.getEndpoint()))
+                            .credentialsProvider(credentialsProvider(config))
+                            .region(Region.of("auto"))
+                            .serviceConfiguration(serviceConfiguration())
+                            .multipartEnabled(true)
+                            .multipartConfiguration(multipartConfiguration)
+                            .build();
+    }
+}
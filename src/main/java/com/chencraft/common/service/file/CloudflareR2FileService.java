@@ -1,173 +1,198 @@
 package com.chencraft.common.service.file;
 
-import com.chencraft.api.NotFoundException;
+import com.chencraft.api.ApiException;
 import com.chencraft.common.component.AppConfig;
 import com.chencraft.common.config.S3Config;
-import com.chencraft.model.FileUpload;
-import jakarta.annotation.Nonnull;
-import jakarta.annotation.PostConstruct;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.UnsupportedMediaTypeException;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.model.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * FileService implementation backed by Cloudflare R2 (S3-compatible) using AWS SDK v2.
+ * FileService implementation backed by Cloudflare R2 (S3-compatible) using the blocking AWS SDK v2 S3Client.
+ * Every SDK call is offloaded to the bounded elastic scheduler so reactive callers never block a request thread.
  * External IO: performs object storage operations; requires cloudflare.r2.bucket and S3Config.
+ * Active when cloudflare.r2.client=sync (default).
  * Thread-safety: S3Client is thread-safe; this component is a Spring singleton.
  */
 @Lazy
 @Slf4j
 @Component
-public class CloudflareR2FileService implements FileService {
+@ConditionalOnProperty(name = "cloudflare.r2.client", havingValue = "sync", matchIfMissing = true)
+public class CloudflareR2FileService extends AbstractR2FileService {
     private final S3Client s3Client;
-    private final AppConfig appConfig;
-
-    @Value("${cloudflare.r2.bucket}")
-    private String bucketName;
 
     /**
      * Constructs CloudflareR2FileService using provided S3Config and application configuration.
      *
-     * @param config    S3 endpoint and credentials for R2
-     * @param appConfig app configuration for environment-specific behavior
+     * @param config            S3 endpoint and credentials for R2
+     * @param appConfig         app configuration for environment-specific behavior
+     * @param publicFileCache   local disk tier for PUBLIC downloads
+     * @param downloadCoalescer shares concurrent fetches of the same object
+     * @param contentHashIndex  content hashes of stored objects for deduplication
      */
     @Autowired
-    public CloudflareR2FileService(S3Config config, AppConfig appConfig) {
+    public CloudflareR2FileService(S3Config config, AppConfig appConfig, PublicFileCache publicFileCache,
+                                   DownloadCoalescer downloadCoalescer, ContentHashIndex contentHashIndex) {
+        super(config, appConfig, publicFileCache, downloadCoalescer, contentHashIndex);
         this.s3Client = buildS3Client(config);
-        this.appConfig = appConfig;
     }
 
-    /**
-     * Verifies connectivity to the configured bucket on startup; fails fast on misconfiguration.
-     */
-    @PostConstruct
-    public void init() {
-        try {
-            // The API token does not permit for listBucket or createBucket, the bucket should already exist.
-            s3Client.headBucket(HeadBucketRequest.builder().bucket(bucketName).build());
-            log.info("Successfully connected to Cloudflare R2 Storage bucket: {}", bucketName);
-        } catch (S3Exception e) {
-            if (e.statusCode() == 404) {
-                throw new RuntimeException("Bucket does not exist: " + bucketName, e);
-            } else if (e.statusCode() == 403) {
-                throw new RuntimeException("Bucket exists but access denied: " + bucketName, e);
-            } else {
-                throw new RuntimeException("Error checking bucket: " + bucketName, e);
-            }
-        }
+    @Override
+    protected Mono<@NonNull Void> headBucket(HeadBucketRequest request) {
+        return Mono.<Void>fromRunnable(() -> s3Client.headBucket(request))
+                   .subscribeOn(Schedulers.boundedElastic());
     }
 
     /**
-     * Stores a file into Cloudflare R2 under the given destination prefix.
-     *
-     * @param destination enum indicating PUBLIC or PRIVATE location
-     * @param filename    object key name; must be non-empty
-     * @param contentType MIME type, required
-     * @param content     file bytes
-     * @throws org.springframework.web.reactive.function.UnsupportedMediaTypeException when contentType/filename missing
+     * Content that fits into a single part is sent with one PutObject; anything larger goes through an
+     * S3 multipart upload with fixed-size parts, so at most one part is held in memory regardless of the file size.
      */
     @Override
-    public void uploadFile(FileUpload.Type destination, String filename, String contentType, byte[] content) {
-        contentType = Optional.ofNullable(contentType)
-                              .orElseThrow(() -> new UnsupportedMediaTypeException("Content-Type is unknown"));
-
-        // Build the S3 key (prefix and filename)
-        String fullPath = createPath(destination, filename);
-        log.info("Uploading file to S3: {}/{}", this.bucketName, fullPath);
-
-        // Upload file
-        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                                                            .bucket(this.bucketName)
-                                                            .key(fullPath)
-                                                            .contentType(contentType)
-                                                            .build();
-
-        s3Client.putObject(putObjectRequest, RequestBody.fromBytes(content));
+    protected Mono<@NonNull String> putObject(String fullPath, String contentType, byte[] head, InputStream rest) {
+        return Mono.fromCallable(() -> upload(fullPath, contentType, head, rest))
+                   .subscribeOn(Schedulers.boundedElastic());
     }
 
     @Override
-    public ResponseEntity<@NonNull Resource> downloadFile(FileUpload.Type destination, @Nonnull String filename) {
-        String fullPath = createPath(destination, filename);
-        log.info("Downloading file from S3: {}/{}", this.bucketName, fullPath);
-
-        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                                                            .bucket(bucketName)
-                                                            .key(fullPath)
-                                                            .build();
-        try {
-            ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(getObjectRequest);
-            return ResponseEntity.ok()
-                                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
-                                 .header(HttpHeaders.CACHE_CONTROL, "no-store, no-cache, must-revalidate, max-age=0")
-                                 .header("Pragma", "no-cache")
-                                 .header("Expires", "0")
-                                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                                 .body(new InputStreamResource(s3Object));
-        } catch (NoSuchKeyException e) {
-            throw new NotFoundException(fullPath);
-        }
+    protected Mono<@NonNull ResponseInputStream<GetObjectResponse>> getObject(GetObjectRequest request) {
+        return Mono.fromCallable(() -> s3Client.getObject(request))
+                   .subscribeOn(Schedulers.boundedElastic());
     }
 
     @Override
-    public void deleteFile(FileUpload.Type destination, @Nonnull String filename) {
-        String fullPath = createPath(destination, filename);
-        log.info("Deleting file from S3: {}/{}", this.bucketName, fullPath);
+    protected Mono<@NonNull HeadObjectResponse> headObject(HeadObjectRequest request) {
+        return Mono.fromCallable(() -> s3Client.headObject(request))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    protected Mono<@NonNull String> copyObject(CopyObjectRequest request) {
+        return Mono.fromCallable(() -> s3Client.copyObject(request).copyObjectResult().eTag())
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    protected Mono<@NonNull Void> deleteObject(DeleteObjectRequest request) {
+        return Mono.<Void>fromRunnable(() -> s3Client.deleteObject(request))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    protected Mono<@NonNull DeleteObjectsResponse> deleteObjects(DeleteObjectsRequest request) {
+        return Mono.fromCallable(() -> s3Client.deleteObjects(request))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
 
-        DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
-                                                                     .bucket(bucketName)
+    @Override
+    protected Mono<@NonNull ListObjectsV2Response> listObjects(ListObjectsV2Request request) {
+        return Mono.fromCallable(() -> s3Client.listObjectsV2(request))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private String upload(String fullPath, String contentType, byte[] head, InputStream rest) {
+        if (head.length < this.partSize) {
+            // Everything fits into one part, no need for the multipart handshake
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                                                                .bucket(this.bucketName)
+                                                                .key(fullPath)
+                                                                .contentType(contentType)
+                                                                .build();
+
+            return s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(new ByteArrayInputStream(head), head.length))
+                           .eTag();
+        }
+
+        return multipartUpload(fullPath, contentType, rest, head);
+    }
+
+    private String multipartUpload(String fullPath, String contentType, InputStream content, byte[] part) {
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                                                                                 .bucket(this.bucketName)
+                                                                                 .key(fullPath)
+                                                                                 .contentType(contentType)
+                                                                                 .build();
+        String uploadId = s3Client.createMultipartUpload(createRequest).uploadId();
+
+        try {
+            List<CompletedPart> completedParts = new ArrayList<>();
+            int length = part.length;   // The first part has already been read by the caller
+            int partNumber = 1;
+            while (length > 0) {
+                UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
+                                                                       .bucket(this.bucketName)
+                                                                       .key(fullPath)
+                                                                       .uploadId(uploadId)
+                                                                       .partNumber(partNumber)
+                                                                       .contentLength((long) length)
+                                                                       .build();
+                String eTag = s3Client.uploadPart(uploadPartRequest,
+                                                  RequestBody.fromInputStream(new ByteArrayInputStream(part, 0, length), length))
+                                      .eTag();
+                completedParts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+                log.debug("Uploaded part {} ({} bytes) of {}", partNumber, length, fullPath);
+
+                partNumber++;
+                length = readPart(content, part, fullPath);
+            }
+
+            CompleteMultipartUploadRequest completeRequest = CompleteMultipartUploadRequest.builder()
+                                                                                           .bucket(this.bucketName)
+                                                                                           .key(fullPath)
+                                                                                           .uploadId(uploadId)
+                                                                                           .multipartUpload(CompletedMultipartUpload.builder()
+                                                                                                                                    .parts(completedParts)
+                                                                                                                                    .build())
+                                                                                           .build();
+            String eTag = s3Client.completeMultipartUpload(completeRequest).eTag();
+            log.info("Completed multipart upload of {} in {} parts", fullPath, completedParts.size());
+            return eTag;
+        } catch (RuntimeException e) {
+            // Do not leave orphaned parts behind, R2 bills for them until the upload is aborted
+            log.warn("Aborting multipart upload of {}", fullPath, e);
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                                                                     .bucket(this.bucketName)
                                                                      .key(fullPath)
-                                                                     .build();
+                                                                     .uploadId(uploadId)
+                                                                     .build());
+            throw e;
+        }
+    }
 
-        s3Client.deleteObject(deleteObjectRequest);
+    private static int readPart(InputStream content, byte[] part, String fullPath) {
+        try {
+            return content.readNBytes(part, 0, part.length);
+        } catch (IOException e) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Failed to read in file: " + fullPath, e);
+        }
     }
 
     /**
      * Builds and configures the S3 client with R2-specific settings
      */
     private static S3Client buildS3Client(S3Config config) {
-        AwsBasicCredentials credentials = AwsBasicCredentials.create(
-                config.getAccessKey(),
-                config.getSecretKey()
-        );
-
-        S3Configuration serviceConfiguration = S3Configuration.builder()
-                                                              .pathStyleAccessEnabled(true)
-                                                              // disable AWS4 chunked uploads
-                                                              .chunkedEncodingEnabled(false)
-                                                              .build();
-
         return S3Client.builder()
                        .endpointOverride(URI.create(config.getEndpoint()))
-                       .credentialsProvider(StaticCredentialsProvider.create(credentials))
+                       .credentialsProvider(credentialsProvider(config))
                        .region(Region.of("auto"))
-                       .serviceConfiguration(serviceConfiguration)
+                       .serviceConfiguration(serviceConfiguration())
                        .build();
     }
-
-    private String createPath(FileUpload.Type destination, String filename) {
-        String tmp = this.appConfig.isDev() ? "tmp/" : "";  // tmp directory for testing, gets auto cleaned every day
-        filename = Optional.ofNullable(filename)
-                           .orElseThrow(() -> new UnsupportedMediaTypeException("Filename is missing"));
-        return destination.toPrefix() + tmp + filename;
-    }
 }
@@ -0,0 +1,62 @@
+package com.chencraft.common.service.file;
+
+import com.chencraft.common.mongo.StoredFileRepository;
+import com.chencraft.model.mongo.StoredFile;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.HexFormat;
+
+/**
+ * Index of the SHA-256 of every object uploaded through the R2 FileService (Mongo collection stored_files), so
+ * identical content is recognised before it is transferred again. Entries may go stale when objects are changed
+ * outside this service; callers compare the recorded ETag with the bucket's before relying on one.
+ * Thread-safety: stateless apart from the repository; Spring singleton.
+ */
+@Component
+public class ContentHashIndex {
+    private final StoredFileRepository repository;
+    private final Clock clock;
+
+    @Autowired
+    public ContentHashIndex(StoredFileRepository repository, Clock clock) {
+        this.repository = repository;
+        this.clock = clock;
+    }
+
+    public Mono<@NonNull StoredFile> find(String key) {
+        return repository.findById(key);
+    }
+
+    /**
+     * Finds another object with the given content, a candidate source for a server-side copy
+     */
+    public Mono<@NonNull StoredFile> findCopy(String sha256, String key) {
+        return repository.findFirstBySha256AndKeyNot(sha256, key);
+    }
+
+    public Mono<@NonNull Void> record(String key, String sha256, String eTag) {
+        return repository.save(new StoredFile(key, sha256, eTag, clock.instant())).then();
+    }
+
+    public Mono<@NonNull Void> remove(String key) {
+        return repository.deleteById(key);
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    public static String toHex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
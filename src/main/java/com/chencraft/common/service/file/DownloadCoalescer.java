@@ -0,0 +1,89 @@
+package com.chencraft.common.service.file;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight layer for object downloads: concurrent requests for the same key share one upstream fetch instead
+ * of each calling R2. The shared fetch runs detached from its callers, so a client disconnecting does not cancel it
+ * for the others; it is forgotten once complete, so later requests fetch again.
+ * <p>
+ * Metrics: file.download.coalescing counts requests by result, leader (started an upstream fetch), waiter (joined
+ * one in flight) and hit (served by the PublicFileCache without waiting).
+ * Thread-safety: safe for concurrent use; Spring singleton.
+ */
+@Component
+public class DownloadCoalescer {
+    private final ConcurrentMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter waiters;
+    private final Counter hits;
+
+    @Autowired
+    public DownloadCoalescer(MeterRegistry meterRegistry) {
+        this.leaders = counter(meterRegistry, "leader");
+        this.waiters = counter(meterRegistry, "waiter");
+        this.hits = counter(meterRegistry, "hit");
+    }
+
+    /**
+     * Runs the fetch unless one for the same key is already in flight, in which case its result is shared.
+     * Callers must use a distinct key per result type.
+     *
+     * @param key   identifies the upstream object
+     * @param fetch produces the upstream call; subscribed at most once per flight
+     * @return Mono emitting the shared result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<@NonNull T> execute(String key, Supplier<Mono<T>> fetch) {
+        return Mono.defer(() -> {
+            CompletableFuture<T> flight = new CompletableFuture<>();
+            CompletableFuture<T> existing = (CompletableFuture<T>) inFlight.putIfAbsent(key, flight);
+            if (existing != null) {
+                waiters.increment();
+                return Mono.fromFuture(existing, true);
+            }
+
+            leaders.increment();
+            // Deferred so that a supplier throwing synchronously fails the flight instead of leaving it in the map
+            Mono.defer(fetch).toFuture().whenComplete((result, error) -> {
+                // Leave the map first, a request arriving after completion must not see a stale result
+                inFlight.remove(key, flight);
+                if (error != null) {
+                    flight.completeExceptionally(error);
+                } else {
+                    flight.complete(result);
+                }
+            });
+            return Mono.fromFuture(flight, true);
+        });
+    }
+
+    void recordLeader() {
+        leaders.increment();
+    }
+
+    void recordWaiter() {
+        waiters.increment();
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("file.download.coalescing")
+                      .description("Download requests by whether they fetched upstream, joined a fetch in flight or hit the cache")
+                      .tag("result", result)
+                      .register(meterRegistry);
+    }
+}
@@ -1,15 +1,153 @@
 package com.chencraft.common.service.file;
 
+import com.chencraft.api.ApiException;
+import com.chencraft.model.FileMetadata;
+import com.chencraft.model.FileOperationResult;
 import com.chencraft.model.FileUpload;
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
 import lombok.NonNull;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
 
 public interface FileService {
-    void uploadFile(FileUpload.Type destination, String filename, String contentType, byte[] content);
+    /**
+     * Stores a file by streaming its content; implementations must not buffer more than a bounded
+     * chunk of the stream in memory. The stream is read to the end but not closed.
+     *
+     * @param destination storage namespace
+     * @param filename    object key name; must be non-empty
+     * @param contentType MIME type, required
+     * @param content     file content
+     */
+    void uploadFile(FileUpload.Type destination, String filename, String contentType, InputStream content);
+
+    default void uploadFile(FileUpload.Type destination, String filename, String contentType, byte[] content) {
+        uploadFile(destination, filename, contentType, new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Stores a file from a reactive byte stream, e.g. a WebClient response body. Blocks the calling thread
+     * until the upload completes, so it must not be called from an event-loop thread.
+     */
+    default void uploadFile(FileUpload.Type destination, String filename, String contentType, Flux<@NonNull DataBuffer> content) {
+        try (InputStream inputStream = DataBufferUtils.subscriberInputStream(content, 1)) {
+            uploadFile(destination, filename, contentType, inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to stream upload for " + filename, e);
+        }
+    }
+
+    /**
+     * Makes already stored content with the given SHA-256 available under filename without transferring it again,
+     * e.g. for a re-published release asset whose digest is known up front. The default never finds stored content.
+     *
+     * @param sha256 hex-encoded SHA-256 of the content
+     * @return Mono emitting true when the file now holds that content, false when it has to be uploaded
+     */
+    default Mono<@NonNull Boolean> reuseStoredContent(FileUpload.Type destination, String filename, String sha256) {
+        return Mono.just(false);
+    }
 
     ResponseEntity<@NonNull Resource> downloadFile(FileUpload.Type destination, @Nonnull String filename);
 
+    /**
+     * Downloads a file honouring the client's request headers (Range/If-Range). The default ignores them, which is
+     * fine for seekable resources since Spring MVC answers Range requests on those itself; implementations streaming
+     * from remote storage should override to fetch only the requested bytes and answer with 206.
+     *
+     * @param requestHeaders headers of the incoming request, never null
+     */
+    default ResponseEntity<@NonNull Resource> downloadFile(FileUpload.Type destination, @Nonnull String filename, HttpHeaders requestHeaders) {
+        return downloadFile(destination, filename);
+    }
+
+    /**
+     * Signs a short-lived URL the client can download the file from directly, bypassing this server.
+     * The default returns empty, meaning downloads are always served through downloadFile.
+     *
+     * @return the signed URL, or empty when redirects are disabled or not supported for the destination
+     */
+    default Optional<PresignedUrl> presignDownload(FileUpload.Type destination, @Nonnull String filename) {
+        return Optional.empty();
+    }
+
     void deleteFile(FileUpload.Type destination, @Nonnull String filename);
+
+    /*
+     * Reactive variants for callers that must not hold their thread while storage responds. The defaults offload the
+     * blocking methods to the bounded elastic scheduler; non-blocking implementations override them natively.
+     */
+
+    default Mono<@NonNull Void> uploadFileAsync(FileUpload.Type destination, String filename, String contentType, InputStream content) {
+        return Mono.<Void>fromRunnable(() -> uploadFile(destination, filename, contentType, content))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    default Mono<@NonNull ResponseEntity<@NonNull Resource>> downloadFileAsync(FileUpload.Type destination, @Nonnull String filename) {
+        return Mono.fromCallable(() -> downloadFile(destination, filename))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    default Mono<@NonNull ResponseEntity<@NonNull Resource>> downloadFileAsync(FileUpload.Type destination, @Nonnull String filename, HttpHeaders requestHeaders) {
+        return Mono.fromCallable(() -> downloadFile(destination, filename, requestHeaders))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Answers a HEAD request: the download headers (Content-Length, ETag, Last-Modified) without the content.
+     * The default performs a download and leaves discarding the body to Spring MVC, so implementations streaming
+     * from remote storage should override it.
+     *
+     * @throws com.chencraft.api.NotFoundException when the file does not exist
+     */
+    default Mono<@NonNull ResponseEntity<@NonNull Resource>> headFileAsync(FileUpload.Type destination, @Nonnull String filename, HttpHeaders requestHeaders) {
+        return downloadFileAsync(destination, filename, requestHeaders);
+    }
+
+    /**
+     * Lists the files of a namespace in lexicographical order, fetching further pages as the subscriber requests them.
+     *
+     * @param startAfter only files sorting after this filename are listed, may be null
+     * @return Flux emitting the metadata of each file
+     */
+    default Flux<@NonNull FileMetadata> listFiles(FileUpload.Type destination, @Nullable String startAfter) {
+        return Flux.error(new ApiException(HttpStatus.NOT_IMPLEMENTED, "Listing files is not supported by this storage"));
+    }
+
+    default Mono<@NonNull Void> deleteFileAsync(FileUpload.Type destination, @Nonnull String filename) {
+        return Mono.<Void>fromRunnable(() -> deleteFile(destination, filename))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Deletes several files of one namespace, reporting the outcome per file instead of failing the whole batch.
+     * The default deletes them one by one; object stores with a multi-object delete should override it.
+     *
+     * @return Flux emitting one result per filename, in request order
+     */
+    default Flux<@NonNull FileOperationResult> deleteFilesAsync(FileUpload.Type destination, List<String> filenames) {
+        return Flux.fromIterable(filenames)
+                   .concatMap(filename -> deleteFileAsync(destination, filename)
+                           .thenReturn(FileOperationResult.success(filename))
+                           .onErrorResume(e -> Mono.just(FileOperationResult.failure(filename, statusOf(e), e.getMessage()))));
+    }
+
+    private static HttpStatus statusOf(Throwable e) {
+        return e instanceof ApiException apiException ? apiException.getCode() : HttpStatus.INTERNAL_SERVER_ERROR;
+    }
 }
@@ -4,96 +4,116 @@ import com.chencraft.api.FileApi;
 import com.chencraft.api.NotFoundException;
 import com.chencraft.common.component.Cleanable;
 import com.chencraft.common.mongo.FileTokenRepository;
+import com.chencraft.common.service.executor.TaskExecutor;
 import com.chencraft.model.FileUpload;
 import com.chencraft.model.mongo.FileToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.Parameter;
 import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.RequestMapping;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.lang.reflect.Method;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Comparator;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static com.chencraft.utils.PublisherUtils.fireAndForget;
 
+@Slf4j
 @Service
 public class FileTokenService implements Cleanable {
+    private static final Duration SOFT_DELETE_AFTER = Duration.ofDays(60);
+    // Also the lifetime of the TTL index created by MongoExpiryIndexes
+    public static final Duration HARD_DELETE_AFTER = Duration.ofDays(365);
+
     private final FileTokenRepository tokenRepo;
     private final FileService fileService;
     private final String hostname;
     private final Clock clock;
+    private final TaskExecutor taskExecutor;
+    private final Counter softDeleted;
+    private final Counter hardDeleted;
 
     @Autowired
     public FileTokenService(FileTokenRepository tokenRepo,
                             FileService fileService,
                             @Value("${app.swagger.server.url}") String hostname,
-                            Clock clock) {
+                            Clock clock,
+                            TaskExecutor taskExecutor,
+                            MeterRegistry meterRegistry) {
         this.tokenRepo = tokenRepo;
         this.fileService = fileService;
         this.hostname = hostname;
         this.clock = clock;
+        this.taskExecutor = taskExecutor;
+        this.softDeleted = Cleanable.cleanupCounter(meterRegistry, "files", "soft_delete");
+        this.hardDeleted = Cleanable.cleanupCounter(meterRegistry, "files", "hard_delete");
     }
 
     /**
-     * If a file with the same filename is uploaded, it will be overwritten.
+     * Issues a new one-time token for the file, superseding all earlier tokens of the same filename, since a
+     * re-upload overwrites the file they pointed to. Supersede and insert are one round trip each.
+     *
+     * @return Mono emitting the share URL of the new token
      */
-    public String generateAccessToken(String filename) {
+    public Mono<@NonNull String> generateAccessToken(String filename) {
         FileToken token = new FileToken(filename);
-        // Delete existing tokens for the same filename, then persist the new token
-        Flux<@NonNull FileToken> deleteExisting = tokenRepo.findByFilenameAndIsDeletedFalse(filename)
-                                                           .flatMap(rec -> {
-                                                               rec.setDeleted(true);
-                                                               return tokenRepo.save(rec);
-                                                           });
-
-        Mono<@NonNull Void> saveNew = tokenRepo.save(token).then();
-
-        // Execute asynchronously; the caller receives the URL immediately
-        deleteExisting.then(saveNew).block();
-        return this.createAccessUrl(token.getToken());
+        return tokenRepo.findAndSoftDeleteByFilenameAndIsDeletedFalse(filename)
+                        .then(tokenRepo.insert(token))
+                        .map(saved -> this.createAccessUrl(saved.getToken()));
     }
 
-    public ResponseEntity<@NonNull Resource> accessFile(String token) {
-        // Validate token (must exist, not deleted, and not yet used)
-        FileToken rec = tokenRepo.findByTokenAndIsDeletedFalse(token)
-                                 .filter(t -> t.getUsedAt() == null)
-                                 .sort(Comparator.reverseOrder())
-                                 .blockFirst();
-
-        if (rec == null) {
-            throw new NotFoundException(token);
-        }
-
-        // Attempt to download the file from PUBLIC storage
-        ResponseEntity<@NonNull Resource> response = fileService.downloadFile(FileUpload.Type.SHARE, rec.getFilename());
-
-        // If download succeeded, mark the token as used and delete the file asynchronously
-        if (response.getStatusCode().is2xxSuccessful()) {
-            rec.setUsedAt(clock.instant());
-            fireAndForget(tokenRepo.save(rec)
-                                   .then(Mono.fromRunnable(() -> fileService.deleteFile(FileUpload.Type.SHARE, rec.getFilename()))));
-        }
-
-        return response;
+    /**
+     * Consumes the token and serves its file. The token is marked used in the same atomic Mongo operation that
+     * looks it up, so concurrent requests cannot both download a one-time file; the consumption is reverted when
+     * the download fails.
+     *
+     * @param token token value from the share URL
+     * @return Mono emitting the file, or a redirect to a presigned URL when enabled
+     * @throws NotFoundException when the token does not exist, was revoked or was already used
+     */
+    public Mono<@NonNull ResponseEntity<@NonNull Resource>> accessFile(String token) {
+        // Mongo stores milliseconds, truncate so that release matches the stored value
+        Instant usedAt = clock.instant().truncatedTo(ChronoUnit.MILLIS);
+        return tokenRepo.consume(token, usedAt)
+                        .switchIfEmpty(Mono.error(() -> new NotFoundException(token)))
+                        .flatMap(rec -> {
+                            String filename = rec.getFilename();
+
+                            // Redirect to storage when enabled; the file is only deleted once the signed URL has expired
+                            Optional<PresignedUrl> presigned = fileService.presignDownload(FileUpload.Type.SHARE, filename);
+                            if (presigned.isPresent()) {
+                                long delay = Math.max(0, Duration.between(clock.instant(), presigned.get().expiration()).toMillis());
+                                taskExecutor.schedule(() -> fileService.deleteFile(FileUpload.Type.SHARE, filename), delay, TimeUnit.MILLISECONDS);
+                                return Mono.just(presigned.get().toRedirect());
+                            }
+
+                            // If download succeeded, delete the file asynchronously, otherwise the token stays usable
+                            return fileService.downloadFileAsync(FileUpload.Type.SHARE, filename)
+                                              .flatMap(response -> {
+                                                  if (response.getStatusCode().is2xxSuccessful()) {
+                                                      fireAndForget(fileService.deleteFileAsync(FileUpload.Type.SHARE, filename));
+                                                      return Mono.just(response);
+                                                  }
+                                                  return tokenRepo.release(token, usedAt).thenReturn(response);
+                                              })
+                                              .onErrorResume(e -> tokenRepo.release(token, usedAt).then(Mono.error(e)));
+                        });
     }
 
     public void revokeAccessToken(String filename) {
-        Flux<@NonNull FileToken> toBeRevoked = tokenRepo.findByFilenameAndIsDeletedFalse(filename)
-                                                        .flatMap(rec -> {
-                                                            rec.setDeleted(true);
-                                                            return tokenRepo.save(rec);
-                                                        });
-
-        fireAndForget(toBeRevoked);
+        fireAndForget(tokenRepo.findAndSoftDeleteByFilenameAndIsDeletedFalse(filename));
     }
 
     private String createAccessUrl(String uuid) {
@@ -109,34 +129,24 @@ public class FileTokenService implements Cleanable {
         }
     }
 
+    /**
+     * Soft-deletes tokens 2 months past their used date and purges them after 1 year, each step a single
+     * updateMany/deleteMany on the deleted_used_idx index.
+     */
     @Override
     public void cleanUp() {
-        // Mark certificates 2 months past the used date as deleted and delete them after 1 year
         Instant now = clock.instant();
-        Instant softDeleteThreshold = now.minus(Duration.ofDays(60));
-        Instant hardDeleteThreshold = now.minus(Duration.ofDays(365));
-
-        // Soft-delete: mark expired and not yet deleted
-        Flux<@NonNull FileToken> softDeleteFlow = tokenRepo.findAll()
-                                                           .filter(rec -> rec.getUsedAt() != null
-                                                                   && rec.getUsedAt()
-                                                                         .isBefore(softDeleteThreshold)
-                                                                   && !rec.isDeleted())
-                                                           .flatMap(rec -> {
-                                                               rec.setDeleted(true);
-                                                               return tokenRepo.save(rec);
-                                                           });
-
-        // Hard-delete: purge records long past the used date and already marked as deleted
-        Mono<@NonNull Void> hardDeleteFlow = tokenRepo.findAll()
-                                                      .filter(rec -> rec.isDeleted()
-                                                              && rec.getUsedAt() != null
-                                                              && rec.getUsedAt()
-                                                                    .isBefore(hardDeleteThreshold))
-                                                      .flatMap(rec -> tokenRepo.deleteById(rec.getId()))
-                                                      .then();
+        Instant softDeleteThreshold = now.minus(SOFT_DELETE_AFTER);
+        Instant hardDeleteThreshold = now.minus(HARD_DELETE_AFTER);
+
+        Mono<@NonNull Long> softDeleteFlow = tokenRepo.findAndSoftDeleteByIsDeletedFalseAndUsedAtBefore(softDeleteThreshold)
+                                                      .doOnNext(softDeleted::increment);
+        Mono<@NonNull Long> hardDeleteFlow = tokenRepo.deleteByIsDeletedTrueAndUsedAtBefore(hardDeleteThreshold)
+                                                      .doOnNext(hardDeleted::increment);
 
         // Execute asynchronously (fire-and-forget); order soft-delete then hard-delete
-        fireAndForget(softDeleteFlow.then(hardDeleteFlow));
+        fireAndForget(softDeleteFlow.zipWhen(soft -> hardDeleteFlow)
+                                    .doOnNext(counts -> log.info("Cleaned up file tokens: {} soft-deleted, {} purged",
+                                                                 counts.getT1(), counts.getT2())));
     }
 }
@@ -0,0 +1,71 @@
+package com.chencraft.common.service.file;
+
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory snapshot of the bucket listing (key, size, ETag, last modified), so HEAD requests for listed objects
+ * are answered without an R2 round trip. The snapshot is replaced as a whole on every refresh.
+ * <p>
+ * Only positive answers are given: a key absent from the listing may have been added since by another instance
+ * or directly in the bucket, so it is unknown rather than missing. Writes made through this service mark their key
+ * as changed; a changed key is unknown until a listing started after the write replaces the snapshot, so stale
+ * metadata of a file this service has just replaced or deleted is not served.
+ * Thread-safety: safe for concurrent use.
+ */
+final class ObjectMetadataIndex {
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), null);
+    // Keys written through this service, with the time the write completed
+    private final ConcurrentMap<String, Instant> changedKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @return the object's metadata, or empty when it is missing or unknown
+     */
+    Optional<S3Object> find(String key) {
+        Snapshot current = snapshot;
+        if (current.listedAt() == null || isChangedSince(key, current.listedAt())) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(current.objects().get(key));
+    }
+
+    void markChanged(String key) {
+        changedKeys.put(key, Instant.now());
+    }
+
+    /**
+     * Installs a complete listing.
+     *
+     * @param objects  every object in the bucket by key
+     * @param listedAt instant the listing was started at; writes completed before it are contained in it
+     */
+    void replace(Map<String, S3Object> objects, Instant listedAt) {
+        snapshot = new Snapshot(Map.copyOf(objects), listedAt);
+        changedKeys.values().removeIf(changedAt -> changedAt.isBefore(listedAt));
+    }
+
+    /**
+     * Forgets the listing, e.g. when the bucket is too large to index; every key becomes unknown.
+     */
+    void clear() {
+        snapshot = new Snapshot(Map.of(), null);
+        changedKeys.clear();
+    }
+
+    int size() {
+        return snapshot.objects().size();
+    }
+
+    private boolean isChangedSince(String key, Instant listedAt) {
+        Instant changedAt = changedKeys.get(key);
+        return changedAt != null && !changedAt.isBefore(listedAt);
+    }
+
+    private record Snapshot(Map<String, S3Object> objects, Instant listedAt) {
+    }
+}
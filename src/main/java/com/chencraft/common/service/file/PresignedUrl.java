@@ -0,0 +1,29 @@
+package com.chencraft.common.service.file;
+
+import lombok.NonNull;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.time.Instant;
+
+/**
+ * Time-limited URL granting direct read access to a stored file, so clients download from object storage
+ * instead of through this server.
+ *
+ * @param url        signed URL of the object
+ * @param expiration instant after which storage rejects the URL
+ */
+public record PresignedUrl(URI url, Instant expiration) {
+    /**
+     * Redirects the client to the signed URL; the redirect itself must not outlive the signature, so it is not cached.
+     */
+    public ResponseEntity<@NonNull Resource> toRedirect() {
+        return ResponseEntity.status(HttpStatus.TEMPORARY_REDIRECT)
+                             .location(url)
+                             .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                             .build();
+    }
+}
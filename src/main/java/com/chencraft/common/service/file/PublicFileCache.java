@@ -0,0 +1,251 @@
+package com.chencraft.common.service.file;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PostConstruct;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Read-through disk cache for PUBLIC objects, so popular files (e.g. release assets) are served from local disk
+ * instead of being pulled from R2 on every request. Entries are size-bounded with LRU-style eviction (Caffeine's
+ * W-TinyLFU weighted by file size) and expire after a fixed time as a guard against out-of-band bucket changes.
+ * <p>
+ * Each entry is stored under a random file name, so a replaced or evicted object never overwrites a file that may
+ * still be streamed. Removed files are deleted from disk right away, so responses must read them through
+ * {@link #open}: the handle is taken before the response is returned and keeps reading the unlinked file.
+ * Objects larger than the whole cache are never admitted, see {@link #fits}.
+ * Concurrent misses for the same key share a single download; lookups are counted through DownloadCoalescer.
+ * <p>
+ * External IO: writes to cloudflare.r2.cache.dir, which is emptied on startup.
+ * Configuration: cloudflare.r2.cache.max-size-mb, cloudflare.r2.cache.expire-after.
+ * Thread-safety: safe for concurrent use; Spring singleton.
+ */
+@Lazy
+@Slf4j
+@Component
+public class PublicFileCache {
+    private final Path directory;
+    private final long maxWeightKb;
+    private final AsyncCache<String, CachedFile> cache;
+    private final DownloadCoalescer downloadCoalescer;
+
+    /**
+     * @param directory         local directory holding cached files
+     * @param maxSizeMb         upper bound of the total size of cached files
+     * @param expireAfter       lifetime of an entry after it was downloaded
+     * @param downloadCoalescer records hits, shared and fresh downloads
+     */
+    @Autowired
+    public PublicFileCache(@Value("${cloudflare.r2.cache.dir:${java.io.tmpdir}/api-server-r2-cache}") Path directory,
+                           @Value("${cloudflare.r2.cache.max-size-mb:1024}") long maxSizeMb,
+                           @Value("${cloudflare.r2.cache.expire-after:PT1H}") Duration expireAfter,
+                           DownloadCoalescer downloadCoalescer) {
+        this.directory = directory;
+        this.downloadCoalescer = downloadCoalescer;
+        // Weighed in KiB so that files beyond 2 GiB still fit into an int weight
+        this.maxWeightKb = maxSizeMb * 1024;
+        this.cache = Caffeine.newBuilder()
+                             .maximumWeight(maxWeightKb)
+                             .weigher((String key, CachedFile file) -> weightOf(file.path()))
+                             .expireAfterWrite(expireAfter)
+                             .removalListener((String key, CachedFile file, RemovalCause cause) -> deleteQuietly(file.path()))
+                             .buildAsync();
+    }
+
+    /**
+     * Starts from an empty directory, files left over from a previous run are not tracked by the cache
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(PublicFileCache::deleteQuietly);
+            }
+            log.info("Caching public files under {}", directory.toAbsolutePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prepare file cache directory " + directory, e);
+        }
+    }
+
+    /**
+     * Returns the cached copy of the object, downloading it first on a miss.
+     *
+     * @param key      object key in the bucket
+     * @param download writes the object to the given path and describes it; a failed download is not cached
+     * @return Mono emitting the local copy of the object
+     */
+    public Mono<@NonNull CachedFile> get(String key, Function<Path, Mono<CachedFile>> download) {
+        return Mono.defer(() -> {
+            AtomicBoolean loading = new AtomicBoolean();
+            CompletableFuture<CachedFile> future = cache.get(key, (k, executor) -> {
+                loading.set(true);
+                Path file = directory.resolve(UUID.randomUUID().toString());
+                log.info("Caching public file {} at {}", k, file);
+                return download.apply(file)
+                               .doOnError(e -> deleteQuietly(file))
+                               .toFuture();
+            });
+
+            if (loading.get()) {
+                downloadCoalescer.recordLeader();
+            } else if (future.isDone()) {
+                downloadCoalescer.recordHit();
+            } else {
+                downloadCoalescer.recordWaiter();
+            }
+            // Cancelling one subscriber must not cancel the download other requests are waiting on
+            return Mono.fromFuture(future, true);
+        });
+    }
+
+    /**
+     * Returns an open handle on the cached copy of the object, downloading it first on a miss. The handle stays
+     * readable when the entry is evicted or invalidated meanwhile.
+     *
+     * @param key      object key in the bucket
+     * @param download writes the object to the given path and describes it; a failed download is not cached
+     * @return Mono emitting the opened copy, or failing with NoSuchFileException when the entry was removed before
+     * it could be opened
+     */
+    public Mono<@NonNull OpenedFile> open(String key, Function<Path, Mono<CachedFile>> download) {
+        return get(key, download).flatMap(file -> Mono.fromCallable(() -> OpenedFile.open(file)));
+    }
+
+    /**
+     * @return whether an object of this size can be cached at all; a larger one would be evicted as soon as it loaded
+     */
+    public boolean fits(long size) {
+        return weightOf(size) <= maxWeightKb;
+    }
+
+    /**
+     * Drops the cached copy of an object after it changed or was deleted in the bucket
+     */
+    public void invalidate(String key) {
+        cache.synchronous().invalidate(key);
+    }
+
+    /**
+     * Local copy of an object with the validators R2 reported for it
+     *
+     * @param path         file holding the object content
+     * @param eTag         entity tag of the object, may be null
+     * @param lastModified last modification time of the object, may be null
+     */
+    public record CachedFile(Path path, String eTag, Instant lastModified) {
+    }
+
+    /**
+     * Cached copy opened for one response; closing the stream of the response closes the file
+     *
+     * @param size size of the file in bytes
+     */
+    public record OpenedFile(FileChannel channel, long size, String eTag, Instant lastModified) implements Closeable {
+        private static OpenedFile open(CachedFile file) throws IOException {
+            FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ);
+            return new OpenedFile(channel, channel.size(), file.eTag(), file.lastModified());
+        }
+
+        /**
+         * @return stream of length bytes starting at position
+         */
+        public InputStream stream(long position, long length) {
+            return new RangeInputStream(channel, position, length);
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close cached file", e);
+            }
+        }
+    }
+
+    /**
+     * Reads a byte range of a file with positional reads, so it is independent of the channel position
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        private RangeInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, remaining)), position);
+            if (read < 0) {
+                remaining = 0;
+                return -1;
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static int weightOf(Path file) {
+        try {
+            return weightOf(Files.size(file));
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
+    private static int weightOf(long size) {
+        return (int) Math.min(Integer.MAX_VALUE, size / 1024 + 1);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached file {}", file, e);
+        }
+    }
+}
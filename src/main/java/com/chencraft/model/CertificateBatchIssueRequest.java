@@ -0,0 +1,32 @@
+package com.chencraft.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Request body for issuing certificates to a batch of devices in a single call.
+ */
+@Data
+@NoArgsConstructor
+public class CertificateBatchIssueRequest {
+    /**
+     * Devices to issue certificates to, used as certificate CNs. Duplicates are issued once.
+     */
+    @NotEmpty
+    @Size(max = 1000)
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED, description = "Device names, used for certificate CNs")
+    private List<String> deviceIds;
+
+    /**
+     * Key type of every issued certificate.
+     */
+    @NotNull
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED, description = "Key type of the issued certificates", defaultValue = "RSA_4096")
+    private KeyProfile keyProfile = KeyProfile.RSA_4096;
+}
@@ -0,0 +1,56 @@
+package com.chencraft.model;
+
+import com.chencraft.model.mongo.CertificateRecord;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+import java.time.Instant;
+
+/**
+ * Outcome of one device within a batch issuance, so a partially failed batch can be retried per device.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CertificateIssueResult {
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED, description = "Device the result refers to")
+    private String deviceId;
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED, description = "HTTP status code of the individual issuance", defaultValue = "200")
+    private int status;
+
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED, description = "Reason the issuance failed")
+    private String message;
+
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED, description = "PEM certificate chain, leaf first")
+    private String certificate;
+
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED, description = "PEM-styled private key")
+    private String privateKey;
+
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED, description = "Timestamp when the certificate expires")
+    private Instant validUntil;
+
+    @JsonIgnore
+    private CertificateRecord record;
+
+    public static CertificateIssueResult success(String deviceId, CertificatePEM certificatePem) {
+        return new CertificateIssueResult(deviceId, HttpStatus.OK.value(), null, certificatePem.getCertificate(),
+                                          certificatePem.getPrivateKey(), certificatePem.getValidUntil(), certificatePem.getRecord());
+    }
+
+    public static CertificateIssueResult failure(String deviceId, HttpStatus status, String message) {
+        return new CertificateIssueResult(deviceId, status.value(), message, null, null, null, null);
+    }
+
+    @JsonIgnore
+    public boolean isSucceeded() {
+        return HttpStatus.valueOf(status).is2xxSuccessful();
+    }
+}
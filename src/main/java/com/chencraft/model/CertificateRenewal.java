@@ -21,6 +21,9 @@ public class CertificateRenewal {
     @JsonProperty("pemFormat")
     private boolean pemFormat = false;
 
+    @JsonProperty("keyProfile")
+    private KeyProfile keyProfile = KeyProfile.RSA_4096;
+
     /**
      * Get deviceId
      *
@@ -45,4 +48,14 @@ public class CertificateRenewal {
     public boolean isPemFormat() {
         return pemFormat;
     }
+
+    /**
+     * Get keyProfile
+     *
+     * @return keyProfile
+     */
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED, description = "Key type of the renewed certificate", defaultValue = "RSA_4096")
+    public KeyProfile getKeyProfile() {
+        return keyProfile == null ? KeyProfile.RSA_4096 : keyProfile;
+    }
 }
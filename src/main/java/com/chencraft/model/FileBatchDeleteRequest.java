@@ -0,0 +1,30 @@
+package com.chencraft.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Request body for deleting several files from one namespace in a single call.
+ */
+@Data
+@NoArgsConstructor
+public class FileBatchDeleteRequest {
+    /**
+     * Namespace the files are stored under.
+     */
+    @NotNull
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED, description = "Namespace for the files", example = "PRIVATE")
+    private FileUpload.Type namespace;
+
+    /**
+     * Names of the files to delete.
+     */
+    @NotEmpty
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED, description = "Filenames to be deleted")
+    private List<String> filenames;
+}
@@ -0,0 +1,40 @@
+package com.chencraft.model;
+
+import com.chencraft.configuration.NotUndefined;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+@Setter
+@ToString
+@Validated
+@NotUndefined
+@EqualsAndHashCode
+public class FileBatchUpload {
+    @JsonProperty("files")
+    private List<MultipartFile> files = null;
+
+    @JsonProperty("destination")
+    private FileUpload.Type destination = null;
+
+    @ArraySchema(schema = @Schema(description = "File to upload"), minItems = 1)
+    @NotEmpty
+    public List<MultipartFile> getFiles() {
+        return files;
+    }
+
+    @Schema(example = "PUBLIC", requiredMode = Schema.RequiredMode.REQUIRED, description = "File visibility setting for all files")
+    @NotNull
+    public FileUpload.Type getDestination() {
+        return destination;
+    }
+}
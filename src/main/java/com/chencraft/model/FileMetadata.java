@@ -0,0 +1,32 @@
+package com.chencraft.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Describes a stored file without its content, one line of the file listing.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FileMetadata {
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED, description = "Filename within the namespace", example = "file.pdf")
+    private String filename;
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED, description = "Size of the file in bytes", example = "1024")
+    private long size;
+
+    @JsonProperty("eTag")
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED, description = "Entity tag of the stored content")
+    private String eTag;
+
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED, description = "Last modification time of the file")
+    private Instant lastModified;
+}
@@ -0,0 +1,43 @@
+package com.chencraft.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Outcome of one file within a batch upload or delete, so a partially failed batch can be retried per file.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FileOperationResult {
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED, description = "Filename the result refers to")
+    private String filename;
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED, description = "HTTP status code of the individual operation", defaultValue = "200")
+    private int status;
+
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED, description = "Reason the operation failed")
+    private String message;
+
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED, description = "One-time access URL of a SHARE upload")
+    private String url;
+
+    public static FileOperationResult success(String filename) {
+        return new FileOperationResult(filename, HttpStatus.OK.value(), null, null);
+    }
+
+    public static FileOperationResult failure(String filename, HttpStatus status, String message) {
+        return new FileOperationResult(filename, status.value(), message, null);
+    }
+
+    @JsonIgnore
+    public boolean isSucceeded() {
+        return HttpStatus.valueOf(status).is2xxSuccessful();
+    }
+}
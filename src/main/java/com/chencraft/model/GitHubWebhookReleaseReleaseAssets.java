@@ -25,6 +25,9 @@ public class GitHubWebhookReleaseReleaseAssets {
     @JsonProperty("name")
     private String name = null;
 
+    @JsonProperty("digest")
+    private String digest = null;
+
     /**
      * URL for fetching asset
      *
@@ -47,4 +50,14 @@ public class GitHubWebhookReleaseReleaseAssets {
     public String getName() {
         return name;
     }
+
+    /**
+     * Asset's content digest, formatted as algorithm:hex
+     *
+     * @return digest
+     **/
+    @Schema(description = "Asset's content digest, formatted as algorithm:hex", defaultValue = "sha256:e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855")
+    public String getDigest() {
+        return digest;
+    }
 }
@@ -0,0 +1,39 @@
+package com.chencraft.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Key type of an issued client certificate. EC keys generate orders of magnitude faster than RSA-4096 and keep the
+ * certificate (and the X-Client-Cert header forwarded by nginx) small; RSA_4096 stays the default for older devices.
+ */
+public enum KeyProfile {
+    RSA_4096,
+    EC_P256,
+    ED25519;
+
+    @Override
+    @JsonValue
+    public String toString() {
+        return this.name();
+    }
+
+    @JsonCreator
+    public static KeyProfile fromValue(String text) {
+        for (KeyProfile b : KeyProfile.values()) {
+            if (b.name().equals(text)) {
+                return b;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return lower-case name, e.g. rsa_4096, used for metric tags and thread names
+     */
+    @JsonIgnore
+    public String toTag() {
+        return this.name().toLowerCase();
+    }
+}
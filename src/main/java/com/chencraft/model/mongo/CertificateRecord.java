@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -13,7 +14,11 @@ import java.security.cert.X509Certificate;
 import java.time.Instant;
 
 @Document("certificates")
-@CompoundIndex(name = "fingerprint_deleted_idx", def = "{'fingerprintSha256': 1, 'isDeleted': 1}", unique = true)
+@CompoundIndexes({
+        @CompoundIndex(name = "fingerprint_deleted_idx", def = "{'fingerprintSha256': 1, 'isDeleted': 1}", unique = true),
+        @CompoundIndex(name = "deleted_expires_idx", def = "{'isDeleted': 1, 'expiresAt': 1}"),
+        @CompoundIndex(name = "machine_deleted_idx", def = "{'machineId': 1, 'isDeleted': 1}")
+})
 @Data
 @NoArgsConstructor
 public class CertificateRecord {
@@ -27,6 +32,12 @@ public class CertificateRecord {
     @Indexed(unique = true)
     private String fingerprintSha256;
 
+    /**
+     * Serial number of the certificate (hex-encoded), as listed in the CRL.
+     * Absent on records issued before revocation lists were published.
+     */
+    private String serialNumber;
+
     /**
      * Identifier of the machine this cert was issued to.
      */
@@ -54,6 +65,7 @@ public class CertificateRecord {
 
     public CertificateRecord(X509Certificate certificate, String machineId) {
         this.fingerprintSha256 = CertificateUtils.computeSha256Fingerprint(certificate);
+        this.serialNumber = certificate.getSerialNumber().toString(16);
         this.machineId = machineId;
         this.issuedAt = certificate.getNotBefore().toInstant();
         this.expiresAt = certificate.getNotAfter().toInstant();
@@ -5,6 +5,8 @@ import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -12,6 +14,10 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Document("files")
+@CompoundIndexes({
+        @CompoundIndex(name = "token_deleted_used_idx", def = "{'token': 1, 'isDeleted': 1, 'usedAt': 1}"),
+        @CompoundIndex(name = "deleted_used_idx", def = "{'isDeleted': 1, 'usedAt': 1}")
+})
 @Data
 @NoArgsConstructor
 public class FileToken implements Comparable<FileToken> {
@@ -0,0 +1,38 @@
+package com.chencraft.model.mongo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Content hash of an object stored in R2, used to detect re-uploads of identical content.
+ */
+@Document("stored_files")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredFile {
+    /**
+     * Full object key in the bucket, including the storage prefix.
+     */
+    @Id
+    private String key;
+
+    /**
+     * SHA-256 of the object content (hex-encoded).
+     */
+    @Indexed
+    private String sha256;
+
+    /**
+     * ETag R2 returned for the write that stored this content; a different current ETag means the object changed.
+     */
+    private String eTag;
+
+    private Instant storedAt;
+}
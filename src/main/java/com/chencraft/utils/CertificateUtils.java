@@ -1,18 +1,36 @@
 package com.chencraft.utils;
 
+import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.HexFormat;
 
 public class CertificateUtils {
+    private static final String PEM_BEGIN = "-----BEGIN CERTIFICATE-----";
+    private static final String PEM_END = "-----END CERTIFICATE-----";
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
     public static String computeSha256Fingerprint(X509Certificate cert) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
@@ -25,28 +43,112 @@ public class CertificateUtils {
     }
 
     public static String computeSha256Fingerprint(String rawCert) {
-        X509Certificate cert = parseCertificate(rawCert);
-        return computeSha256Fingerprint(cert);
+        byte[] der = decodePem(rawCert);
+        parseCertificate(der);
+        return computeSha256Fingerprint(der);
+    }
+
+    /**
+     * @param der DER encoding of a certificate
+     * @return upper-case hex SHA-256 of the encoding, the same as {@link #computeSha256Fingerprint(X509Certificate)}
+     */
+    public static String computeSha256Fingerprint(byte[] der) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(der)).toUpperCase();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     public static String extractCNSubject(String rawCert) {
-        X509Certificate cert = parseCertificate(rawCert);
-        return new X500Name(cert.getSubjectX500Principal().getName())
-                .getRDNs(BCStyle.CN)[0].getFirst().getValue().toString();
+        return extractCNSubject(parseCertificate(decodePem(rawCert)));
     }
 
-    private static X509Certificate parseCertificate(String rawCert) {
-        try {
-            rawCert = rawCert.replace("-----BEGIN CERTIFICATE-----", "")
-                             .replace("-----END CERTIFICATE-----", "")
-                             .replaceAll("\\s+", "");
-            byte[] der = java.util.Base64.getDecoder().decode(rawCert);
+    /**
+     * @return value of the first CN of the subject, or null if the subject has none
+     */
+    public static String extractCNSubject(X509Certificate cert) {
+        RDN[] commonNames = new X500Name(cert.getSubjectX500Principal().getName()).getRDNs(BCStyle.CN);
+        return commonNames.length == 0 ? null : commonNames[0].getFirst().getValue().toString();
+    }
+
+    /**
+     * Decodes the base64 body of a PEM certificate straight into DER, skipping the BEGIN/END lines and any
+     * whitespace without building intermediate strings. Content without the PEM lines is decoded as a whole.
+     *
+     * @throws IllegalArgumentException if the body is not valid base64
+     */
+    public static byte[] decodePem(String pem) {
+        int start = pem.indexOf(PEM_BEGIN);
+        start = start < 0 ? 0 : start + PEM_BEGIN.length();
+        int end = pem.indexOf(PEM_END, start);
+        end = end < 0 ? pem.length() : end;
 
+        // First pass sizes the output exactly, second pass decodes into it
+        int symbols = 0;
+        int padding = 0;
+        for (int i = start; i < end; i++) {
+            char c = pem.charAt(i);
+            if (c == '=') {
+                padding++;
+            } else if (!Character.isWhitespace(c)) {
+                if (padding > 0 || c >= 128 || BASE64_VALUES[c] < 0) {
+                    throw new IllegalArgumentException("Illegal base64 character " + (int) c + " in PEM body");
+                }
+                symbols++;
+            }
+        }
+        if (padding > 2 || symbols % 4 == 1 || (padding > 0 && (symbols + padding) % 4 != 0)) {
+            throw new IllegalArgumentException("Truncated base64 in PEM body");
+        }
+
+        byte[] der = new byte[symbols * 3 / 4];
+        int bits = 0;
+        int bitCount = 0;
+        int written = 0;
+        for (int i = start; i < end && written < der.length; i++) {
+            char c = pem.charAt(i);
+            if (c == '=' || Character.isWhitespace(c)) {
+                continue;
+            }
+            bits = (bits << 6) | BASE64_VALUES[c];
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                der[written++] = (byte) (bits >> bitCount);
+            }
+        }
+        return der;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the DER is not an X.509 certificate
+     */
+    public static X509Certificate parseCertificate(byte[] der) {
+        try {
             CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            return (X509Certificate) cf.generateCertificate(
-                    new ByteArrayInputStream(der));
+            return (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(der));
         } catch (CertificateException e) {
-            throw new RuntimeException(e);
+            throw new IllegalArgumentException("Malformed certificate", e);
+        }
+    }
+
+    /**
+     * Parses a PEM-encoded PKCS#10 certificate signing request. The request's signature is not verified here.
+     *
+     * @param pemCsr CSR between -----BEGIN CERTIFICATE REQUEST----- and -----END CERTIFICATE REQUEST-----
+     * @throws IllegalArgumentException if the content is not a PEM-encoded CSR
+     */
+    public static PKCS10CertificationRequest parseCertificationRequest(String pemCsr) {
+        try (PEMParser parser = new PEMParser(new StringReader(pemCsr))) {
+            Object parsed = parser.readObject();
+            if (parsed instanceof PKCS10CertificationRequest csr) {
+                return csr;
+            }
+            throw new IllegalArgumentException("Content is not a PEM-encoded certificate signing request");
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed certificate signing request", e);
         }
     }
+
 }
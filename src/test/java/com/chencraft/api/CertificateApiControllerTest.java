@@ -2,6 +2,7 @@ package com.chencraft.api;
 
 import com.chencraft.common.component.AuthorizationTokenStorage;
 import com.chencraft.common.config.MongoConfig;
+import com.chencraft.common.service.cert.CertificateServiceTest;
 import com.chencraft.model.CertificatePEM;
 import com.chencraft.model.OnboardingToken;
 import org.junit.jupiter.api.Assertions;
@@ -11,11 +12,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.webtestclient.autoconfigure.AutoConfigureWebTestClient;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.security.KeyPairGenerator;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.Objects;
 
 import static org.mockito.Mockito.when;
 
@@ -87,6 +91,50 @@ public class CertificateApiControllerTest {
                      });
     }
 
+    @Test
+    public void testSuccessWithKeyProfile() {
+        webTestClient.get()
+                     .uri("/certificate/issue?token=" + token.getKey() + "&deviceId=" + "test" + "&keyProfile=" + "EC_P256")
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBody(CertificatePEM.class)
+                     .consumeWith(response -> Assertions.assertNotNull(response.getResponseBody()));
+    }
+
+    @Test
+    public void testUnknownKeyProfile() {
+        webTestClient.get()
+                     .uri("/certificate/issue?token=" + token.getKey() + "&deviceId=" + "test" + "&keyProfile=" + "DSA_1024")
+                     .exchange()
+                     .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void testSignCsr() throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("Ed25519");
+        String csr = CertificateServiceTest.toPemCsr(keyGen.generateKeyPair(), "Ed25519");
+
+        webTestClient.post()
+                     .uri("/certificate/sign?token=" + token.getKey() + "&deviceId=" + "test")
+                     .contentType(MediaType.TEXT_PLAIN)
+                     .bodyValue(csr)
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectHeader().contentType("application/x-pem-file")
+                     .expectBody(String.class)
+                     .consumeWith(response -> Assertions.assertTrue(Objects.requireNonNull(response.getResponseBody()).contains("BEGIN CERTIFICATE")));
+    }
+
+    @Test
+    public void testSignCsrIncorrectAuthToken() {
+        webTestClient.post()
+                     .uri("/certificate/sign?token=" + "MALICIOUS_TOKEN" + "&deviceId=" + "test")
+                     .contentType(MediaType.TEXT_PLAIN)
+                     .bodyValue("not a csr")
+                     .exchange()
+                     .expectStatus().isUnauthorized();
+    }
+
     @Test
     public void testRepeatedToken() {
         testSuccess();
@@ -0,0 +1,123 @@
+package com.chencraft.api;
+
+import com.chencraft.api.secure.SecureFileApiController;
+import com.chencraft.common.component.AlertMessenger;
+import com.chencraft.common.service.file.ContentHashIndex;
+import com.chencraft.common.service.file.DownloadCoalescer;
+import com.chencraft.common.service.file.FileTokenService;
+import com.chencraft.common.service.file.InMemoryR2FileService;
+import com.chencraft.common.service.file.PublicFileCache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Download redirects to presigned R2 URLs, against an in-memory bucket
+ */
+public class FileApiControllerPresignTest {
+    private static final String CONTENT = "presigned content";
+
+    @TempDir
+    private Path cacheDirectory;
+
+    private InMemoryR2FileService fileService;
+    private MockMvc mockMvc;
+    private MockMvc secureMockMvc;
+
+    @BeforeEach
+    public void setup() {
+        DownloadCoalescer downloadCoalescer = new DownloadCoalescer(new SimpleMeterRegistry());
+        PublicFileCache publicFileCache = new PublicFileCache(cacheDirectory, 16, Duration.ofHours(1), downloadCoalescer);
+        publicFileCache.init();
+        fileService = new InMemoryR2FileService(publicFileCache, downloadCoalescer, mock(ContentHashIndex.class));
+        fileService.store("public/file.txt", CONTENT, Instant.now());
+        fileService.store("private/file.txt", CONTENT, Instant.now());
+
+        FileTokenService fileTokenService = mock(FileTokenService.class);
+        // Both controllers map /file/{filename}, the /secure prefix is added by the application's path configuration
+        mockMvc = MockMvcBuilders.standaloneSetup(new FileApiController(fileService, fileTokenService)).build();
+        secureMockMvc = MockMvcBuilders.standaloneSetup(new SecureFileApiController(fileService, fileTokenService,
+                                                                                     mock(AlertMessenger.class), 4))
+                                       .build();
+    }
+
+    // Test: 307 Temporary Redirect - PUBLIC download is sent to storage
+    @Test
+    public void testPublicFileRedirectsWhenPresignEnabled() throws Exception {
+        fileService.enablePresign(Duration.ofMinutes(15));
+
+        String location = redirect(mockMvc);
+
+        Assertions.assertTrue(location.contains("file.txt"), location);
+        Assertions.assertTrue(location.contains("X-Amz-Signature="), location);
+        Assertions.assertTrue(location.contains("X-Amz-Expires=900"), location);
+        Assertions.assertEquals(0, fileService.getObjectCount());
+    }
+
+    // Test: 200 OK - PUBLIC download is proxied while presigning is disabled
+    @Test
+    public void testPublicFileProxiedWhenPresignDisabled() throws Exception {
+        MvcResult result = mockMvc.perform(get("/file/file.txt"))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+               .andExpect(status().isOk())
+               .andExpect(content().string(CONTENT));
+    }
+
+    // Test: 200 OK - PRIVATE downloads stay behind mTLS even with presigning enabled
+    @Test
+    public void testPrivateFileNeverRedirects() throws Exception {
+        fileService.enablePresign(Duration.ofMinutes(15));
+
+        MvcResult result = secureMockMvc.perform(get("/file/file.txt"))
+                                        .andExpect(request().asyncStarted())
+                                        .andReturn();
+        secureMockMvc.perform(asyncDispatch(result))
+                     .andExpect(status().isOk())
+                     .andExpect(header().doesNotExist(HttpHeaders.LOCATION))
+                     .andExpect(content().string(CONTENT));
+        Assertions.assertEquals(1, fileService.getObjectCount());
+    }
+
+    // Test: the signed PUBLIC URL is reused until half of its lifetime has passed
+    @Test
+    public void testPublicUrlReusedForHalfItsLifetime() throws Exception {
+        fileService.enablePresign(Duration.ofSeconds(2));
+
+        String first = redirect(mockMvc);
+        Assertions.assertEquals(first, redirect(mockMvc));
+
+        // Signatures carry a timestamp with second precision, so the next URL is guaranteed to differ
+        Thread.sleep(1500);
+        Assertions.assertNotEquals(first, redirect(mockMvc));
+    }
+
+    private static String redirect(MockMvc mockMvc) throws Exception {
+        MvcResult result = mockMvc.perform(get("/file/file.txt"))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        return mockMvc.perform(asyncDispatch(result))
+                      .andExpect(status().isTemporaryRedirect())
+                      .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-store"))
+                      .andReturn()
+                      .getResponse()
+                      .getHeader(HttpHeaders.LOCATION);
+    }
+}
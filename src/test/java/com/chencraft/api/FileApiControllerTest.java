@@ -10,13 +10,16 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
 @Import(MongoConfig.class)
@@ -45,20 +48,59 @@ public class FileApiControllerTest {
     // Test: 200 OK - Valid Credentials
     @Test
     public void testGetFile() throws Exception {
-        mockMvc.perform(get("/file/FileApiControllerTest.txt"))
+        MvcResult result = mockMvc.perform(get("/file/FileApiControllerTest.txt"))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                .andExpect(status().isOk());
     }
 
+    // Test: 206 Partial Content - Range request resumes a download
+    @Test
+    public void testGetFileRange() throws Exception {
+        MvcResult result = mockMvc.perform(get("/file/FileApiControllerTest.txt").header(HttpHeaders.RANGE, "bytes=0-3"))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+               .andExpect(status().isPartialContent())
+               .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-3/27"))
+               .andExpect(content().string("Test"));
+    }
+
     @Test
     public void testGetShareFile() throws Exception {
-        String url = fileTokenService.generateAccessToken("ShareTest.txt");
-        mockMvc.perform(get(url))
+        FileServiceTestHelper.createFile(SHARED_FILE_PATH);
+        String url = fileTokenService.generateAccessToken("ShareTest.txt").block();
+        MvcResult result = mockMvc.perform(get(url))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                .andExpect(status().isOk());
     }
 
+    @Test
+    public void testGetShareFile_UsedOnce() throws Exception {
+        FileServiceTestHelper.createFile(SHARED_FILE_PATH);
+        String url = fileTokenService.generateAccessToken("ShareTest.txt").block();
+        MvcResult first = mockMvc.perform(get(url))
+                                 .andExpect(request().asyncStarted())
+                                 .andReturn();
+        mockMvc.perform(asyncDispatch(first))
+               .andExpect(status().isOk());
+
+        MvcResult second = mockMvc.perform(get(url))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(second))
+               .andExpect(status().isNotFound());
+    }
+
     @Test
     public void testGetShareFile_MissingFile() throws Exception {
-        mockMvc.perform(get("/file/share?token=1234"))
+        MvcResult result = mockMvc.perform(get("/file/share?token=1234"))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                .andExpect(status().isNotFound());
     }
 
@@ -19,12 +19,16 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -32,6 +36,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 public class SecureFileApiControllerTest {
     private static final String TEST_FILE_PATH = "src/test/resources/private/SecurefileApiControllerTest.txt";
     private static final String SHARED_FILE_PATH = "src/test/resources/share/ShareTest.txt";
+    private static final String SECOND_FILE_PATH = "src/test/resources/private/SecurefileApiControllerTest2.txt";
 
     private MockMvc mockMvc;
 
@@ -49,8 +54,11 @@ public class SecureFileApiControllerTest {
     // Test: 200 OK - Valid Credentials
     @Test
     public void testGetFileWithValidCredentials() throws Exception {
-        mockMvc.perform(get("/secure/file/SecurefileApiControllerTest.txt")
-                                .header("X-Client-Verify", "SUCCESS"))
+        MvcResult result = mockMvc.perform(get("/secure/file/SecurefileApiControllerTest.txt")
+                                                   .header("X-Client-Verify", "SUCCESS"))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                .andExpect(status().isOk());
     }
 
@@ -80,10 +88,14 @@ public class SecureFileApiControllerTest {
                                                    .header("X-Client-Verify", "SUCCESS")
                                                    .contentType(MediaType.MULTIPART_FORM_DATA)
                                                    .accept(MediaType.APPLICATION_JSON))
-                                  .andExpect(status().isOk())
+                                  .andExpect(request().asyncStarted())
                                   .andReturn();
 
-        String responseBody = result.getResponse().getContentAsString();
+        String responseBody = mockMvc.perform(asyncDispatch(result))
+                                     .andExpect(status().isOk())
+                                     .andReturn()
+                                     .getResponse()
+                                     .getContentAsString();
         ObjectMapper mapper = new ObjectMapper();
         String url = mapper.readTree(responseBody).path("url").asText();
 
@@ -111,17 +123,89 @@ public class SecureFileApiControllerTest {
 
     @Test
     public void testDeleteFile() throws Exception {
-        mockMvc.perform(delete("/secure/file/SecurefileApiControllerTest.txt")
-                                .queryParam("namespace", "PRIVATE")
-                                .header("X-Client-Verify", "SUCCESS"))
+        MvcResult result = mockMvc.perform(delete("/secure/file/SecurefileApiControllerTest.txt")
+                                                   .queryParam("namespace", "PRIVATE")
+                                                   .header("X-Client-Verify", "SUCCESS"))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                .andExpect(status().isOk());
 
         assertFalse(FileServiceTestHelper.fileExists(TEST_FILE_PATH), "File was not deleted");
     }
 
+    @Test
+    public void testUploadFiles() throws Exception {
+        MockMultipartFile first = new MockMultipartFile("files", "BatchTest1.txt", "text/plain", "Hello".getBytes());
+        MockMultipartFile second = new MockMultipartFile("files", "BatchTest2.txt", "text/plain", "World".getBytes());
+
+        MvcResult result = mockMvc.perform(multipart("/secure/file/batch")
+                                                   .file(first)
+                                                   .file(second)
+                                                   .param("destination", "PRIVATE")
+                                                   .header("X-Client-Verify", "SUCCESS")
+                                                   .contentType(MediaType.MULTIPART_FORM_DATA)
+                                                   .accept(MediaType.APPLICATION_JSON))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$[0].filename").value("BatchTest1.txt"))
+               .andExpect(jsonPath("$[0].status").value(200))
+               .andExpect(jsonPath("$[1].filename").value("BatchTest2.txt"))
+               .andExpect(jsonPath("$[1].status").value(200));
+    }
+
+    @Test
+    public void testDeleteFiles() throws Exception {
+        FileServiceTestHelper.createFile(SECOND_FILE_PATH);
+
+        MvcResult result = mockMvc.perform(post("/secure/file/batch/delete")
+                                                   .header("X-Client-Verify", "SUCCESS")
+                                                   .contentType(MediaType.APPLICATION_JSON)
+                                                   .content("""
+                                                                    {"namespace": "PRIVATE", "filenames": ["SecurefileApiControllerTest.txt", "SecurefileApiControllerTest2.txt"]}
+                                                                    """))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.length()").value(2));
+
+        assertFalse(FileServiceTestHelper.fileExists(TEST_FILE_PATH), "File was not deleted");
+        assertFalse(FileServiceTestHelper.fileExists(SECOND_FILE_PATH), "File was not deleted");
+    }
+
+    @Test
+    public void testListFiles() throws Exception {
+        FileServiceTestHelper.createFile(SECOND_FILE_PATH);
+
+        MvcResult result = mockMvc.perform(get("/secure/file")
+                                                   .queryParam("namespace", "PRIVATE")
+                                                   .queryParam("startAfter", "SecurefileApiControllerTest.txt")
+                                                   .header("X-Client-Verify", "SUCCESS")
+                                                   .accept(MediaType.APPLICATION_NDJSON))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        String body = mockMvc.perform(asyncDispatch(result))
+                             .andExpect(status().isOk())
+                             .andReturn()
+                             .getResponse()
+                             .getContentAsString();
+
+        ObjectMapper mapper = new ObjectMapper();
+        List<String> filenames = new ArrayList<>();
+        for (String line : body.strip().split("\n")) {
+            filenames.add(mapper.readTree(line).path("filename").asText());
+        }
+        assertTrue(filenames.contains("SecurefileApiControllerTest2.txt"), "Unexpected listing: " + body);
+        assertFalse(filenames.contains("SecurefileApiControllerTest.txt"), "Listing did not start after the given filename: " + body);
+    }
+
     @AfterEach
     public void cleanup() {
         FileServiceTestHelper.deleteFile(TEST_FILE_PATH);
+        FileServiceTestHelper.deleteFile(SECOND_FILE_PATH);
         FileServiceTestHelper.deleteFile(SHARED_FILE_PATH);
     }
 }
@@ -3,8 +3,11 @@ package com.chencraft.api.secure;
 import com.chencraft.common.config.MongoConfig;
 import com.chencraft.common.mongo.CertificateRepository;
 import com.chencraft.common.service.cert.CertificateService;
+import com.chencraft.model.CertificateBatchIssueRequest;
+import com.chencraft.model.CertificateIssueResult;
 import com.chencraft.model.CertificatePEM;
 import com.chencraft.model.CertificateRevokeRequest;
+import com.chencraft.model.KeyProfile;
 import com.chencraft.model.OnboardingToken;
 import com.chencraft.model.mongo.CertificateRecord;
 import org.junit.jupiter.api.Assertions;
@@ -23,10 +26,15 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -115,7 +123,22 @@ public class SecureCertificateApiControllerTest {
                          Assertions.assertNotNull(pem.getCertificate());
                          Assertions.assertNotNull(pem.getPrivateKey());
                      });
-        verify(certificateService).issueCertificate(eq(TEST_CLIENT_CN), anyBoolean());
+        verify(certificateService).issueCertificate(eq(TEST_CLIENT_CN), anyBoolean(), eq(KeyProfile.RSA_4096));
+    }
+
+    @Test
+    public void testRenewWithKeyProfile() {
+        webTestClient.post()
+                     .uri("/secure/certificate/renew")
+                     .contentType(MediaType.APPLICATION_JSON)
+                     .bodyValue("{\"keyProfile\": \"EC_P256\"}")
+                     .header("X-Client-Verify", "SUCCESS")
+                     .header("X-Client-Cert", testClientCertPem)
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBody(CertificatePEM.class)
+                     .consumeWith(response -> Assertions.assertNotNull(response.getResponseBody()));
+        verify(certificateService).issueCertificate(eq(TEST_CLIENT_CN), anyBoolean(), eq(KeyProfile.EC_P256));
     }
 
     @Test
@@ -159,7 +182,45 @@ public class SecureCertificateApiControllerTest {
                      .expectStatus().isOk()
                      .expectBody(CertificatePEM.class)
                      .consumeWith(response -> Assertions.assertNotNull(response.getResponseBody()));
-        verify(certificateService).issueCertificate(eq(TEST_CLIENT_CN), anyBoolean());
+        verify(certificateService).issueCertificate(eq(TEST_CLIENT_CN), anyBoolean(), any());
+    }
+
+    @Test
+    public void testIssueBatch() {
+        CertificateRecord previous = newRecord("fleet-a", "fa".repeat(32));
+
+        CertificateBatchIssueRequest batchRequest = new CertificateBatchIssueRequest();
+        batchRequest.setDeviceIds(List.of("fleet-a", "fleet-b", "fleet-a"));
+        batchRequest.setKeyProfile(KeyProfile.EC_P256);
+
+        List<CertificateIssueResult> results = webTestClient.post()
+                                                            .uri("/secure/certificate/issue/batch")
+                                                            .header("X-Client-Verify", "SUCCESS")
+                                                            .contentType(MediaType.APPLICATION_JSON)
+                                                            .accept(MediaType.APPLICATION_NDJSON)
+                                                            .bodyValue(batchRequest)
+                                                            .exchange()
+                                                            .expectStatus().isOk()
+                                                            .returnResult(CertificateIssueResult.class)
+                                                            .getResponseBody()
+                                                            .collectList()
+                                                            .block();
+
+        Assertions.assertNotNull(results);
+        Assertions.assertEquals(Set.of("fleet-a", "fleet-b"),
+                                results.stream().map(CertificateIssueResult::getDeviceId).collect(Collectors.toSet()));
+        results.forEach(result -> {
+            Assertions.assertEquals(200, result.getStatus());
+            Assertions.assertNotNull(result.getCertificate());
+            Assertions.assertNotNull(result.getPrivateKey());
+        });
+
+        // Recorded before being streamed, and the older certificate of fleet-a is superseded
+        Assertions.assertEquals(1L, certificateRepository.findByMachineIdAndIsDeletedFalse("fleet-b").count().block());
+        CertificateRecord superseded = certificateRepository.findById(previous.getId()).block();
+        Assertions.assertNotNull(superseded);
+        Assertions.assertNotNull(superseded.getRevokedAt());
+        Assertions.assertEquals("Superseded by new certificate", superseded.getRevokeReason());
     }
 
     private CertificateRecord newRecord(String deviceId, String fingerprint) {
@@ -197,6 +258,7 @@ public class SecureCertificateApiControllerTest {
         Assertions.assertNotNull(updated);
         Assertions.assertNotNull(updated.getRevokedAt());
         Assertions.assertEquals("Revoked by request", updated.getRevokeReason());
+        verify(certificateService).publishRevocations();
     }
 
     @Test
@@ -287,5 +349,6 @@ public class SecureCertificateApiControllerTest {
                                       .getResponseBody();
 
         Assertions.assertEquals("0 records affected.", message);
+        verify(certificateService, never()).publishRevocations();
     }
 }
@@ -0,0 +1,194 @@
+package com.chencraft.common.filter;
+
+import com.chencraft.common.component.AlertMessenger;
+import com.chencraft.common.mongo.CertificateRepository;
+import com.chencraft.common.service.cert.ClientCertificateResolver;
+import com.chencraft.common.service.cert.MTlsService;
+import com.chencraft.common.service.cert.RevocationIndex;
+import com.chencraft.common.service.executor.TaskExecutor;
+import com.chencraft.model.mongo.CertificateRecord;
+import com.chencraft.utils.PemUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.DispatcherType;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class MtlsVerificationFilterTest {
+    private static final Duration LOOKUP_TIMEOUT = Duration.ofMillis(50);
+    private static String clientCertPem;
+
+    private MTlsService mtlsService;
+    private RevocationIndex revocationIndex;
+    private AlertMessenger alertMessenger;
+
+    @BeforeAll
+    static void setupCertificate() throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+        keyGen.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = keyGen.generateKeyPair();
+        X500Name name = new X500Name("CN=device-1");
+        Instant now = Instant.now();
+        clientCertPem = PemUtils.toPem(new JcaX509CertificateConverter().getCertificate(
+                new JcaX509v3CertificateBuilder(name, BigInteger.ONE, Date.from(now), Date.from(now.plus(1, ChronoUnit.DAYS)), name, keyPair.getPublic())
+                        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate()))))
+                                .replace("\n", " ");
+    }
+
+    @BeforeEach
+    public void setup() {
+        mtlsService = mock(MTlsService.class);
+        revocationIndex = mock(RevocationIndex.class);
+        alertMessenger = mock(AlertMessenger.class);
+    }
+
+    @Test
+    public void cachedRecordIsCheckedOnRequestThread() throws Exception {
+        when(mtlsService.findByFingerprint(anyString())).thenReturn(Mono.just(new CertificateRecord()));
+        MockHttpServletRequest request = secureRequest();
+        MockFilterChain chain = new MockFilterChain();
+
+        newFilter(false).doFilter(request, new MockHttpServletResponse(), chain);
+
+        Assertions.assertFalse(request.isAsyncStarted());
+        Assertions.assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    public void revokedRecordIsRejected() throws Exception {
+        CertificateRecord revoked = new CertificateRecord();
+        revoked.setRevokedAt(Instant.now());
+        when(mtlsService.findByFingerprint(anyString())).thenReturn(Mono.just(revoked));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        newFilter(false).doFilter(secureRequest(), response, new MockFilterChain());
+
+        Assertions.assertEquals(401, response.getStatus());
+        verify(alertMessenger).alertRevokedCertificateAccess(any(), eq("/secure/authorize"));
+    }
+
+    @Test
+    public void indexedRevocationIsRejectedWithoutLookup() throws Exception {
+        CertificateRecord revoked = new CertificateRecord();
+        revoked.setRevokedAt(Instant.now());
+        when(revocationIndex.findRevoked(anyString())).thenReturn(revoked);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        newFilter(false).doFilter(secureRequest(), response, new MockFilterChain());
+
+        Assertions.assertEquals(401, response.getStatus());
+        verify(alertMessenger).alertRevokedCertificateAccess(revoked, "/secure/authorize");
+        verifyNoInteractions(mtlsService);
+    }
+
+    @Test
+    public void unknownFingerprintIsRejectedWithoutLookup() throws Exception {
+        when(revocationIndex.isUnknown(anyString())).thenReturn(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        newFilter(false).doFilter(secureRequest(), response, chain);
+
+        Assertions.assertEquals(401, response.getStatus());
+        Assertions.assertNull(chain.getRequest());
+        verifyNoInteractions(mtlsService);
+    }
+
+    @Test
+    public void recordMissingFromIndexIsLookedUpWhileStreamIsDown() throws Exception {
+        // Issued by another instance while the change stream was down, so the index never saw it
+        CertificateRepository certRepo = mock(CertificateRepository.class);
+        when(certRepo.findByIsDeletedFalse()).thenReturn(Flux.empty());
+        revocationIndex = new RevocationIndex(certRepo, mock(TaskExecutor.class), new SimpleMeterRegistry(), 1000, 0.01, Duration.ofHours(6));
+        revocationIndex.rebuild().block();
+        when(mtlsService.findByFingerprint(anyString())).thenReturn(Mono.just(new CertificateRecord()));
+        MockFilterChain chain = new MockFilterChain();
+
+        newFilter(false).doFilter(secureRequest(), new MockHttpServletResponse(), chain);
+
+        Assertions.assertNotNull(chain.getRequest());
+        verify(mtlsService).findByFingerprint(anyString());
+    }
+
+    @Test
+    public void slowLookupFailsClosedAfterAsyncDispatch() throws Exception {
+        when(mtlsService.findByFingerprint(anyString())).thenReturn(Mono.never());
+        MtlsVerificationFilter filter = newFilter(false);
+        MockHttpServletRequest request = secureRequest();
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        Assertions.assertTrue(request.isAsyncStarted());
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(awaitDispatch(request), response, chain);
+
+        Assertions.assertEquals(503, response.getStatus());
+        Assertions.assertNull(chain.getRequest());
+    }
+
+    @Test
+    public void slowLookupFailsOpenWhenConfigured() throws Exception {
+        when(mtlsService.findByFingerprint(anyString())).thenReturn(Mono.never());
+        MtlsVerificationFilter filter = newFilter(true);
+        MockHttpServletRequest request = secureRequest();
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(awaitDispatch(request), new MockHttpServletResponse(), chain);
+        Assertions.assertNotNull(chain.getRequest());
+    }
+
+    private MtlsVerificationFilter newFilter(boolean failOpen) {
+        ClientCertificateResolver resolver = new ClientCertificateResolver(new SimpleMeterRegistry(), 16, Duration.ofHours(1));
+        return new MtlsVerificationFilter(mtlsService, resolver, revocationIndex, alertMessenger, Clock.systemUTC(), true, "", LOOKUP_TIMEOUT, failOpen);
+    }
+
+    private static MockHttpServletRequest secureRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/secure/authorize");
+        request.setAsyncSupported(true);
+        request.addHeader("X-Client-Verify", "SUCCESS");
+        request.addHeader("X-Client-Cert", clientCertPem);
+        return request;
+    }
+
+    /**
+     * Waits for the lookup to dispatch the request again, then turns it into that async dispatch
+     */
+    private static MockHttpServletRequest awaitDispatch(MockHttpServletRequest request) throws InterruptedException {
+        Instant deadline = Instant.now().plusSeconds(5);
+        MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+        while (asyncContext.getDispatchedPath() == null && Instant.now().isBefore(deadline)) {
+            Thread.sleep(10);
+        }
+        Assertions.assertNotNull(asyncContext.getDispatchedPath(), "request was not dispatched");
+        request.setDispatcherType(DispatcherType.ASYNC);
+        return request;
+    }
+}
@@ -0,0 +1,70 @@
+package com.chencraft.common.mongo;
+
+import com.chencraft.common.config.MongoConfig;
+import com.chencraft.common.service.cert.MTlsService;
+import com.chencraft.common.service.file.FileTokenService;
+import com.chencraft.model.mongo.CertificateRecord;
+import com.chencraft.model.mongo.FileToken;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(MongoConfig.class)
+public class MongoExpiryIndexesTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Test
+    void disabledByDefault() {
+        assertTrue(findIndex(FileToken.class, "usedAt_ttl_idx").isEmpty());
+        assertTrue(findIndex(CertificateRecord.class, "expiresAt_ttl_idx").isEmpty());
+    }
+
+    @Test
+    void createsPartialTtlIndexesWhenEnabled() throws InterruptedException {
+        new MongoExpiryIndexes(mongoTemplate, true).init();
+
+        IndexInfo tokens = awaitIndex(FileToken.class, "usedAt_ttl_idx");
+        IndexInfo certificates = awaitIndex(CertificateRecord.class, "expiresAt_ttl_idx");
+
+        assertEquals(Optional.of(FileTokenService.HARD_DELETE_AFTER), tokens.getExpireAfter());
+        assertEquals(Optional.of(MTlsService.HARD_DELETE_AFTER), certificates.getExpireAfter());
+        // Only documents the cleanup already soft-deleted may expire
+        assertTrue(tokens.getPartialFilterExpression().contains("isDeleted"), tokens.getPartialFilterExpression());
+        assertTrue(certificates.getPartialFilterExpression().contains("isDeleted"), certificates.getPartialFilterExpression());
+
+        mongoTemplate.indexOps(FileToken.class).dropIndex("usedAt_ttl_idx").block();
+        mongoTemplate.indexOps(CertificateRecord.class).dropIndex("expiresAt_ttl_idx").block();
+    }
+
+    private IndexInfo awaitIndex(Class<?> entityClass, String name) throws InterruptedException {
+        // Created in the background by init()
+        Instant deadline = Instant.now().plus(TIMEOUT);
+        Optional<IndexInfo> index = findIndex(entityClass, name);
+        while (index.isEmpty() && Instant.now().isBefore(deadline)) {
+            Thread.sleep(50);
+            index = findIndex(entityClass, name);
+        }
+        return index.orElseThrow(() -> new AssertionError("index " + name + " was not created"));
+    }
+
+    private Optional<IndexInfo> findIndex(Class<?> entityClass, String name) {
+        return mongoTemplate.indexOps(entityClass)
+                            .getIndexInfo()
+                            .filter(index -> index.getName().equals(name))
+                            .next()
+                            .blockOptional();
+    }
+}
@@ -0,0 +1,69 @@
+package com.chencraft.common.service.cert;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+public class CertificateAuthorityTest {
+    private static CertificateAuthority ca;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        KeyPair caKeyPair = generateEcKeyPair();
+        X500Name name = new X500Name("CN=test-ca,O=ChenCraft");
+        Instant now = Instant.now();
+        X509Certificate caCert = new JcaX509CertificateConverter().getCertificate(
+                new JcaX509v3CertificateBuilder(name, BigInteger.ONE, Date.from(now), Date.from(now.plus(1, ChronoUnit.DAYS)), name, caKeyPair.getPublic())
+                        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(caKeyPair.getPrivate())));
+        ca = new CertificateAuthority(caCert, caKeyPair.getPrivate(), "SHA256withECDSA", BouncyCastleProvider.PROVIDER_NAME);
+    }
+
+    @Test
+    public void subjectReplacesCommonNameOnly() {
+        X500Name subject = ca.subjectFor("device-1");
+
+        Assertions.assertEquals("test-ca", ca.commonName());
+        Assertions.assertTrue(subject.toString().contains("CN=device-1"), subject.toString());
+        Assertions.assertTrue(subject.toString().contains("O=ChenCraft"), subject.toString());
+    }
+
+    @Test
+    public void subjectKeyIdentifierMatchesExtensionUtils() throws Exception {
+        SubjectPublicKeyInfo publicKeyInfo = SubjectPublicKeyInfo.getInstance(generateEcKeyPair().getPublic().getEncoded());
+
+        Assertions.assertEquals(new JcaX509ExtensionUtils().createSubjectKeyIdentifier(publicKeyInfo),
+                                CertificateAuthority.subjectKeyIdentifier(publicKeyInfo));
+    }
+
+    @Test
+    public void newSignerIsIndependentPerCall() throws Exception {
+        Assertions.assertNotSame(ca.newSigner(), ca.newSigner());
+        Assertions.assertTrue(ca.pem().startsWith("-----BEGIN CERTIFICATE-----"));
+    }
+
+    private static KeyPair generateEcKeyPair() throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+        keyGen.initialize(new ECGenParameterSpec("secp256r1"));
+        return keyGen.generateKeyPair();
+    }
+}
@@ -0,0 +1,80 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.model.mongo.CertificateRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class CertificateCacheTest {
+    private SimpleMeterRegistry meterRegistry;
+    private CertificateCache cache;
+    private AtomicInteger queries;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new CertificateCache(meterRegistry, 100, Duration.ofHours(1), Duration.ofHours(12), 100, Duration.ofMinutes(1));
+        queries = new AtomicInteger();
+    }
+
+    @Test
+    public void queriesOnceAndServesFromCache() {
+        CertificateRecord first = cache.get("fp-1", query(record("fp-1"))).block();
+        CertificateRecord second = cache.get("fp-1", query(record("other"))).block();
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, queries.get());
+        Assertions.assertEquals(1.0, lookups("hit"));
+        Assertions.assertEquals(1.0, lookups("miss"));
+    }
+
+    @Test
+    public void unknownFingerprintIsRememberedUntilIssued() {
+        Assertions.assertNull(cache.get("fp-1", query(null)).block());
+        Assertions.assertNull(cache.get("fp-1", query(record("fp-1"))).block());
+        Assertions.assertEquals(1, queries.get());
+        Assertions.assertEquals(1.0, lookups("negative_hit"));
+
+        cache.invalidate(List.of("fp-1"), CertificateCache.ISSUE);
+
+        Assertions.assertNotNull(cache.get("fp-1", query(record("fp-1"))).block());
+        Assertions.assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void invalidateEvictsOnlyGivenFingerprints() {
+        cache.get("fp-1", query(record("fp-1"))).block();
+        cache.get("fp-2", query(record("fp-2"))).block();
+
+        cache.invalidate(List.of("fp-1", "fp-unknown"), CertificateCache.REVOKE);
+
+        cache.get("fp-1", query(record("fp-1"))).block();
+        cache.get("fp-2", query(record("fp-2"))).block();
+        Assertions.assertEquals(3, queries.get());
+        Assertions.assertEquals(1.0, meterRegistry.get("cert.cache.evictions").tag("cause", "revoke").counter().count());
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get("cert.cache.lookups").tag("result", result).counter().count();
+    }
+
+    private Function<String, Mono<CertificateRecord>> query(CertificateRecord result) {
+        return fingerprint -> Mono.fromCallable(() -> {
+            queries.incrementAndGet();
+            return result;
+        });
+    }
+
+    private static CertificateRecord record(String fingerprint) {
+        CertificateRecord record = new CertificateRecord();
+        record.setFingerprintSha256(fingerprint);
+        return record;
+    }
+}
@@ -0,0 +1,54 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.common.mongo.CertificateRepository;
+import com.chencraft.model.mongo.CertificateRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class CertificateChangeListenerTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Autowired
+    private CertificateRepository certRepo;
+
+    @Autowired
+    private MTlsService mtlsService;
+
+    @Test
+    void revocationByAnotherInstanceEvictsCachedRecord() throws InterruptedException {
+        CertificateRecord record = new CertificateRecord();
+        record.setFingerprintSha256(UUID.randomUUID().toString());
+        record.setMachineId("remote-dev");
+        record.setIssuedAt(Instant.now());
+        record.setExpiresAt(Instant.now().plus(1, ChronoUnit.DAYS));
+        CertificateRecord saved = certRepo.save(record).block();
+        assertNotNull(saved);
+
+        CertificateRecord cached = mtlsService.findByFingerprint(saved.getFingerprintSha256()).block();
+        assertNotNull(cached);
+        assertNull(cached.getRevokedAt());
+
+        // Written straight to Mongo as another instance would, bypassing this instance's evictions
+        saved.setRevokedAt(Instant.now());
+        saved.setRevokeReason("Revoked elsewhere");
+        certRepo.save(saved).block();
+
+        Instant deadline = Instant.now().plus(TIMEOUT);
+        CertificateRecord current = cached;
+        while (current.getRevokedAt() == null && Instant.now().isBefore(deadline)) {
+            Thread.sleep(50);
+            current = mtlsService.findByFingerprint(saved.getFingerprintSha256()).block();
+            assertNotNull(current);
+        }
+        assertNotNull(current.getRevokedAt(), "cached record was not evicted by the change stream");
+    }
+}
@@ -0,0 +1,125 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.utils.PemUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.RFC4519Style;
+import org.bouncycastle.asn1.x509.*;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issuance of one certificate with everything derived from the CA rebuilt per call, as before
+ * CertificateAuthority, against issuance from a loaded CertificateAuthority. Key generation is left out, it comes
+ * from the key pair pool. A P-256 CA keeps the signature from hiding the difference.
+ * <p>
+ * Not run by surefire. Run {@link #main} after test-compile with target/test-classes and the test classpath, and
+ * compare the average time and gc.alloc.rate.norm (bytes per issuance) of both benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CertificateIssuanceBenchmark {
+    private static final String BC_PROVIDER = BouncyCastleProvider.PROVIDER_NAME;
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    private static final BasicConstraints END_ENTITY = new BasicConstraints(false);
+    private static final ExtendedKeyUsage SERVER_AND_CLIENT_AUTH = new ExtendedKeyUsage(new KeyPurposeId[]{KeyPurposeId.id_kp_serverAuth, KeyPurposeId.id_kp_clientAuth});
+    private static final KeyUsage SIGNATURE_KEY_USAGE = new KeyUsage(KeyUsage.digitalSignature);
+    private static final SecureRandom SERIAL_RANDOM = new SecureRandom();
+    private static final JcaX509CertificateConverter CERTIFICATE_CONVERTER = new JcaX509CertificateConverter().setProvider(BC_PROVIDER);
+
+    private X509Certificate caCert;
+    private PrivateKey caPrivateKey;
+    private CertificateAuthority ca;
+    private SubjectPublicKeyInfo clientPublicKey;
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(CertificateIssuanceBenchmark.class.getSimpleName())
+                                       .addProfiler("gc")
+                                       .build()).run();
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        if (Security.getProvider(BC_PROVIDER) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+        keyGen.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair caKeyPair = keyGen.generateKeyPair();
+        X500Name name = new X500Name("CN=bench-ca,O=ChenCraft,C=US");
+        Instant now = Instant.now();
+        caCert = new JcaX509CertificateConverter().getCertificate(
+                new JcaX509v3CertificateBuilder(name, BigInteger.ONE, Date.from(now), Date.from(now.plus(365, ChronoUnit.DAYS)), name, caKeyPair.getPublic())
+                        .build(new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).build(caKeyPair.getPrivate())));
+        caPrivateKey = caKeyPair.getPrivate();
+        ca = new CertificateAuthority(caCert, caPrivateKey, SIGNATURE_ALGORITHM, BC_PROVIDER);
+        clientPublicKey = SubjectPublicKeyInfo.getInstance(keyGen.generateKeyPair().getPublic().getEncoded());
+    }
+
+    @Benchmark
+    public String perCall() throws Exception {
+        X500Name issuer = new X500Name(RFC4519Style.INSTANCE, caCert.getSubjectX500Principal().getName());
+        String serverCn = issuer.getRDNs(BCStyle.CN)[0].getFirst().getValue().toString();
+        X500Name subject = new X500Name(issuer.toString()
+                                              .replace("CN=" + serverCn, "CN=device-1")
+                                              .replace("cn=" + serverCn, "cn=device-1"));
+        BigInteger serial = new BigInteger(64, new SecureRandom()).add(BigInteger.ONE);
+        JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils();
+
+        X509v3CertificateBuilder builder = newBuilder(issuer, serial, subject);
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+        builder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature));
+        builder.addExtension(Extension.extendedKeyUsage, false, new ExtendedKeyUsage(new KeyPurposeId[]{KeyPurposeId.id_kp_serverAuth, KeyPurposeId.id_kp_clientAuth}));
+        builder.addExtension(Extension.authorityKeyIdentifier, false, extensionUtils.createAuthorityKeyIdentifier(caCert));
+        builder.addExtension(Extension.subjectKeyIdentifier, false, extensionUtils.createSubjectKeyIdentifier(clientPublicKey));
+
+        X509Certificate clientCert = new JcaX509CertificateConverter().setProvider(BC_PROVIDER).getCertificate(
+                builder.build(new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).setProvider(BC_PROVIDER).build(caPrivateKey)));
+        return PemUtils.toPem(clientCert, caCert);
+    }
+
+    @Benchmark
+    public String cached() throws Exception {
+        X500Name subject = ca.subjectFor("device-1");
+        BigInteger serial = new BigInteger(64, SERIAL_RANDOM).add(BigInteger.ONE);
+
+        X509v3CertificateBuilder builder = newBuilder(ca.issuer(), serial, subject);
+        builder.addExtension(Extension.basicConstraints, true, END_ENTITY);
+        builder.addExtension(Extension.keyUsage, true, SIGNATURE_KEY_USAGE);
+        builder.addExtension(Extension.extendedKeyUsage, false, SERVER_AND_CLIENT_AUTH);
+        builder.addExtension(Extension.authorityKeyIdentifier, false, ca.authorityKeyIdentifier());
+        builder.addExtension(Extension.subjectKeyIdentifier, false, CertificateAuthority.subjectKeyIdentifier(clientPublicKey));
+
+        X509Certificate clientCert = CERTIFICATE_CONVERTER.getCertificate(builder.build(ca.newSigner()));
+        return PemUtils.toPem(clientCert) + ca.pem();
+    }
+
+    private X509v3CertificateBuilder newBuilder(X500Name issuer, BigInteger serial, X500Name subject) {
+        Instant now = Instant.now();
+        return new X509v3CertificateBuilder(issuer, serial, Date.from(now), Date.from(now.plus(60, ChronoUnit.DAYS)), subject, clientPublicKey);
+    }
+}
@@ -1,18 +1,31 @@
 package com.chencraft.common.service.cert;
 
+import com.chencraft.api.ApiException;
 import com.chencraft.model.CertificatePEM;
+import com.chencraft.model.KeyProfile;
 import com.chencraft.model.mongo.CertificateRecord;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.NonNull;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import java.io.StringWriter;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
 import java.time.Instant;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -27,6 +40,12 @@ public class CertificateServiceTest {
     @Autowired
     private AbstractCertificateService service;
 
+    @Autowired
+    private IssuanceMetrics issuanceMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Test
     void returnsJsonBodyWhenPemFormatFalseAndTriggersInsert() {
         ResponseEntity<?> entity = service.issueCertificate("dev1", false).block();
@@ -58,17 +77,70 @@ public class CertificateServiceTest {
         verify(mtlsService, times(1)).insertNewRecord(any());
     }
 
+    @Test
+    void signsCsrAndReturnsChainOnly() throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+        keyGen.initialize(new ECGenParameterSpec("secp256r1"));
+        String csr = toPemCsr(keyGen.generateKeyPair(), "SHA256withECDSA");
+
+        ResponseEntity<?> entity = service.signCertificate("dev4", csr).block();
+        assertNotNull(entity);
+        assertTrue(entity.getStatusCode().is2xxSuccessful());
+        assertEquals(MediaType.parseMediaType("application/x-pem-file"), entity.getHeaders().getContentType());
+        String body = assertInstanceOf(String.class, entity.getBody());
+        assertTrue(body.contains("BEGIN CERTIFICATE"));
+        assertFalse(body.contains("PRIVATE KEY"));
+
+        verify(mtlsService, times(1)).insertNewRecord(any());
+    }
+
+    @Test
+    void rejectsWeakOrMalformedCsr() throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(1024);
+        String weakCsr = toPemCsr(keyGen.generateKeyPair(), "SHA256withRSA");
+
+        ApiException weak = assertThrows(ApiException.class, () -> service.signCertificate("dev5", weakCsr));
+        assertEquals(HttpStatus.BAD_REQUEST, weak.getCode());
+        ApiException malformed = assertThrows(ApiException.class, () -> service.signCertificate("dev5", "not a csr"));
+        assertEquals(HttpStatus.BAD_REQUEST, malformed.getCode());
+
+        verify(mtlsService, Mockito.never()).insertNewRecord(any());
+    }
+
+    @Test
+    void countsIssuanceOutcomesPerProfile() throws Exception {
+        double issued = outcomeCount("ec_p256", "success");
+        double rejected = outcomeCount(IssuanceMetrics.CSR_PROFILE, "failure");
+
+        service.issueCertificate("dev6", false, KeyProfile.EC_P256).block();
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        String csr = toPemCsr(keyGen.generateKeyPair(), "SHA256withRSA");
+        service.signCertificate("dev6", csr).block();
+
+        assertEquals(issued + 1, outcomeCount("ec_p256", "success"));
+        // Rejected CSRs never reach signing, so they are not issuance failures
+        assertEquals(rejected, outcomeCount(IssuanceMetrics.CSR_PROFILE, "failure"));
+        assertTrue(outcomeCount(IssuanceMetrics.CSR_PROFILE, "success") >= 1);
+    }
+
     @Test
     void doNotInsertWhenResponseNotSuccessful() {
         // Create a wrapper that returns a non-2xx response through the same pipeline, so revokeSupersededCerts should no-op
-        AbstractCertificateService faulty = new AbstractCertificateService(mtlsService) {
+        AbstractCertificateService faulty = new AbstractCertificateService(mtlsService, issuanceMetrics) {
             @Override
-            protected CertificatePEM createCertificateAndPrivateKey(String deviceId) {
+            protected CertificatePEM createCertificateAndPrivateKey(String deviceId, KeyProfile keyProfile) {
                 return new CertificatePEM("C", "K", Instant.now(), new CertificateRecord());
             }
 
             @Override
-            public Mono<@NonNull ResponseEntity<?>> issueCertificate(String deviceId, boolean pemFormat) {
+            protected CertificatePEM signCertificateRequest(String deviceId, PKCS10CertificationRequest csr) {
+                return new CertificatePEM("C", null, Instant.now(), new CertificateRecord());
+            }
+
+            @Override
+            public Mono<@NonNull ResponseEntity<?>> issueCertificate(String deviceId, boolean pemFormat, KeyProfile keyProfile) {
                 ResponseEntity<?> resp = ResponseEntity.status(500).build();
                 // Use doOnSuccess with our consumer to mimic the base behavior path; since status is 5xx, insertNewRecord must NOT be called
                 return Mono.<ResponseEntity<?>>just(resp)
@@ -84,4 +156,18 @@ public class CertificateServiceTest {
         faulty.issueCertificate("dev3", false).block();
         verify(mtlsService, Mockito.never()).insertNewRecord(any());
     }
+
+    private double outcomeCount(String profile, String outcome) {
+        return meterRegistry.get("cert.issuance.requests").tag("profile", profile).tag("outcome", outcome).counter().count();
+    }
+
+    public static String toPemCsr(KeyPair keyPair, String signatureAlgorithm) throws Exception {
+        PKCS10CertificationRequest csr = new JcaPKCS10CertificationRequestBuilder(new X500Name("CN=ignored"), keyPair.getPublic())
+                .build(new JcaContentSignerBuilder(signatureAlgorithm).build(keyPair.getPrivate()));
+        StringWriter writer = new StringWriter();
+        try (JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+            pemWriter.writeObject(csr);
+        }
+        return writer.toString();
+    }
 }
@@ -0,0 +1,74 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.utils.CertificateUtils;
+import com.chencraft.utils.PemUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+public class ClientCertificateResolverTest {
+    private static X509Certificate certificate;
+    private static String pem;
+
+    private ClientCertificateResolver resolver;
+
+    @BeforeAll
+    static void setupCertificate() throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+        keyGen.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = keyGen.generateKeyPair();
+        X500Name name = new X500Name("CN=device-1,O=ChenCraft");
+        Instant now = Instant.now();
+        certificate = new JcaX509CertificateConverter().getCertificate(
+                new JcaX509v3CertificateBuilder(name, BigInteger.TWO, Date.from(now), Date.from(now.plus(1, ChronoUnit.DAYS)), name, keyPair.getPublic())
+                        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+        pem = PemUtils.toPem(certificate);
+    }
+
+    @BeforeEach
+    public void setup() {
+        resolver = new ClientCertificateResolver(new SimpleMeterRegistry(), 16, Duration.ofHours(1));
+    }
+
+    @Test
+    public void resolvesFingerprintAndCommonNameOnce() {
+        ClientCertificateResolver.ClientCertificate first = resolver.resolve(pem);
+
+        Assertions.assertEquals(CertificateUtils.computeSha256Fingerprint(certificate), first.fingerprint());
+        Assertions.assertEquals("device-1", first.commonName());
+        // Same header, cached result
+        Assertions.assertSame(first, resolver.resolve(new String(pem)));
+    }
+
+    @Test
+    public void decodesPemWithAnyLineBreaks() throws Exception {
+        String tabbed = pem.replace("\n", "\n\t").replace("\t-----END", "-----END");
+
+        Assertions.assertArrayEquals(certificate.getEncoded(), CertificateUtils.decodePem(pem));
+        Assertions.assertArrayEquals(certificate.getEncoded(), CertificateUtils.decodePem(tabbed));
+        Assertions.assertArrayEquals(certificate.getEncoded(), CertificateUtils.decodePem(pem.replace("\n", "\r\n")));
+    }
+
+    @Test
+    public void rejectsMalformedHeaders() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> resolver.resolve("-----BEGIN CERTIFICATE-----\nnot*base64\n-----END CERTIFICATE-----"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> resolver.resolve("-----BEGIN CERTIFICATE-----\nAAAA\n-----END CERTIFICATE-----"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CertificateUtils.decodePem("AAAAA"));
+    }
+}
@@ -0,0 +1,131 @@
+package com.chencraft.common.service.cert;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class KeyPairPoolTest {
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicInteger generated;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        generated = new AtomicInteger();
+    }
+
+    @Test
+    public void startFillsToCapacity() {
+        KeyPairPool pool = newPool(this::generate, 4, 1);
+        pool.start();
+
+        Assertions.assertEquals(4, pool.size());
+        Assertions.assertEquals(4.0, meterRegistry.get("cert.keypool.size").gauge().value());
+    }
+
+    @Test
+    public void takeHandsOutEachPairOnce() {
+        KeyPairPool pool = newPool(this::generate, 4, 1);
+        pool.start();
+
+        KeyPair first = pool.take();
+        KeyPair second = pool.take();
+
+        Assertions.assertNotSame(first, second);
+        // Above the low watermark, taking does not trigger a refill yet
+        Assertions.assertEquals(2, pool.size());
+        Assertions.assertEquals(4, generated.get());
+    }
+
+    @Test
+    public void refillsAtLowWatermark() {
+        KeyPairPool pool = newPool(this::generate, 4, 1);
+        pool.start();
+
+        pool.take();
+        pool.take();
+        pool.take();
+
+        Assertions.assertEquals(4, pool.size());
+        Assertions.assertEquals(7, generated.get());
+    }
+
+    @Test
+    public void failingGeneratorFallsBackInlineOnce() {
+        Supplier<KeyPair> failing = () -> {
+            generated.incrementAndGet();
+            throw new IllegalStateException("boom");
+        };
+        KeyPairPool pool = newPool(failing, 4, 1);
+        pool.start();
+
+        Assertions.assertThrows(IllegalStateException.class, pool::take);
+        Assertions.assertEquals(1.0, meterRegistry.get("cert.keypool.misses").counter().count());
+        Assertions.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void closeEmptiesPool() {
+        KeyPairPool pool = newPool(this::generate, 4, 1);
+        pool.start();
+        pool.close();
+
+        Assertions.assertEquals(0, pool.size());
+        Assertions.assertNotNull(pool.take());
+    }
+
+    private KeyPairPool newPool(Supplier<KeyPair> generator, int capacity, int lowWatermark) {
+        return new KeyPairPool("test", generator, capacity, lowWatermark, 1, meterRegistry, new DirectExecutorService());
+    }
+
+    private KeyPair generate() {
+        generated.incrementAndGet();
+        return new KeyPair(null, null);
+    }
+
+    /**
+     * Runs refills on the calling thread so that pool levels are deterministic
+     */
+    private static class DirectExecutorService extends AbstractExecutorService {
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.common.config.MongoConfig;
+import com.chencraft.common.mongo.CertificateRepository;
+import com.chencraft.model.mongo.CertificateRecord;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(MongoConfig.class)
+public class MTlsServiceTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Autowired
+    private CertificateRepository certRepo;
+
+    @Autowired
+    private MTlsService mtlsService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void cleanUpSoftDeletesExpiredAndPurgesLongExpiredRecords() throws InterruptedException {
+        Instant now = Instant.now();
+        CertificateRecord current = certRepo.save(record(now.minus(1, ChronoUnit.DAYS), false)).block();
+        CertificateRecord expired = certRepo.save(record(now.minus(90, ChronoUnit.DAYS), false)).block();
+        // Soft-deleted and purged by the same run, the hard delete runs after the soft delete
+        CertificateRecord longExpired = certRepo.save(record(now.minus(400, ChronoUnit.DAYS), false)).block();
+        CertificateRecord purgeable = certRepo.save(record(now.minus(400, ChronoUnit.DAYS), true)).block();
+        assertNotNull(current);
+        assertNotNull(expired);
+        assertNotNull(longExpired);
+        assertNotNull(purgeable);
+        double softDeleted = count("soft_delete");
+        double hardDeleted = count("hard_delete");
+
+        mtlsService.cleanUp();
+
+        // The cleanup runs in the background, the hard delete counter moves last
+        Instant deadline = Instant.now().plus(TIMEOUT);
+        while (count("hard_delete") == hardDeleted && Instant.now().isBefore(deadline)) {
+            Thread.sleep(50);
+        }
+        assertEquals(2.0, count("soft_delete") - softDeleted);
+        assertEquals(2.0, count("hard_delete") - hardDeleted);
+
+        assertFalse(certRepo.findById(current.getId()).blockOptional().orElseThrow().isDeleted);
+        assertTrue(certRepo.findById(expired.getId()).blockOptional().orElseThrow().isDeleted);
+        assertTrue(certRepo.findById(longExpired.getId()).blockOptional().isEmpty());
+        assertTrue(certRepo.findById(purgeable.getId()).blockOptional().isEmpty());
+    }
+
+    @Test
+    void renewalRevokesSupersededRecords() {
+        Instant now = Instant.now();
+        String machineId = "renew-" + UUID.randomUUID();
+        CertificateRecord previous = certRepo.save(record(now.plus(30, ChronoUnit.DAYS), false, machineId)).block();
+        assertNotNull(previous);
+        CertificateRecord renewed = record(now.plus(60, ChronoUnit.DAYS), false, machineId);
+
+        assertEquals(1L, mtlsService.insertNewRecord(renewed).block(TIMEOUT));
+        assertNotNull(certRepo.findById(previous.getId()).blockOptional().orElseThrow().getRevokedAt());
+
+        // Nothing left to supersede, so nothing needs to be republished
+        assertEquals(0L, mtlsService.insertNewRecord(record(now.plus(60, ChronoUnit.DAYS), false, "first-" + UUID.randomUUID())).block(TIMEOUT));
+    }
+
+    private double count(String action) {
+        return meterRegistry.get("cleanup.documents")
+                            .tag("collection", "certificates")
+                            .tag("action", action)
+                            .counter()
+                            .count();
+    }
+
+    private static CertificateRecord record(Instant expiresAt, boolean deleted) {
+        return record(expiresAt, deleted, "cleanup-dev");
+    }
+
+    private static CertificateRecord record(Instant expiresAt, boolean deleted, String machineId) {
+        CertificateRecord record = new CertificateRecord();
+        record.setFingerprintSha256(UUID.randomUUID().toString());
+        record.setMachineId(machineId);
+        record.setIssuedAt(expiresAt.minus(30, ChronoUnit.DAYS));
+        record.setExpiresAt(expiresAt);
+        record.isDeleted = deleted;
+        return record;
+    }
+}
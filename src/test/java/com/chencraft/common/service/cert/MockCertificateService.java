@@ -2,7 +2,9 @@ package com.chencraft.common.service.cert;
 
 import com.chencraft.api.ApiException;
 import com.chencraft.model.CertificatePEM;
+import com.chencraft.model.KeyProfile;
 import com.chencraft.model.mongo.CertificateRecord;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.HttpStatus;
@@ -13,17 +15,18 @@ import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.util.Base64;
+import java.util.UUID;
 
 @Primary
 @Component
 public class MockCertificateService extends AbstractCertificateService {
     @Autowired
-    public MockCertificateService(MTlsService mtlsService) {
-        super(mtlsService);
+    public MockCertificateService(MTlsService mtlsService, IssuanceMetrics issuanceMetrics) {
+        super(mtlsService, issuanceMetrics);
     }
 
     @Override
-    protected CertificatePEM createCertificateAndPrivateKey(String deviceId) {
+    protected CertificatePEM createCertificateAndPrivateKey(String deviceId, KeyProfile keyProfile) {
         try {
             KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
             keyGen.initialize(512); // small key for testing
@@ -39,10 +42,25 @@ public class MockCertificateService extends AbstractCertificateService {
                     + "\n-----END PRIVATE KEY-----";
 
             CertificateRecord record = new CertificateRecord();
+            record.setMachineId(deviceId);
+            record.setFingerprintSha256(UUID.randomUUID().toString());
+            record.setIssuedAt(Instant.now());
+            record.setExpiresAt(validUntil);
 
             return new CertificatePEM(fakeCert, fakeKey, validUntil, record);
         } catch (NoSuchAlgorithmException e) {
             throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to generate mock keypair", e);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    protected CertificatePEM signCertificateRequest(String deviceId, PKCS10CertificationRequest csr) {
+        Instant validUntil = Instant.now().plusSeconds(1000L * 60 * 60 * 24 * 365);
+
+        String fakeCert = "-----BEGIN CERTIFICATE-----\n"
+                + Base64.getEncoder().encodeToString(deviceId.getBytes())
+                + "\n-----END CERTIFICATE-----";
+
+        return new CertificatePEM(fakeCert, null, validUntil, new CertificateRecord());
+    }
+}
@@ -0,0 +1,151 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.common.mongo.CertificateRepository;
+import com.chencraft.common.service.executor.TaskExecutor;
+import com.chencraft.model.mongo.CertificateRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RevocationIndexTest {
+    private SimpleMeterRegistry meterRegistry;
+    private CertificateRepository certRepo;
+    private RevocationIndex index;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        certRepo = mock(CertificateRepository.class);
+        index = new RevocationIndex(certRepo, mock(TaskExecutor.class), meterRegistry, 1000, 0.01, Duration.ofHours(6));
+    }
+
+    @Test
+    public void reportsNothingBeforeFirstLoad() {
+        index.update(record("fp-1", Instant.now()));
+
+        Assertions.assertNull(index.findRevoked("fp-1"));
+        Assertions.assertFalse(index.isUnknown("fp-unknown"));
+    }
+
+    @Test
+    public void rebuildIndexesKnownAndRevokedCertificates() {
+        when(certRepo.findByIsDeletedFalse()).thenReturn(Flux.just(record("fp-active", null), record("fp-revoked", Instant.now())));
+
+        index.rebuild().block();
+
+        Assertions.assertNull(index.findRevoked("fp-active"));
+        Assertions.assertNotNull(index.findRevoked("fp-revoked"));
+        Assertions.assertFalse(index.isUnknown("fp-active"));
+        Assertions.assertFalse(index.isUnknown("fp-unknown"));
+
+        index.changeStreamEstablished().block();
+        Assertions.assertFalse(index.isUnknown("fp-active"));
+        Assertions.assertTrue(index.isUnknown("fp-unknown"));
+        Assertions.assertEquals(1.0, meterRegistry.get("cert.revocation_index.revoked").gauge().value());
+    }
+
+    @Test
+    public void unknownIsNotReportedAfterStreamIsLost() {
+        when(certRepo.findByIsDeletedFalse()).thenReturn(Flux.empty());
+        index.changeStreamEstablished().block();
+        Assertions.assertTrue(index.isUnknown("fp-unknown"));
+
+        index.changeStreamLost();
+        Assertions.assertFalse(index.isUnknown("fp-unknown"));
+
+        // Anything issued while the stream was down is only seen by the reload
+        index.changeStreamEstablished().block();
+        Assertions.assertTrue(index.isUnknown("fp-unknown"));
+    }
+
+    @Test
+    public void rebuildStartedBeforeStreamIsRunAgain() throws InterruptedException {
+        Sinks.Many<CertificateRecord> records = Sinks.many().unicast().onBackpressureBuffer();
+        when(certRepo.findByIsDeletedFalse()).thenReturn(records.asFlux(), Flux.empty());
+        index.rebuild().subscribe();
+
+        index.changeStreamEstablished().block();
+        records.tryEmitComplete();
+        Assertions.assertFalse(index.isUnknown("fp-unknown"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!index.isUnknown("fp-unknown") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(index.isUnknown("fp-unknown"));
+    }
+
+    @Test
+    public void updatesApplyToLoadedIndex() {
+        when(certRepo.findByIsDeletedFalse()).thenReturn(Flux.empty());
+        index.rebuild().block();
+
+        index.update(record("fp-1", null));
+        Assertions.assertFalse(index.isUnknown("fp-1"));
+        Assertions.assertNull(index.findRevoked("fp-1"));
+
+        index.update(record("fp-1", Instant.now()));
+        Assertions.assertNotNull(index.findRevoked("fp-1"));
+
+        CertificateRecord deleted = record("fp-1", Instant.now());
+        deleted.isDeleted = true;
+        index.update(deleted);
+        Assertions.assertNull(index.findRevoked("fp-1"));
+    }
+
+    @Test
+    public void updateDuringRebuildSurvivesStaleRead() {
+        Sinks.Many<CertificateRecord> records = Sinks.many().unicast().onBackpressureBuffer();
+        when(certRepo.findByIsDeletedFalse()).thenReturn(records.asFlux());
+        index.rebuild().subscribe();
+
+        // Revoked after the rebuild read the record as active
+        records.tryEmitNext(record("fp-1", null));
+        index.update(record("fp-1", Instant.now()));
+        records.tryEmitComplete();
+
+        Assertions.assertNotNull(index.findRevoked("fp-1"));
+    }
+
+    @Test
+    public void bloomFilterHasNoFalseNegativesAndBoundedFalsePositives() {
+        FingerprintBloomFilter filter = new FingerprintBloomFilter(10_000, 0.01);
+        String[] added = new String[10_000];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = fingerprint();
+            filter.add(added[i]);
+        }
+
+        for (String fingerprint : added) {
+            Assertions.assertTrue(filter.mightContain(fingerprint));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain(fingerprint())) {
+                falsePositives++;
+            }
+        }
+        Assertions.assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+    }
+
+    private static String fingerprint() {
+        return (UUID.randomUUID().toString() + UUID.randomUUID()).replace("-", "").toUpperCase();
+    }
+
+    private static CertificateRecord record(String fingerprint, Instant revokedAt) {
+        CertificateRecord record = new CertificateRecord();
+        record.setFingerprintSha256(fingerprint);
+        record.setRevokedAt(revokedAt);
+        return record;
+    }
+}
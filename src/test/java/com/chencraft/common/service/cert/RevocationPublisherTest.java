@@ -0,0 +1,144 @@
+package com.chencraft.common.service.cert;
+
+import com.chencraft.model.mongo.CertificateRecord;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.*;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RevocationPublisherTest {
+    private static final BigInteger GOOD_SERIAL = BigInteger.valueOf(0x1001);
+    private static final BigInteger REVOKED_SERIAL = BigInteger.valueOf(0x2002);
+
+    private static CertificateAuthority ca;
+    private static X509CertificateHolder caHolder;
+    private MTlsService mtlsService;
+    private RevocationPublisher publisher;
+
+    @BeforeAll
+    static void setupCa() throws Exception {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+        keyGen.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair caKeyPair = keyGen.generateKeyPair();
+        X500Name name = new X500Name("CN=test-ca,O=ChenCraft");
+        Instant now = Instant.now();
+        X509Certificate caCert = new JcaX509CertificateConverter().getCertificate(
+                new JcaX509v3CertificateBuilder(name, BigInteger.ONE, Date.from(now), Date.from(now.plus(1, ChronoUnit.DAYS)), name, caKeyPair.getPublic())
+                        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(caKeyPair.getPrivate())));
+        ca = new CertificateAuthority(caCert, caKeyPair.getPrivate(), "SHA256withECDSA", BouncyCastleProvider.PROVIDER_NAME);
+        caHolder = new X509CertificateHolder(caCert.getEncoded());
+    }
+
+    @BeforeEach
+    public void setup() throws Exception {
+        CertificateRecord good = new CertificateRecord();
+        good.setSerialNumber(GOOD_SERIAL.toString(16));
+        CertificateRecord revoked = new CertificateRecord();
+        revoked.setSerialNumber(REVOKED_SERIAL.toString(16));
+        revoked.setRevokedAt(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+        revoked.setRevokeReason("Superseded by new certificate");
+
+        mtlsService = mock(MTlsService.class);
+        when(mtlsService.findIssuedRecords()).thenReturn(Flux.just(good, revoked));
+        publisher = new RevocationPublisher(ca, mtlsService, Clock.systemUTC(), Duration.ofHours(24), null);
+    }
+
+    @Test
+    public void respondsTryLaterBeforeFirstPublish() throws Exception {
+        Assertions.assertTrue(publisher.crl().isEmpty());
+        Assertions.assertEquals(OCSPResp.TRY_LATER, new OCSPResp(publisher.respond(ocspRequest(GOOD_SERIAL))).getStatus());
+    }
+
+    @Test
+    public void crlListsRevokedSerialsOnly() throws Exception {
+        publisher.publish().block();
+
+        X509CRLHolder crl = new X509CRLHolder(publisher.crl().orElseThrow());
+        Assertions.assertTrue(crl.isSignatureValid(new JcaContentVerifierProviderBuilder().build(caHolder)));
+        Assertions.assertNotNull(crl.getRevokedCertificate(REVOKED_SERIAL));
+        Assertions.assertNull(crl.getRevokedCertificate(GOOD_SERIAL));
+        Assertions.assertTrue(publisher.crlPem().orElseThrow().startsWith("-----BEGIN X509 CRL-----"));
+    }
+
+    @Test
+    public void publishAskedForWhileRunningIsRunAgain() throws Exception {
+        Sinks.Many<CertificateRecord> staleRead = Sinks.many().unicast().onBackpressureBuffer();
+        Flux<CertificateRecord> current = mtlsService.findIssuedRecords();
+        when(mtlsService.findIssuedRecords()).thenReturn(staleRead.asFlux(), current);
+        publisher.publish().subscribe();
+
+        // Revoked after the running publish read the records, published once it finished
+        publisher.publish().block();
+        staleRead.tryEmitComplete();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!hasRevoked(REVOKED_SERIAL) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(hasRevoked(REVOKED_SERIAL));
+    }
+
+    @Test
+    public void ocspAnswersFromSnapshot() throws Exception {
+        publisher.publish().block();
+
+        BasicOCSPResp good = (BasicOCSPResp) new OCSPResp(publisher.respond(ocspRequest(GOOD_SERIAL))).getResponseObject();
+        Assertions.assertTrue(good.isSignatureValid(new JcaContentVerifierProviderBuilder().build(caHolder)));
+        Assertions.assertEquals(CertificateStatus.GOOD, good.getResponses()[0].getCertStatus());
+
+        BasicOCSPResp revoked = (BasicOCSPResp) new OCSPResp(publisher.respond(ocspRequest(REVOKED_SERIAL))).getResponseObject();
+        Assertions.assertInstanceOf(RevokedStatus.class, revoked.getResponses()[0].getCertStatus());
+
+        // Signed once per certificate ID until the next publish
+        Assertions.assertSame(publisher.respond(ocspRequest(GOOD_SERIAL)), publisher.respond(ocspRequest(GOOD_SERIAL)));
+    }
+
+    @Test
+    public void rejectsUnknownOrMalformedRequests() throws Exception {
+        publisher.publish().block();
+
+        Assertions.assertEquals(OCSPResp.UNAUTHORIZED, new OCSPResp(publisher.respond(ocspRequest(BigInteger.TEN))).getStatus());
+        Assertions.assertEquals(OCSPResp.MALFORMED_REQUEST, new OCSPResp(publisher.respond(new byte[]{1, 2, 3})).getStatus());
+    }
+
+    private boolean hasRevoked(BigInteger serial) throws Exception {
+        Optional<byte[]> crl = publisher.crl();
+        return crl.isPresent() && new X509CRLHolder(crl.get()).getRevokedCertificate(serial) != null;
+    }
+
+    private static byte[] ocspRequest(BigInteger serial) throws Exception {
+        CertificateID certId = new CertificateID(new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1), caHolder, serial);
+        return new OCSPReqBuilder().addRequest(certId).build().getEncoded();
+    }
+}
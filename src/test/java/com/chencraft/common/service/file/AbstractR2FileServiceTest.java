@@ -0,0 +1,404 @@
+package com.chencraft.common.service.file;
+
+import com.chencraft.common.mongo.StoredFileRepository;
+import com.chencraft.model.FileUpload;
+import com.chencraft.model.mongo.StoredFile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.NonNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.s3.model.MetadataDirective;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.mock;
+
+public class AbstractR2FileServiceTest {
+    private static final String KEY = "private/file.txt";
+    private static final String PUBLIC_KEY = "public/file.txt";
+    private static final String CONTENT = "0123456789";
+
+    @TempDir
+    private Path cacheDirectory;
+
+    private InMemoryR2FileService service;
+    private Instant lastModified;
+
+    @BeforeEach
+    public void setup() {
+        service = newService(16);
+        lastModified = Instant.parse("2026-01-01T00:00:00Z");
+        service.store(KEY, CONTENT, lastModified);
+    }
+
+    @Test
+    public void rangeIsFetchedFromR2AndAnsweredWithPartialContent() throws IOException {
+        ResponseEntity<Resource> response = download(headers(HttpHeaders.RANGE, "bytes=2-5"));
+
+        Assertions.assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        Assertions.assertEquals("bytes 2-5/10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        Assertions.assertEquals(4, response.getHeaders().getContentLength());
+        Assertions.assertEquals("2345", body(response));
+        Assertions.assertEquals("bytes=2-5", service.getRequests.getLast().range());
+    }
+
+    @Test
+    public void ifRangeWithCurrentETagServesRange() throws IOException {
+        HttpHeaders headers = headers(HttpHeaders.RANGE, "bytes=2-5");
+        headers.set(HttpHeaders.IF_RANGE, eTag());
+
+        ResponseEntity<Resource> response = download(headers);
+
+        Assertions.assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        Assertions.assertEquals("2345", body(response));
+    }
+
+    @Test
+    public void ifRangeWithChangedETagFallsBackToFullContent() throws IOException {
+        HttpHeaders headers = headers(HttpHeaders.RANGE, "bytes=2-5");
+        headers.set(HttpHeaders.IF_RANGE, "\"stale\"");
+
+        ResponseEntity<Resource> response = download(headers);
+
+        // R2 rejects the ranged request with 412, the retry asks for the whole object
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(CONTENT, body(response));
+        Assertions.assertEquals(2, service.getRequests.size());
+        Assertions.assertNull(service.getRequests.getLast().range());
+    }
+
+    @Test
+    public void ifRangeWithOlderDateFallsBackToFullContent() throws IOException {
+        HttpHeaders headers = headers(HttpHeaders.RANGE, "bytes=2-5");
+        headers.set(HttpHeaders.IF_RANGE, httpDate(lastModified.minusSeconds(60)));
+
+        ResponseEntity<Resource> response = download(headers);
+
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(CONTENT, body(response));
+    }
+
+    @Test
+    public void ifRangeWithWeakETagIsNeverRanged() throws IOException {
+        HttpHeaders headers = headers(HttpHeaders.RANGE, "bytes=2-5");
+        headers.set(HttpHeaders.IF_RANGE, "W/" + eTag());
+
+        ResponseEntity<Resource> response = download(headers);
+
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(CONTENT, body(response));
+        Assertions.assertNull(service.getRequests.getLast().range());
+    }
+
+    @Test
+    public void unsatisfiableRangeAnswers416WithObjectLength() {
+        ResponseEntity<Resource> response = download(headers(HttpHeaders.RANGE, "bytes=20-30"));
+
+        Assertions.assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        Assertions.assertEquals("bytes */10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    public void multipleRangesAreIgnored() throws IOException {
+        ResponseEntity<Resource> response = download(headers(HttpHeaders.RANGE, "bytes=0-1,4-5"));
+
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(CONTENT, body(response));
+        Assertions.assertNull(service.getRequests.getLast().range());
+    }
+
+    @Test
+    public void ifNoneMatchWithCurrentETagAnswers304() {
+        ResponseEntity<Resource> response = download(headers(HttpHeaders.IF_NONE_MATCH, eTag()));
+
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        Assertions.assertNull(response.getBody());
+        Assertions.assertEquals(eTag(), response.getHeaders().getETag());
+        Assertions.assertEquals(lastModified.toEpochMilli(), response.getHeaders().getLastModified());
+        Assertions.assertEquals(service.privateCacheControl, response.getHeaders().getCacheControl());
+        Assertions.assertEquals(eTag(), service.getRequests.getLast().ifNoneMatch());
+    }
+
+    @Test
+    public void ifNoneMatchWithWeakETagAnswers304() {
+        ResponseEntity<Resource> response = download(headers(HttpHeaders.IF_NONE_MATCH, "W/" + eTag()));
+
+        // If-None-Match compares weakly, R2 is sent the strong form
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        Assertions.assertEquals(eTag(), service.getRequests.getLast().ifNoneMatch());
+    }
+
+    @Test
+    public void ifNoneMatchWithChangedETagServesContent() throws IOException {
+        ResponseEntity<Resource> response = download(headers(HttpHeaders.IF_NONE_MATCH, "\"stale\""));
+
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(CONTENT, body(response));
+    }
+
+    @Test
+    public void ifModifiedSinceAfterLastModifiedAnswers304() {
+        ResponseEntity<Resource> response = download(headers(HttpHeaders.IF_MODIFIED_SINCE, httpDate(lastModified.plusSeconds(60))));
+
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        Assertions.assertNotNull(service.getRequests.getLast().ifModifiedSince());
+    }
+
+    @Test
+    public void ifModifiedSinceBeforeLastModifiedServesContent() throws IOException {
+        ResponseEntity<Resource> response = download(headers(HttpHeaders.IF_MODIFIED_SINCE, httpDate(lastModified.minusSeconds(60))));
+
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(CONTENT, body(response));
+    }
+
+    @Test
+    public void cachedPublicFileAnswers304() {
+        service.store(PUBLIC_KEY, CONTENT, lastModified);
+        service.downloadFileAsync(FileUpload.Type.PUBLIC, "file.txt", HttpHeaders.EMPTY).block();
+
+        ResponseEntity<Resource> response = service.downloadFileAsync(FileUpload.Type.PUBLIC, "file.txt",
+                                                                      headers(HttpHeaders.IF_NONE_MATCH, eTag(PUBLIC_KEY))).block();
+
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        Assertions.assertNull(response.getBody());
+        Assertions.assertEquals(service.publicCacheControl, response.getHeaders().getCacheControl());
+        Assertions.assertEquals(1, service.getRequests.size());
+    }
+
+    @Test
+    public void publicDownloadInFlightSurvivesReplacement() throws Exception {
+        service.store(PUBLIC_KEY, CONTENT, lastModified);
+        ResponseEntity<Resource> inFlight = service.downloadFileAsync(FileUpload.Type.PUBLIC, "file.txt", HttpHeaders.EMPTY).block();
+
+        // The upload invalidates the cache entry and deletes its file before the first response is written
+        service.uploadFile(FileUpload.Type.PUBLIC, "file.txt", "text/plain",
+                           new ByteArrayInputStream("replaced".getBytes(StandardCharsets.UTF_8)));
+        awaitEmptyCache();
+
+        Assertions.assertEquals(CONTENT, body(inFlight));
+        ResponseEntity<Resource> next = service.downloadFileAsync(FileUpload.Type.PUBLIC, "file.txt", HttpHeaders.EMPTY).block();
+        Assertions.assertEquals("replaced", body(next));
+    }
+
+    @Test
+    public void publicRangeIsServedFromCache() throws IOException {
+        service.store(PUBLIC_KEY, CONTENT, lastModified);
+        service.downloadFileAsync(FileUpload.Type.PUBLIC, "file.txt", HttpHeaders.EMPTY).block();
+
+        ResponseEntity<Resource> response = service.downloadFileAsync(FileUpload.Type.PUBLIC, "file.txt",
+                                                                      headers(HttpHeaders.RANGE, "bytes=2-5")).block();
+
+        Assertions.assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        Assertions.assertEquals("bytes 2-5/10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        Assertions.assertEquals("2345", body(response));
+        Assertions.assertEquals(1, service.getRequests.size());
+    }
+
+    @Test
+    public void publicObjectLargerThanCacheIsStreamed() throws IOException {
+        service = newService(1);
+        String large = "x".repeat(1536 * 1024);
+        service.store(PUBLIC_KEY, large, lastModified);
+
+        ResponseEntity<Resource> first = service.downloadFileAsync(FileUpload.Type.PUBLIC, "file.txt", HttpHeaders.EMPTY).block();
+        ResponseEntity<Resource> second = service.downloadFileAsync(FileUpload.Type.PUBLIC, "file.txt", HttpHeaders.EMPTY).block();
+
+        Assertions.assertEquals(large, body(first));
+        Assertions.assertEquals(large, body(second));
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+
+    private void awaitEmptyCache() throws Exception {
+        Instant deadline = Instant.now().plusSeconds(5);
+        while (Instant.now().isBefore(deadline)) {
+            try (Stream<Path> files = Files.list(cacheDirectory)) {
+                if (files.findAny().isEmpty()) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        Assertions.fail("Cached file was not deleted");
+    }
+
+    @Test
+    public void objectAddedAfterListingIsServed() throws IOException {
+        service.refreshIndex().block();
+        // Written by another instance, or directly in the bucket, after the index was listed
+        service.store("private/added.txt", CONTENT, lastModified);
+
+        ResponseEntity<Resource> head = service.headFileAsync(FileUpload.Type.PRIVATE, "added.txt", HttpHeaders.EMPTY).block();
+        ResponseEntity<Resource> download = service.downloadFileAsync(FileUpload.Type.PRIVATE, "added.txt", HttpHeaders.EMPTY).block();
+
+        Assertions.assertEquals(HttpStatus.OK, head.getStatusCode());
+        Assertions.assertEquals(CONTENT.length(), head.getHeaders().getContentLength());
+        Assertions.assertEquals(CONTENT, body(download));
+    }
+
+    @Test
+    public void listedObjectIsDescribedFromIndex() {
+        service.refreshIndex().block();
+
+        ResponseEntity<Resource> head = service.headFileAsync(FileUpload.Type.PRIVATE, "file.txt", HttpHeaders.EMPTY).block();
+
+        Assertions.assertEquals(HttpStatus.OK, head.getStatusCode());
+        Assertions.assertEquals(eTag(), head.getHeaders().getETag());
+        Assertions.assertEquals(0, service.heads.get());
+    }
+
+    @Test
+    public void uploadOfUnchangedContentIsSkipped() {
+        upload("file.txt", "text/plain", "same content");
+        upload("file.txt", "text/plain", "same content");
+
+        Assertions.assertEquals(1, service.puts.get());
+        Assertions.assertEquals("same content", new String(service.objects.get(KEY).content(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void unchangedContentWithNewTypeIsRetypedWithoutUpload() {
+        upload("file.txt", "text/plain", "same content");
+        upload("file.txt", "text/markdown", "same content");
+
+        Assertions.assertEquals(1, service.puts.get());
+        Assertions.assertEquals(1, service.copyRequests.size());
+        Assertions.assertEquals(KEY, service.copyRequests.getFirst().sourceKey());
+        Assertions.assertEquals("text/markdown", service.objects.get(KEY).contentType());
+
+        upload("file.txt", "text/markdown", "same content");
+        Assertions.assertEquals(1, service.puts.get());
+        Assertions.assertEquals(1, service.copyRequests.size());
+    }
+
+    @Test
+    public void identicalContentIsCopiedWithItsOwnContentType() {
+        upload("file.txt", "text/plain", "same content");
+        upload("file.json", "application/json", "same content");
+
+        Assertions.assertEquals(1, service.puts.get());
+        Assertions.assertEquals(1, service.copyRequests.size());
+        Assertions.assertEquals(MetadataDirective.REPLACE, service.copyRequests.getFirst().metadataDirective());
+        InMemoryR2FileService.StoredObject copy = service.objects.get("private/file.json");
+        Assertions.assertEquals("same content", new String(copy.content(), StandardCharsets.UTF_8));
+        Assertions.assertEquals("application/json", copy.contentType());
+    }
+
+    @Test
+    public void overwrittenObjectIsUploadedAgain() {
+        upload("file.txt", "text/plain", "same content");
+        // Changed behind the index's back, the recorded hash no longer describes the object
+        service.store(KEY, "changed elsewhere", lastModified);
+
+        upload("file.txt", "text/plain", "same content");
+
+        Assertions.assertEquals(2, service.puts.get());
+        Assertions.assertEquals("same content", new String(service.objects.get(KEY).content(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void overwrittenCopySourceIsNotCopied() {
+        upload("file.txt", "text/plain", "same content");
+        service.store(KEY, "changed elsewhere", lastModified);
+
+        upload("file.json", "application/json", "same content");
+
+        Assertions.assertEquals(2, service.puts.get());
+        Assertions.assertTrue(service.copyRequests.isEmpty());
+        Assertions.assertEquals("same content", new String(service.objects.get("private/file.json").content(), StandardCharsets.UTF_8));
+    }
+
+    private void upload(String filename, String contentType, String content) {
+        service.uploadFile(FileUpload.Type.PRIVATE, filename, contentType,
+                           new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private InMemoryR2FileService newService(long cacheSizeMb) {
+        DownloadCoalescer downloadCoalescer = new DownloadCoalescer(new SimpleMeterRegistry());
+        PublicFileCache publicFileCache = new PublicFileCache(cacheDirectory, cacheSizeMb, Duration.ofHours(1), downloadCoalescer);
+        publicFileCache.init();
+        return new InMemoryR2FileService(publicFileCache, downloadCoalescer, new InMemoryContentHashIndex());
+    }
+
+    /**
+     * ContentHashIndex over a map instead of Mongo
+     */
+    private static class InMemoryContentHashIndex extends ContentHashIndex {
+        private final Map<String, StoredFile> entries = new ConcurrentHashMap<>();
+
+        InMemoryContentHashIndex() {
+            super(mock(StoredFileRepository.class), Clock.systemUTC());
+        }
+
+        @Override
+        public Mono<@NonNull StoredFile> find(String key) {
+            return Mono.justOrEmpty(entries.get(key));
+        }
+
+        @Override
+        public Mono<@NonNull StoredFile> findCopy(String sha256, String key) {
+            return Mono.justOrEmpty(entries.values()
+                                           .stream()
+                                           .filter(entry -> entry.getSha256().equals(sha256) && !entry.getKey().equals(key))
+                                           .findFirst());
+        }
+
+        @Override
+        public Mono<@NonNull Void> record(String key, String sha256, String eTag) {
+            return Mono.fromRunnable(() -> entries.put(key, new StoredFile(key, sha256, eTag, Instant.now())));
+        }
+
+        @Override
+        public Mono<@NonNull Void> remove(String key) {
+            return Mono.fromRunnable(() -> entries.remove(key));
+        }
+    }
+
+    private ResponseEntity<Resource> download(HttpHeaders headers) {
+        return service.downloadFileAsync(FileUpload.Type.PRIVATE, "file.txt", headers).block();
+    }
+
+    private String eTag() {
+        return eTag(KEY);
+    }
+
+    private String eTag(String key) {
+        return service.objects.get(key).eTag();
+    }
+
+    private static HttpHeaders headers(String name, String value) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(name, value);
+        return headers;
+    }
+
+    private static String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atZone(ZoneOffset.UTC));
+    }
+
+    private static String body(ResponseEntity<Resource> response) throws IOException {
+        Assertions.assertNotNull(response.getBody());
+        return new String(response.getBody().getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,79 @@
+package com.chencraft.common.service.file;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DownloadCoalescerTest {
+    private SimpleMeterRegistry meterRegistry;
+    private DownloadCoalescer coalescer;
+    private AtomicInteger fetches;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new DownloadCoalescer(meterRegistry);
+        fetches = new AtomicInteger();
+    }
+
+    @Test
+    public void concurrentRequestsShareOneFetch() {
+        Sinks.One<String> upstream = Sinks.one();
+        Mono<String> first = coalescer.execute("private/file.txt", () -> fetch(upstream.asMono())).cache();
+        Mono<String> second = coalescer.execute("private/file.txt", () -> fetch(Mono.just("other"))).cache();
+        first.subscribe();
+        second.subscribe();
+
+        upstream.tryEmitValue("content");
+
+        Assertions.assertEquals("content", first.block());
+        Assertions.assertEquals("content", second.block());
+        Assertions.assertEquals(1, fetches.get());
+        Assertions.assertEquals(1.0, count("leader"));
+        Assertions.assertEquals(1.0, count("waiter"));
+    }
+
+    @Test
+    public void completedFetchIsNotReused() {
+        coalescer.execute("private/file.txt", () -> fetch(Mono.just("content"))).block();
+        String second = coalescer.execute("private/file.txt", () -> fetch(Mono.just("updated"))).block();
+
+        Assertions.assertEquals("updated", second);
+        Assertions.assertEquals(2, fetches.get());
+        Assertions.assertEquals(2.0, count("leader"));
+    }
+
+    @Test
+    public void failureIsSharedThenForgotten() {
+        Assertions.assertThrows(IllegalStateException.class,
+                                () -> coalescer.execute("private/file.txt", () -> fetch(Mono.error(new IllegalStateException("boom")))).block());
+
+        String retried = coalescer.execute("private/file.txt", () -> fetch(Mono.just("content"))).block();
+        Assertions.assertEquals("content", retried);
+    }
+
+    @Test
+    public void throwingSupplierFailsTheFlight() {
+        Assertions.assertThrows(IllegalStateException.class,
+                                () -> coalescer.execute("private/file.txt", () -> {
+                                    throw new IllegalStateException("boom");
+                                }).block());
+
+        String retried = coalescer.execute("private/file.txt", () -> fetch(Mono.just("content"))).block();
+        Assertions.assertEquals("content", retried);
+    }
+
+    private <T> Mono<T> fetch(Mono<T> result) {
+        fetches.incrementAndGet();
+        return result;
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("file.download.coalescing").tag("result", result).counter().count();
+    }
+}
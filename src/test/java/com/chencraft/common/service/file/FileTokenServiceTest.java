@@ -0,0 +1,106 @@
+package com.chencraft.common.service.file;
+
+import com.chencraft.common.config.MongoConfig;
+import com.chencraft.common.mongo.FileTokenRepository;
+import com.chencraft.model.mongo.FileToken;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(MongoConfig.class)
+public class FileTokenServiceTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Autowired
+    private FileTokenRepository tokenRepo;
+
+    @Autowired
+    private FileTokenService fileTokenService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void cleanUpSoftDeletesUsedAndPurgesLongUsedTokens() throws InterruptedException {
+        Instant now = Instant.now();
+        FileToken unused = tokenRepo.save(token(null, false)).block();
+        FileToken recentlyUsed = tokenRepo.save(token(now.minus(1, ChronoUnit.DAYS), false)).block();
+        FileToken used = tokenRepo.save(token(now.minus(90, ChronoUnit.DAYS), false)).block();
+        // Soft-deleted and purged by the same run, the hard delete runs after the soft delete
+        FileToken longUsed = tokenRepo.save(token(now.minus(400, ChronoUnit.DAYS), false)).block();
+        FileToken purgeable = tokenRepo.save(token(now.minus(400, ChronoUnit.DAYS), true)).block();
+        assertNotNull(unused);
+        assertNotNull(recentlyUsed);
+        assertNotNull(used);
+        assertNotNull(longUsed);
+        assertNotNull(purgeable);
+        double softDeleted = count("soft_delete");
+        double hardDeleted = count("hard_delete");
+
+        fileTokenService.cleanUp();
+
+        // The cleanup runs in the background, the hard delete counter moves last
+        Instant deadline = Instant.now().plus(TIMEOUT);
+        while (count("hard_delete") == hardDeleted && Instant.now().isBefore(deadline)) {
+            Thread.sleep(50);
+        }
+        assertEquals(2.0, count("soft_delete") - softDeleted);
+        assertEquals(2.0, count("hard_delete") - hardDeleted);
+
+        assertFalse(tokenRepo.findById(unused.getId()).blockOptional().orElseThrow().isDeleted());
+        assertFalse(tokenRepo.findById(recentlyUsed.getId()).blockOptional().orElseThrow().isDeleted());
+        FileToken softDeletedToken = tokenRepo.findById(used.getId()).blockOptional().orElseThrow();
+        assertTrue(softDeletedToken.isDeleted());
+        // The derived update bumps the version like a save would, so later optimistic writes do not go stale silently
+        assertEquals(used.getVersion() + 1, softDeletedToken.getVersion());
+        assertTrue(tokenRepo.findById(longUsed.getId()).blockOptional().isEmpty());
+        assertTrue(tokenRepo.findById(purgeable.getId()).blockOptional().isEmpty());
+    }
+
+    @Test
+    void consumeAndReleaseInvalidateTokensReadBefore() {
+        FileToken issued = tokenRepo.save(token(null, false)).block();
+        assertNotNull(issued);
+        Instant usedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+        FileToken consumed = tokenRepo.consume(issued.getToken(), usedAt).block(TIMEOUT);
+        assertNotNull(consumed);
+        assertEquals(issued.getVersion() + 1, consumed.getVersion());
+        issued.setDeleted(true);
+        assertThrows(OptimisticLockingFailureException.class, () -> tokenRepo.save(issued).block(TIMEOUT));
+
+        assertEquals(Boolean.TRUE, tokenRepo.release(issued.getToken(), usedAt).block(TIMEOUT));
+        assertEquals(consumed.getVersion() + 1, tokenRepo.findById(issued.getId()).blockOptional().orElseThrow().getVersion());
+        consumed.setDeleted(true);
+        assertThrows(OptimisticLockingFailureException.class, () -> tokenRepo.save(consumed).block(TIMEOUT));
+    }
+
+    private double count(String action) {
+        return meterRegistry.get("cleanup.documents")
+                            .tag("collection", "files")
+                            .tag("action", action)
+                            .counter()
+                            .count();
+    }
+
+    private static FileToken token(Instant usedAt, boolean deleted) {
+        FileToken token = new FileToken();
+        token.setToken(UUID.randomUUID().toString());
+        token.setFilename("cleanup-" + UUID.randomUUID() + ".txt");
+        token.setIssuedAt(usedAt == null ? Instant.now() : usedAt.minus(1, ChronoUnit.DAYS));
+        token.setUsedAt(usedAt);
+        token.setDeleted(deleted);
+        return token;
+    }
+}
@@ -0,0 +1,233 @@
+package com.chencraft.common.service.file;
+
+import com.chencraft.common.component.AppConfig;
+import com.chencraft.common.config.S3Config;
+import lombok.NonNull;
+import org.springframework.http.HttpRange;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * AbstractR2FileService over an in-memory bucket, evaluating ranges and conditional headers the way R2 does.
+ * Requests are recorded so tests can assert what reached the bucket.
+ */
+public class InMemoryR2FileService extends AbstractR2FileService {
+    final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    final List<GetObjectRequest> getRequests = new ArrayList<>();
+    final List<CopyObjectRequest> copyRequests = new ArrayList<>();
+    final AtomicInteger puts = new AtomicInteger();
+    final AtomicInteger heads = new AtomicInteger();
+    final AtomicInteger listings = new AtomicInteger();
+
+    public InMemoryR2FileService(PublicFileCache publicFileCache, DownloadCoalescer downloadCoalescer, ContentHashIndex contentHashIndex) {
+        super(new S3Config("account", "access-key", "secret-key", 5), mock(AppConfig.class), publicFileCache,
+              downloadCoalescer, contentHashIndex);
+        this.bucketName = "bucket";
+        this.publicCacheControl = "public, max-age=300, must-revalidate";
+        this.privateCacheControl = "no-store, no-cache, must-revalidate, max-age=0";
+        this.shareCacheControl = "no-store, no-cache, must-revalidate, max-age=0";
+        this.coalesceMaxBufferKb = 1024;
+        this.presignExpiry = Duration.ofMinutes(15);
+        this.batchParallelism = 4;
+        this.indexMaxEntries = 100_000;
+    }
+
+    /**
+     * Redirects PUBLIC and SHARE downloads to URLs signed for the given lifetime
+     */
+    public void enablePresign(Duration expiry) {
+        this.presignEnabled = true;
+        this.presignExpiry = expiry;
+    }
+
+    /**
+     * @return number of GetObject requests that reached the bucket
+     */
+    public int getObjectCount() {
+        synchronized (getRequests) {
+            return getRequests.size();
+        }
+    }
+
+    /**
+     * Stores an object as if it was written to the bucket directly, bypassing this service
+     */
+    public void store(String key, String content, Instant lastModified) {
+        byte[] bytes = content.getBytes();
+        objects.put(key, new StoredObject(bytes, eTagOf(bytes), lastModified, "application/octet-stream", Map.of()));
+    }
+
+    @Override
+    protected Mono<@NonNull Void> headBucket(HeadBucketRequest request) {
+        return Mono.empty();
+    }
+
+    @Override
+    protected Mono<@NonNull String> putObject(String fullPath, String contentType, byte[] head, InputStream rest) {
+        return Mono.fromCallable(() -> {
+            try {
+                byte[] remaining = rest.readAllBytes();
+                byte[] bytes = Arrays.copyOf(head, head.length + remaining.length);
+                System.arraycopy(remaining, 0, bytes, head.length, remaining.length);
+                puts.incrementAndGet();
+                StoredObject object = new StoredObject(bytes, eTagOf(bytes), Instant.now(), contentType, Map.of());
+                objects.put(fullPath, object);
+                return object.eTag();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    protected Mono<@NonNull ResponseInputStream<GetObjectResponse>> getObject(GetObjectRequest request) {
+        return Mono.fromCallable(() -> {
+            synchronized (getRequests) {
+                getRequests.add(request);
+            }
+            StoredObject object = find(request.key());
+            if (request.ifMatch() != null && !request.ifMatch().equals(object.eTag())
+                    || request.ifUnmodifiedSince() != null && object.lastModified().isAfter(request.ifUnmodifiedSince())) {
+                throw error(412, object);
+            }
+            if (request.ifNoneMatch() != null && request.ifNoneMatch().equals(object.eTag())
+                    || request.ifModifiedSince() != null && !object.lastModified().isAfter(request.ifModifiedSince())) {
+                throw error(304, object);
+            }
+
+            GetObjectResponse.Builder response = GetObjectResponse.builder()
+                                                                  .eTag(object.eTag())
+                                                                  .lastModified(object.lastModified())
+                                                                  .contentType(object.contentType());
+            byte[] content = object.content();
+            if (request.range() != null) {
+                HttpRange range = HttpRange.parseRanges(request.range()).getFirst();
+                long start;
+                long end;
+                try {
+                    start = range.getRangeStart(content.length);
+                    end = range.getRangeEnd(content.length);
+                } catch (IllegalArgumentException e) {
+                    throw error(416, object);
+                }
+                response.contentRange("bytes " + start + "-" + end + "/" + content.length);
+                byte[] part = new byte[(int) (end - start + 1)];
+                System.arraycopy(content, (int) start, part, 0, part.length);
+                content = part;
+            }
+            response.contentLength((long) content.length);
+            return new ResponseInputStream<>(response.build(), AbortableInputStream.create(new ByteArrayInputStream(content)));
+        });
+    }
+
+    @Override
+    protected Mono<@NonNull HeadObjectResponse> headObject(HeadObjectRequest request) {
+        return Mono.fromCallable(() -> {
+            heads.incrementAndGet();
+            StoredObject object = find(request.key());
+            return HeadObjectResponse.builder()
+                                     .contentLength((long) object.content().length)
+                                     .eTag(object.eTag())
+                                     .lastModified(object.lastModified())
+                                     .contentType(object.contentType())
+                                     .metadata(object.metadata())
+                                     .build();
+        });
+    }
+
+    @Override
+    protected Mono<@NonNull String> copyObject(CopyObjectRequest request) {
+        return Mono.fromCallable(() -> {
+            synchronized (copyRequests) {
+                copyRequests.add(request);
+            }
+            StoredObject source = find(request.sourceKey());
+            boolean replace = request.metadataDirective() == MetadataDirective.REPLACE;
+            objects.put(request.destinationKey(), new StoredObject(source.content(), source.eTag(), Instant.now(),
+                                                                   replace ? request.contentType() : source.contentType(),
+                                                                   replace ? request.metadata() : source.metadata()));
+            return source.eTag();
+        });
+    }
+
+    @Override
+    protected Mono<@NonNull Void> deleteObject(DeleteObjectRequest request) {
+        return Mono.fromRunnable(() -> objects.remove(request.key()));
+    }
+
+    @Override
+    protected Mono<@NonNull DeleteObjectsResponse> deleteObjects(DeleteObjectsRequest request) {
+        return Mono.fromCallable(() -> {
+            request.delete().objects().forEach(identifier -> objects.remove(identifier.key()));
+            return DeleteObjectsResponse.builder().build();
+        });
+    }
+
+    @Override
+    protected Mono<@NonNull ListObjectsV2Response> listObjects(ListObjectsV2Request request) {
+        return Mono.fromCallable(() -> {
+            listings.incrementAndGet();
+            List<S3Object> contents = objects.entrySet()
+                                             .stream()
+                                             .filter(entry -> request.prefix() == null || entry.getKey().startsWith(request.prefix()))
+                                             .sorted(Map.Entry.comparingByKey())
+                                             .map(entry -> S3Object.builder()
+                                                                   .key(entry.getKey())
+                                                                   .size((long) entry.getValue().content().length)
+                                                                   .eTag(entry.getValue().eTag())
+                                                                   .lastModified(entry.getValue().lastModified())
+                                                                   .build())
+                                             .toList();
+            return ListObjectsV2Response.builder().contents(contents).isTruncated(false).build();
+        });
+    }
+
+    private StoredObject find(String key) {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            throw NoSuchKeyException.builder().statusCode(404).message("The specified key does not exist.").build();
+        }
+        return object;
+    }
+
+    private static S3Exception error(int status, StoredObject object) {
+        SdkHttpResponse httpResponse = SdkHttpResponse.builder()
+                                                      .statusCode(status)
+                                                      .putHeader("ETag", object.eTag())
+                                                      .putHeader("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(object.lastModified().atZone(ZoneOffset.UTC)))
+                                                      .build();
+        return (S3Exception) S3Exception.builder()
+                                        .statusCode(status)
+                                        .awsErrorDetails(AwsErrorDetails.builder().sdkHttpResponse(httpResponse).build())
+                                        .build();
+    }
+
+    private static String eTagOf(byte[] content) {
+        return "\"" + HexFormat.of().toHexDigits(Arrays.hashCode(content)) + "\"";
+    }
+
+    record StoredObject(byte[] content, String eTag, Instant lastModified, String contentType, Map<String, String> metadata) {
+    }
+}
@@ -1,6 +1,7 @@
 package com.chencraft.common.service.file;
 
 import com.chencraft.api.NotFoundException;
+import com.chencraft.model.FileMetadata;
 import com.chencraft.model.FileUpload;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -15,13 +16,18 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 @Slf4j
 @Primary
@@ -40,9 +46,13 @@ public class LocalFileService implements FileService {
     }
 
     @Override
-    public void uploadFile(FileUpload.Type destination, String filename, String contentType, byte[] content) {
+    public void uploadFile(FileUpload.Type destination, String filename, String contentType, InputStream content) {
         String key = getMapKey(destination, filename);
-        storage.put(key, new FileData(content, contentType));
+        try {
+            storage.put(key, new FileData(content.readAllBytes(), contentType));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         log.info("Uploaded file to memory: {}", key);
     }
 
@@ -99,6 +109,35 @@ public class LocalFileService implements FileService {
         }
     }
 
+    @Override
+    public Flux<@NonNull FileMetadata> listFiles(FileUpload.Type destination, String startAfter) {
+        Map<String, FileMetadata> files = new TreeMap<>();
+
+        // Disk fixtures first, in-memory writes shadow them
+        Path directory = this.basePath.resolve(destination.toPrefix());
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> paths = Files.list(directory)) {
+                paths.filter(Files::isRegularFile).forEach(path -> {
+                    String filename = path.getFileName().toString();
+                    files.put(filename, new FileMetadata(filename, path.toFile().length(), null, null));
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        String keyPrefix = getMapKey(destination, "");
+        storage.forEach((key, data) -> {
+            if (key.startsWith(keyPrefix)) {
+                String filename = key.substring(keyPrefix.length());
+                files.put(filename, new FileMetadata(filename, data.content.length, null, null));
+            }
+        });
+
+        return Flux.fromIterable(files.values())
+                   .filter(file -> startAfter == null || file.getFilename().compareTo(startAfter) > 0);
+    }
+
     private String getMapKey(FileUpload.Type destination, String filename) {
         return destination.name() + ":" + filename;
     }
@@ -0,0 +1,60 @@
+package com.chencraft.common.service.file;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Instant;
+import java.util.Map;
+
+public class ObjectMetadataIndexTest {
+    private static final String KEY = "public/file.txt";
+
+    private ObjectMetadataIndex index;
+
+    @BeforeEach
+    public void setup() {
+        index = new ObjectMetadataIndex();
+    }
+
+    @Test
+    public void unknownUntilFirstListing() {
+        Assertions.assertTrue(index.find(KEY).isEmpty());
+    }
+
+    @Test
+    public void answersFromListing() {
+        S3Object object = S3Object.builder().key(KEY).size(27L).eTag("\"abc\"").build();
+        index.replace(Map.of(KEY, object), Instant.now());
+
+        Assertions.assertEquals(object, index.find(KEY).orElseThrow());
+        Assertions.assertTrue(index.find("public/other.txt").isEmpty());
+    }
+
+    @Test
+    public void writeAfterListingStartIsUnknown() {
+        Instant listedAt = Instant.now().minusSeconds(1);
+        index.markChanged(KEY);
+        index.replace(Map.of(KEY, S3Object.builder().key(KEY).build()), listedAt);
+
+        Assertions.assertTrue(index.find(KEY).isEmpty());
+    }
+
+    @Test
+    public void writeBeforeListingStartIsKnown() {
+        S3Object object = S3Object.builder().key(KEY).build();
+        index.markChanged(KEY);
+        index.replace(Map.of(KEY, object), Instant.now().plusSeconds(1));
+
+        Assertions.assertEquals(object, index.find(KEY).orElseThrow());
+    }
+
+    @Test
+    public void clearForgetsListing() {
+        index.replace(Map.of(KEY, S3Object.builder().key(KEY).build()), Instant.now());
+        index.clear();
+
+        Assertions.assertTrue(index.find(KEY).isEmpty());
+    }
+}
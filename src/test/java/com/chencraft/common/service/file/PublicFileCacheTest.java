@@ -0,0 +1,96 @@
+package com.chencraft.common.service.file;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class PublicFileCacheTest {
+    @TempDir
+    private Path directory;
+
+    private PublicFileCache cache;
+    private AtomicInteger downloads;
+
+    @BeforeEach
+    public void setup() {
+        cache = new PublicFileCache(directory, 16, Duration.ofHours(1), new DownloadCoalescer(new SimpleMeterRegistry()));
+        cache.init();
+        downloads = new AtomicInteger();
+    }
+
+    @Test
+    public void downloadsOnceAndServesFromDisk() throws IOException {
+        PublicFileCache.CachedFile first = cache.get("public/asset.zip", download("content")).block();
+        PublicFileCache.CachedFile second = cache.get("public/asset.zip", download("other")).block();
+
+        Assertions.assertEquals(1, downloads.get());
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals("content", Files.readString(second.path()));
+    }
+
+    @Test
+    public void invalidateReloadsFile() throws IOException {
+        PublicFileCache.CachedFile file = cache.get("public/asset.zip", download("content")).block();
+
+        cache.invalidate("public/asset.zip");
+
+        PublicFileCache.CachedFile reloaded = cache.get("public/asset.zip", download("updated")).block();
+        Assertions.assertEquals(2, downloads.get());
+        Assertions.assertNotEquals(file.path(), reloaded.path());
+        Assertions.assertEquals("updated", Files.readString(reloaded.path()));
+    }
+
+    @Test
+    public void openedFileOutlivesInvalidation() throws Exception {
+        PublicFileCache.OpenedFile opened = cache.open("public/asset.zip", download("content")).block();
+        Path cached = cache.get("public/asset.zip", download("other")).block().path();
+
+        cache.invalidate("public/asset.zip");
+        // Removed files are deleted by the removal listener, off the calling thread
+        Instant deadline = Instant.now().plusSeconds(5);
+        while (Files.exists(cached) && Instant.now().isBefore(deadline)) {
+            Thread.sleep(10);
+        }
+        Assertions.assertFalse(Files.exists(cached));
+
+        try (InputStream stream = opened.stream(0, opened.size())) {
+            Assertions.assertEquals("content", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void objectLargerThanCacheDoesNotFit() {
+        Assertions.assertTrue(cache.fits(1024 * 1024));
+        Assertions.assertFalse(cache.fits(17L * 1024 * 1024));
+    }
+
+    @Test
+    public void failedDownloadIsNotCached() {
+        Mono<PublicFileCache.CachedFile> failed = cache.get("public/missing.zip", file -> Mono.error(new IOException("boom")));
+        Assertions.assertThrows(Exception.class, failed::block);
+
+        cache.get("public/missing.zip", download("content")).block();
+        Assertions.assertEquals(1, downloads.get());
+    }
+
+    private Function<Path, Mono<PublicFileCache.CachedFile>> download(String content) {
+        return file -> Mono.fromCallable(() -> {
+            downloads.incrementAndGet();
+            Files.writeString(file, content);
+            return new PublicFileCache.CachedFile(file, "\"" + content + "\"", Instant.now());
+        });
+    }
+}